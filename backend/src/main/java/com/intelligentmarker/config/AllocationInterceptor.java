@@ -0,0 +1,72 @@
+package com.intelligentmarker.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Records the heap allocated by each request as http.server.requests.allocation, tagged by method and URI pattern
+ * Measured on the request thread from preHandle to afterCompletion, so it covers the controller, the queries it runs
+ * (including lazy loads during serialization) and writing the response body. Async requests (SSE streams) are
+ * not recorded: they complete on another thread, whose counter has nothing to do with the one read at the start
+ */
+@Component
+@Slf4j
+public class AllocationInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = AllocationInterceptor.class.getName() + ".start";
+
+    private final MeterRegistry meterRegistry;
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    public AllocationInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.threadBean = allocationBean();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (threadBean != null && request.getDispatcherType() != DispatcherType.ASYNC) {
+            request.setAttribute(START_ATTRIBUTE, threadBean.getCurrentThreadAllocatedBytes());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.removeAttribute(START_ATTRIBUTE);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(START_ATTRIBUTE) instanceof Long start)) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("http.server.requests.allocation")
+            .description("Heap allocated on the request thread per request")
+            .baseUnit("bytes")
+            .tag("method", request.getMethod())
+            .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+            .register(meterRegistry)
+            .record(threadBean.getCurrentThreadAllocatedBytes() - start);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        log.warn("Thread allocation measurement is not supported by this JVM, request allocation is not recorded");
+        return null;
+    }
+}
@@ -1,14 +1,21 @@
 package com.intelligentmarker.config;
 
+import com.intelligentmarker.model.SubmissionJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
 @Configuration
+@Slf4j
 public class AsyncConfig implements AsyncConfigurer {
-    
+
     @Override
     public Executor getAsyncExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -19,5 +26,105 @@ public class AsyncConfig implements AsyncConfigurer {
         executor.initialize();
         return executor;
     }
-}
 
+    /**
+     * Workers for the durable submission queue, one executor per pipeline stage so a slow stage
+     * (LLM scoring) never occupies the threads of another (OCR)
+     */
+    @Bean
+    public AsyncTaskExecutor ocrStageExecutor(SubmissionQueueProperties properties) {
+        return stageExecutor(properties, SubmissionJob.Stage.OCR);
+    }
+
+    @Bean
+    public AsyncTaskExecutor anonymizeStageExecutor(SubmissionQueueProperties properties) {
+        return stageExecutor(properties, SubmissionJob.Stage.ANONYMIZE);
+    }
+
+    @Bean
+    public AsyncTaskExecutor scoreStageExecutor(SubmissionQueueProperties properties) {
+        return stageExecutor(properties, SubmissionJob.Stage.SCORE);
+    }
+
+    /**
+     * Re-score jobs themselves (app.batch-scoring.concurrent-jobs at a time), kept off the scheduler threads
+     * and separate from batchScoringExecutor, whose threads the jobs wait on
+     */
+    @Bean
+    public AsyncTaskExecutor rescoreJobExecutor(@Value("${app.batch-scoring.concurrent-jobs:2}") int concurrentJobs) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrentJobs);
+        executor.setMaxPoolSize(concurrentJobs);
+        executor.setThreadNamePrefix("rescore-job-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * OpenAI calls fanned out by batch re-scoring (app.batch-scoring.parallelism at a time)
+     */
+    @Bean
+    public AsyncTaskExecutor batchScoringExecutor(@Value("${app.batch-scoring.parallelism:8}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("batch-scoring-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Second copies of slow chat completions (app.llm.hedge: sent after the percentile/min-delay of recent
+     * latency, capped by budget; see ChatRouter)
+     * One short-lived thread per call, virtual where the JDK supports it: the threads only wait on HTTP
+     */
+    @Bean
+    public AsyncTaskExecutor chatHedgeExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("chat-hedge-");
+        try {
+            executor.setVirtualThreads(true);
+        } catch (UnsupportedOperationException e) {
+            log.debug("Virtual threads unavailable, chat hedging uses platform threads");
+        }
+        return executor;
+    }
+
+    /**
+     * VIRTUAL mode starts one virtual thread per job, so blocking on OSS, Vision and OpenAI costs
+     * no platform thread; DependencyLimiter caps what each dependency actually sees.
+     * PLATFORM mode (and VIRTUAL on JDK < 21) uses a fixed pool; the queue only hands out as many
+     * jobs as there are free workers, the small buffer absorbs the gap between a task finishing
+     * and its thread returning to the pool
+     */
+    private AsyncTaskExecutor stageExecutor(SubmissionQueueProperties properties, SubmissionJob.Stage stage) {
+        int workers = Math.max(1, properties.getStages().workers(stage));
+        String prefix = "submission-" + stage.name().toLowerCase() + "-";
+
+        if (properties.getExecutorMode() == SubmissionQueueProperties.ExecutorMode.VIRTUAL) {
+            try {
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix + "vt-");
+                executor.setVirtualThreads(true);
+                executor.setConcurrencyLimit(workers);
+                executor.setTaskTerminationTimeout(30_000);
+                log.info("{} stage workers: up to {} virtual threads", stage, workers);
+                return executor;
+            } catch (UnsupportedOperationException e) {
+                log.warn("Virtual threads require JDK 21+ (running {}), falling back to platform threads",
+                        Runtime.version());
+            }
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(workers);
+        executor.setThreadNamePrefix(prefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("{} stage workers: {} platform threads", stage, workers);
+        return executor;
+    }
+}
@@ -0,0 +1,27 @@
+package com.intelligentmarker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class HttpClientConfig {
+
+    /**
+     * One JDK HttpClient shared by the OpenAI chat, vision and batch clients
+     * It keeps a pool of keep-alive connections and negotiates HTTP/2, so concurrent calls are
+     * multiplexed over a few connections instead of a TCP + TLS handshake per request.
+     * Read timeouts are set per endpoint on each client's request factory
+     */
+    @Bean
+    public HttpClient openAiHttpClient(@Value("${openai.http.connect-timeout:10s}") Duration connectTimeout) {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+}
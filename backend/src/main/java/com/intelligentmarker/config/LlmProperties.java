@@ -0,0 +1,43 @@
+package com.intelligentmarker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.llm")
+@Data
+public class LlmProperties {
+    private List<Provider> providers = new ArrayList<>(); // OpenAI-compatible chat endpoints (see ChatRouter)
+    private double costWeight = 1000;                     // Milliseconds of p95 latency worth $1 per 1M tokens
+    private Hedge hedge = new Hedge();                    // Duplicate slow completions (see ChatRouter)
+    private int statsWindow = 100;                        // Recent calls per provider used for p95 and error rate
+
+    @Data
+    public static class Hedge {
+        private boolean enabled;
+        private double percentile = 0.95;              // Hedge once a call outlives this share of recent calls
+        private Duration minDelay = Duration.ofSeconds(2); // Never hedge sooner than this
+        private int minSamples = 20;                   // Successful calls needed before the percentile is trusted
+        private double budget = 0.05;                  // Hedges allowed per call (0.05 = at most ~5% extra requests)
+        private boolean sameProvider = true;           // Duplicate to the same provider when it is the only one available
+    }
+
+    @Data
+    public static class Provider {
+        private String name;
+        private boolean enabled = true;
+        private String baseUrl;                        // e.g. https://api.openai.com/v1 or http://localhost:8081/v1
+        private String apiKey;
+        private String model;
+        private double costPerMillionTokens;           // Blended input/output price, 0 for on-box models
+        private Duration timeout = Duration.ofSeconds(120); // Read timeout per call
+        private boolean structuredOutput = true;       // Accepts response_format json_schema
+        private boolean local;                         // Runs on this box: no API key needed
+        private boolean rateLimited;                   // Goes through ChatRateLimiter (account RPM/TPM budget)
+    }
+}
@@ -0,0 +1,42 @@
+package com.intelligentmarker.config;
+
+import com.intelligentmarker.model.SubmissionJob;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.submission-queue")
+@Data
+public class SubmissionQueueProperties {
+    private ExecutorMode executorMode = ExecutorMode.PLATFORM; // Thread model for queue workers (see AsyncConfig)
+    private Stages stages = new Stages();                  // Concurrent jobs per pipeline stage on this node
+    private int maxPending = 500;                          // Uploads are rejected once this many jobs are queued
+    private int maxAttempts = 3;                           // Claims per stage before a job is marked FAILED
+    private Duration retryBackoff = Duration.ofSeconds(30); // Base delay, multiplied by attempt count
+    private Duration leaseTimeout = Duration.ofMinutes(10); // RUNNING jobs not renewed by a heartbeat for this long are released
+    private String instanceId;                             // Stable id of this node in worker ids (defaults to the host name)
+    private boolean releaseOrphansOnStartup = false;       // Release this node's RUNNING jobs at startup; only safe when instanceId is unique per node
+
+    public enum ExecutorMode {
+        PLATFORM,   // Fixed pool of platform threads, one per worker
+        VIRTUAL     // One virtual thread per job (JDK 21+), suited to hundreds of workers blocked on remote calls
+    }
+
+    @Data
+    public static class Stages {
+        private int ocr = 4;         // CPU bound (Tesseract/PDFBox): around the number of cores
+        private int anonymize = 2;   // Regex redaction + small upload
+        private int score = 10;      // Mostly waiting on OpenAI
+
+        public int workers(SubmissionJob.Stage stage) {
+            return switch (stage) {
+                case OCR -> ocr;
+                case ANONYMIZE -> anonymize;
+                case SCORE -> score;
+            };
+        }
+    }
+}
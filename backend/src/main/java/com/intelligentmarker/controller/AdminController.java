@@ -6,6 +6,8 @@ import com.intelligentmarker.repository.AuditLogRepository;
 import com.intelligentmarker.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -72,59 +74,41 @@ public class AdminController {
     }
     
     /**
-     * Get audit logs
+     * Get audit logs (newest first; pass nextCursor back as cursor for the following page)
      */
     @GetMapping("/audit-logs")
     public ResponseEntity<?> getAuditLogs(
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "50") int size,
-        @RequestParam(required = false) String action
+        @RequestParam(required = false) String action,
+        @RequestParam(required = false) String cursor
     ) {
         try {
-            List<AuditLog> allLogs;
-            
-            if (action != null && !action.isEmpty()) {
-                allLogs = auditLogRepository.findByAction(action);
+            String actionFilter = action != null && !action.isEmpty() ? action : null;
+            Pageable pageable = PageCursor.request(cursor, page, size);
+
+            Slice<AuditLog> logs;
+            if (cursor != null) {
+                PageCursor after = PageCursor.decode(cursor);
+                logs = auditLogRepository.findPageBefore(actionFilter, after.timestamp(), after.id(), pageable);
             } else {
-                allLogs = auditLogRepository.findAll();
+                logs = auditLogRepository.findPage(actionFilter, pageable);
             }
-            
-            // Sort by timestamp in descending order
-            allLogs.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-            
 
-            // Manual pagination
-            int start = page * size;
-            int end = Math.min(start + size, allLogs.size());
-            List<AuditLog> pagedLogs = start < allLogs.size()
-                ? allLogs.subList(start, end)
-                : List.of();
-            
-            List<Map<String, Object>> result = pagedLogs.stream()
-                .map(log -> {
-                    Map<String, Object> map = new java.util.HashMap<>();
-                    map.put("id", log.getId());
-                    map.put("action", log.getAction());
-                    map.put("entityType", log.getEntityType());
-                    map.put("entityId", log.getEntityId());
-                    map.put("userId", log.getActor() != null ? log.getActor().getId() : null);
-                    map.put("username", log.getActor() != null ? log.getActor().getUsername() : "System");
-                    map.put("userRole", log.getActor() != null ? log.getActor().getRole().toString() : "SYSTEM");
-                    map.put("details", log.getDetails());
-                    map.put("createdAt", log.getTimestamp());
-                    return map;
-                })
-                .collect(Collectors.toList());
-            
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("content", result);
-            response.put("totalElements", allLogs.size());
-            response.put("totalPages", (int) Math.ceil((double) allLogs.size() / size));
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            
-            return ResponseEntity.ok(response);
-            
+            return ResponseEntity.ok(PageCursor.response(logs, log -> {
+                Map<String, Object> map = new java.util.HashMap<>();
+                map.put("id", log.getId());
+                map.put("action", log.getAction());
+                map.put("entityType", log.getEntityType());
+                map.put("entityId", log.getEntityId());
+                map.put("userId", log.getActor() != null ? log.getActor().getId() : null);
+                map.put("username", log.getActor() != null ? log.getActor().getUsername() : "System");
+                map.put("userRole", log.getActor() != null ? log.getActor().getRole().toString() : "SYSTEM");
+                map.put("details", log.getDetails());
+                map.put("createdAt", log.getTimestamp());
+                return map;
+            }, AuditLog::getTimestamp, AuditLog::getId));
+
         } catch (Exception e) {
             log.error("Failed to fetch audit logs", e);
             return ResponseEntity.badRequest().body(Map.of(
@@ -20,15 +20,18 @@ public class AnalyticsController {
     private final AnalyticsService analyticsService;
     
     /**
-     * Get score distribution
+     * Get score distribution (histogram over 0-100 with optional bucket count)
      */
     @GetMapping("/assignments/{assignmentId}/distribution")
-    public ResponseEntity<?> getScoreDistribution(@PathVariable Long assignmentId) {
+    public ResponseEntity<?> getScoreDistribution(
+        @PathVariable Long assignmentId,
+        @RequestParam(required = false) Integer buckets
+    ) {
         try {
-            var distribution = analyticsService.getScoreDistribution(assignmentId);
+            var distribution = analyticsService.getScoreDistribution(assignmentId, buckets);
             
             return ResponseEntity.ok(Map.of(
-                "scores", distribution.scores(),
+                "histogram", distribution.histogram(),
                 "mean", distribution.mean() != null ? distribution.mean() : 0,
                 "median", distribution.median() != null ? distribution.median() : 0,
                 "stdDev", distribution.stdDev() != null ? distribution.stdDev() : 0,
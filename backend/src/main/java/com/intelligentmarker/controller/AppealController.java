@@ -3,17 +3,21 @@ package com.intelligentmarker.controller;
 import com.intelligentmarker.model.Appeal;
 import com.intelligentmarker.model.Grade;
 import com.intelligentmarker.model.User;
+import com.intelligentmarker.repository.AppealRepository;
 import com.intelligentmarker.repository.GradeRepository;
 import com.intelligentmarker.repository.UserRepository;
 import com.intelligentmarker.service.AppealService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Appeal related APIs
@@ -27,6 +31,7 @@ public class AppealController {
     private final AppealService appealService;
     private final UserRepository userRepository;
     private final GradeRepository gradeRepository;
+    private final AppealRepository appealRepository;
     
     /**
      * Create an appeal
@@ -104,58 +109,46 @@ public class AppealController {
     }
     
     /**
-     * Get pending appeals list (paginated)
+     * Get pending appeals list (paginated, newest first; pass nextCursor back as cursor for the following page)
      */
     @GetMapping("/pending")
     public ResponseEntity<?> getPendingAppeals(
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "10") int size
+        @RequestParam(defaultValue = "10") int size,
+        @RequestParam(required = false) String cursor
     ) {
         try {
-            List<Appeal> allAppeals = appealService.getPendingAppeals();
-            
+            Pageable pageable = PageCursor.request(cursor, page, size);
+            Slice<Appeal> appeals;
+            if (cursor != null) {
+                PageCursor after = PageCursor.decode(cursor);
+                appeals = appealRepository.findPageByStatusBefore(
+                    Appeal.AppealStatus.PENDING, after.timestamp(), after.id(), pageable);
+            } else {
+                appeals = appealRepository.findPageByStatus(Appeal.AppealStatus.PENDING, pageable);
+            }
 
-            // Manual pagination
-            int start = page * size;
-            int end = Math.min(start + size, allAppeals.size());
-            List<Appeal> pagedAppeals = allAppeals.subList(start, end);
-            
-            List<Map<String, Object>> result = pagedAppeals.stream()
-                .map(a -> {
-                    Map<String, Object> map = new java.util.HashMap<>();
-                    map.put("id", a.getId());
-                    map.put("submissionId", a.getSubmission().getId());
-                    map.put("studentName", a.getStudent().getFullName());
-                    map.put("reason", a.getReason());
-                    map.put("status", a.getStatus());
-                    map.put("createdAt", a.getCreatedAt());
-                    
+            // Current scores for the whole page in one query
+            Map<Long, Grade> grades = gradeRepository.findBySubmissionIdIn(
+                    appeals.getContent().stream().map(a -> a.getSubmission().getId()).toList()).stream()
+                .collect(Collectors.toMap(g -> g.getSubmission().getId(), g -> g));
 
-                    // Get current score
-                    try {
-                        Grade grade = gradeRepository.findBySubmission(a.getSubmission())
-                            .orElse(null);
-                        if (grade != null) {
-                            map.put("currentScore", grade.getTeacherScore() != null ? grade.getTeacherScore() : grade.getAiScore());
-                            map.put("assignmentTitle", a.getSubmission().getAssignment().getTitle());
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to get current score for appeal {}", a.getId());
-                    }
-                    
-                    return map;
-                })
-                .toList();
-            
-            // Return paginated data
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("content", result);
-            response.put("totalElements", allAppeals.size());
-            response.put("totalPages", (int) Math.ceil((double) allAppeals.size() / size));
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(PageCursor.response(appeals, a -> {
+                Map<String, Object> map = new java.util.HashMap<>();
+                map.put("id", a.getId());
+                map.put("submissionId", a.getSubmission().getId());
+                map.put("studentName", a.getStudent().getFullName());
+                map.put("reason", a.getReason());
+                map.put("status", a.getStatus());
+                map.put("createdAt", a.getCreatedAt());
+
+                Grade grade = grades.get(a.getSubmission().getId());
+                if (grade != null) {
+                    map.put("currentScore", grade.getTeacherScore() != null ? grade.getTeacherScore() : grade.getAiScore());
+                    map.put("assignmentTitle", a.getSubmission().getAssignment().getTitle());
+                }
+                return map;
+            }, Appeal::getCreatedAt, Appeal::getId));
             
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
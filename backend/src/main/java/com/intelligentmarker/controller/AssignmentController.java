@@ -1,17 +1,23 @@
 package com.intelligentmarker.controller;
 
 import com.intelligentmarker.model.Assignment;
+import com.intelligentmarker.model.AssignmentStats;
 import com.intelligentmarker.model.ClassEntity;
 import com.intelligentmarker.model.Grade;
-import com.intelligentmarker.model.Submission;
+import com.intelligentmarker.model.RescoreJob;
 import com.intelligentmarker.model.User;
 import com.intelligentmarker.repository.AssignmentRepository;
 import com.intelligentmarker.repository.ClassRepository;
 import com.intelligentmarker.repository.GradeRepository;
 import com.intelligentmarker.repository.SubmissionRepository;
 import com.intelligentmarker.repository.UserRepository;
+import com.intelligentmarker.service.AssignmentStatsService;
+import com.intelligentmarker.service.AuditLogService;
+import com.intelligentmarker.service.BatchScoringService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -34,6 +40,9 @@ public class AssignmentController {
     private final ClassRepository classRepository;
     private final SubmissionRepository submissionRepository;
     private final GradeRepository gradeRepository;
+    private final BatchScoringService batchScoringService;
+    private final AuditLogService auditLogService;
+    private final AssignmentStatsService assignmentStatsService;
     
     /**
      * Create an assignment
@@ -81,6 +90,11 @@ public class AssignmentController {
                 log.info("Assignment linked to class: {}", classEntity.getClassId());
             }
             
+            // Handle optional scoring mode (REALTIME or BATCH)
+            if (request.get("scoringMode") != null && !request.get("scoringMode").toString().isEmpty()) {
+                assignment.setScoringMode(Assignment.ScoringMode.valueOf(request.get("scoringMode").toString()));
+            }
+            
             // Handle optional due date
             if (request.containsKey("dueDate") && request.get("dueDate") != null && !request.get("dueDate").toString().isEmpty()) {
                 try {
@@ -113,61 +127,47 @@ public class AssignmentController {
     }
     
     /**
-     * Get all assignments (paginated) - can be filtered by teacher
+     * Get all assignments (paginated, newest first) - can be filtered by teacher
+     * Pass nextCursor back as cursor for the following page
      */
     @GetMapping
     public ResponseEntity<?> getAllAssignments(
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "20") int size,
-        @RequestParam(required = false) Long teacherId
+        @RequestParam(required = false) Long teacherId,
+        @RequestParam(required = false) String cursor
     ) {
         try {
-            List<Assignment> allAssignments;
-            
-
             // If teacher ID is specified, only return assignments for that teacher
             if (teacherId != null) {
-                User teacher = userRepository.findById(teacherId)
-                    .orElseThrow(() -> new RuntimeException("Teacher not found"));
-                allAssignments = assignmentRepository.findByTeacher(teacher);
+                if (!userRepository.existsById(teacherId)) {
+                    throw new RuntimeException("Teacher not found");
+                }
                 log.info("Filtering assignments for teacher: {}", teacherId);
+            }
+
+            Pageable pageable = PageCursor.request(cursor, page, size);
+            Slice<Assignment> assignments;
+            if (cursor != null) {
+                PageCursor after = PageCursor.decode(cursor);
+                assignments = assignmentRepository.findPageBefore(teacherId, after.timestamp(), after.id(), pageable);
             } else {
-                allAssignments = assignmentRepository.findAll();
+                assignments = assignmentRepository.findPage(teacherId, pageable);
             }
-            
 
-            // Manual pagination
-            int start = page * size;
-            int end = Math.min(start + size, allAssignments.size());
-            List<Assignment> pagedAssignments = start < allAssignments.size() 
-                ? allAssignments.subList(start, end) 
-                : new ArrayList<>();
-            
-            List<Map<String, Object>> result = pagedAssignments.stream()
-                .map(a -> {
-                    Map<String, Object> map = new java.util.HashMap<>();
-                    map.put("id", a.getId());
-                    map.put("title", a.getTitle());
-                    map.put("description", a.getDescription() != null ? a.getDescription() : "");
-                    map.put("courseCode", a.getCourseCode());
-                    map.put("totalMarks", a.getTotalMarks());
-                    map.put("status", a.getStatus());
-                    map.put("dueDate", a.getDueDate() != null ? a.getDueDate().toString() : "");
-                    map.put("teacherName", a.getTeacher() != null ? a.getTeacher().getFullName() : "");
-                    return map;
-                })
-                .collect(Collectors.toList());
-            
-            // Return paginated data
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("content", result);
-            response.put("totalElements", allAssignments.size());
-            response.put("totalPages", (int) Math.ceil((double) allAssignments.size() / size));
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            
-            return ResponseEntity.ok(response);
-            
+            return ResponseEntity.ok(PageCursor.response(assignments, a -> {
+                Map<String, Object> map = new java.util.HashMap<>();
+                map.put("id", a.getId());
+                map.put("title", a.getTitle());
+                map.put("description", a.getDescription() != null ? a.getDescription() : "");
+                map.put("courseCode", a.getCourseCode());
+                map.put("totalMarks", a.getTotalMarks());
+                map.put("status", a.getStatus());
+                map.put("dueDate", a.getDueDate() != null ? a.getDueDate().toString() : "");
+                map.put("teacherName", a.getTeacher() != null ? a.getTeacher().getFullName() : "");
+                return map;
+            }, Assignment::getCreatedAt, Assignment::getId));
+
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
                 "success", false,
@@ -193,6 +193,7 @@ public class AssignmentController {
                 "totalMarks", assignment.getTotalMarks(),
                 "instructions", assignment.getInstructions() != null ? assignment.getInstructions() : "",
                 "status", assignment.getStatus(),
+                "scoringMode", assignment.getScoringMode(),
                 "dueDate", assignment.getDueDate() != null ? assignment.getDueDate().toString() : ""
             ));
 
@@ -213,50 +214,39 @@ public class AssignmentController {
             Assignment assignment = assignmentRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Assignment not found"));
 
-            // Get all submissions for this assignment
-            List<Submission> submissions = submissionRepository.findByAssignment(assignment);
+            // All submissions for this assignment with their grades, in one query
+            List<SubmissionRepository.SubmissionSummary> submissions =
+                submissionRepository.findSummariesByAssignmentId(assignment.getId());
 
-            // Calculate statistics
+            // Statistics (maintained as grades change)
+            AssignmentStats stats = assignmentStatsService.get(assignment.getId());
             int totalSubmissions = submissions.size();
-            int scoredCount = 0;
-            int publishedCount = 0;
-            int pendingCount = 0;
+            long scoredCount = stats.getScoredCount();
+            long publishedCount = stats.count(Grade.GradeStatus.PUBLISHED);
+            long pendingCount = totalSubmissions - publishedCount;
 
             List<Map<String, Object>> submissionDetails = new ArrayList<>();
 
-            for (Submission submission : submissions) {
+            for (SubmissionRepository.SubmissionSummary submission : submissions) {
                 Map<String, Object> subMap = new java.util.HashMap<>();
                 subMap.put("submissionId", submission.getId());
-                subMap.put("studentId", submission.getStudent().getId());
-                subMap.put("studentName", submission.getStudent().getFullName());
+                subMap.put("studentId", submission.getStudentId());
+                subMap.put("studentName", submission.getStudentName());
                 subMap.put("originalFileName", submission.getOriginalFileName());
                 subMap.put("submittedAt", submission.getCreatedAt());
                 subMap.put("status", submission.getStatus());
 
-                // Get grade information
-                gradeRepository.findBySubmission(submission).ifPresent(grade -> {
-                    subMap.put("gradeId", grade.getId());
-                    subMap.put("aiScore", grade.getAiScore());
-                    subMap.put("teacherScore", grade.getTeacherScore());
-                    subMap.put("finalScore", grade.getTeacherScore() != null ? grade.getTeacherScore() : grade.getAiScore());
-                    subMap.put("gradeStatus", grade.getStatus());
-                    subMap.put("publishedAt", grade.getPublishedAt());
-                });
-
-                submissionDetails.add(subMap);
-
-                // Update statistics
-                if (submission.getStatus() == Submission.SubmissionStatus.SCORED ||
-                    submission.getStatus() == Submission.SubmissionStatus.REVIEWED ||
-                    submission.getStatus() == Submission.SubmissionStatus.PUBLISHED) {
-                    scoredCount++;
+                // Grade information
+                if (submission.getGradeId() != null) {
+                    subMap.put("gradeId", submission.getGradeId());
+                    subMap.put("aiScore", submission.getAiScore());
+                    subMap.put("teacherScore", submission.getTeacherScore());
+                    subMap.put("finalScore", submission.getTeacherScore() != null ? submission.getTeacherScore() : submission.getAiScore());
+                    subMap.put("gradeStatus", submission.getGradeStatus());
+                    subMap.put("publishedAt", submission.getPublishedAt());
                 }
 
-                if (submission.getStatus() == Submission.SubmissionStatus.PUBLISHED) {
-                    publishedCount++;
-                } else {
-                    pendingCount++;
-                }
+                submissionDetails.add(subMap);
             }
 
             Map<String, Object> response = new java.util.HashMap<>();
@@ -289,5 +279,69 @@ public class AssignmentController {
             ));
         }
     }
-}
 
+    /**
+     * Re-score all graded submissions of an assignment (e.g. after editing the rubric)
+     * Runs in the background; returns the job (an already running one is returned as is)
+     */
+    @PostMapping("/{id}/rescore")
+    public ResponseEntity<?> rescoreAssignment(
+        @PathVariable Long id,
+        @RequestBody(required = false) Map<String, Object> request
+    ) {
+        try {
+            Long teacherId = request != null && request.get("teacherId") != null
+                ? Long.valueOf(request.get("teacherId").toString())
+                : null;
+
+            RescoreJob job = batchScoringService.start(id, teacherId);
+
+            if (teacherId != null) {
+                userRepository.findById(teacherId).ifPresent(teacher -> auditLogService.log(
+                    teacher,
+                    "RESCORE",
+                    "ASSIGNMENT",
+                    id,
+                    Map.of("jobId", job.getId(), "totalSubmissions", job.getTotalSubmissions())
+                ));
+            }
+
+            return ResponseEntity.accepted().body(toRescoreResponse(job));
+
+        } catch (Exception e) {
+            log.error("Failed to start re-scoring", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Progress of the latest re-score job of an assignment
+     */
+    @GetMapping("/{id}/rescore")
+    public ResponseEntity<?> getRescoreProgress(@PathVariable Long id) {
+        return batchScoringService.getLatest(id)
+            .<ResponseEntity<?>>map(job -> ResponseEntity.ok(toRescoreResponse(job)))
+            .orElseGet(() -> ResponseEntity.status(404).body(Map.of(
+                "success", false,
+                "error", "No re-score job for this assignment"
+            )));
+    }
+
+    private Map<String, Object> toRescoreResponse(RescoreJob job) {
+        Map<String, Object> response = new java.util.HashMap<>();
+        response.put("success", true);
+        response.put("jobId", job.getId());
+        response.put("assignmentId", job.getAssignmentId());
+        response.put("status", job.getStatus());
+        response.put("totalSubmissions", job.getTotalSubmissions());
+        response.put("processed", job.getProcessed());
+        response.put("failed", job.getFailed());
+        response.put("lastError", job.getLastError());
+        response.put("createdAt", job.getCreatedAt());
+        response.put("completedAt", job.getCompletedAt());
+        return response;
+    }
+}
@@ -6,6 +6,8 @@ import com.intelligentmarker.repository.ClassRepository;
 import com.intelligentmarker.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -331,47 +333,42 @@ public class ClassController {
     }
     
     /**
-     * Gell classes (paginated)t a
+     * Get all classes (paginated, newest first; pass nextCursor back as cursor for the following page)
      */
     @GetMapping
     public ResponseEntity<?> getAllClasses(
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "20") int size
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(required = false) String cursor
     ) {
         try {
-            List<ClassEntity> allClasses = classRepository.findAll();
-            
-            // Handle pagination
-            int start = page * size;
-            int end = Math.min(start + size, allClasses.size());
-            List<ClassEntity> pagedClasses = start < allClasses.size()
-                ? allClasses.subList(start, end)
-                : List.of();
-            
-            List<Map<String, Object>> result = pagedClasses.stream()
-                .map(c -> {
-                    Map<String, Object> map = new java.util.HashMap<>();
-                    map.put("id", c.getId());
-                    map.put("classId", c.getClassId());
-                    map.put("courseCode", c.getCourseCode());
-                    map.put("name", c.getName());
-                    map.put("semester", c.getSemester());
-                    map.put("teacherName", c.getTeacher().getFullName());
-                    map.put("currentSize", c.getCurrentSize());
-                    map.put("capacity", c.getCapacity());
-                    map.put("active", c.getActive());
-                    return map;
-                })
-                .collect(Collectors.toList());
-            
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("content", result);
-            response.put("totalElements", allClasses.size());
-            response.put("totalPages", (int) Math.ceil((double) allClasses.size() / size));
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            
-            return ResponseEntity.ok(response);
+            Pageable pageable = PageCursor.request(cursor, page, size);
+            Slice<ClassEntity> classes;
+            if (cursor != null) {
+                PageCursor after = PageCursor.decode(cursor);
+                classes = classRepository.findPageBefore(after.timestamp(), after.id(), pageable);
+            } else {
+                classes = classRepository.findPage(pageable);
+            }
+
+            // Student counts for the whole page in one query instead of loading each roster
+            Map<Long, Long> sizes = classRepository.countStudents(
+                    classes.getContent().stream().map(ClassEntity::getId).toList()).stream()
+                .collect(Collectors.toMap(ClassRepository.ClassSize::getClassId, ClassRepository.ClassSize::getStudents));
+
+            return ResponseEntity.ok(PageCursor.response(classes, c -> {
+                Map<String, Object> map = new java.util.HashMap<>();
+                map.put("id", c.getId());
+                map.put("classId", c.getClassId());
+                map.put("courseCode", c.getCourseCode());
+                map.put("name", c.getName());
+                map.put("semester", c.getSemester());
+                map.put("teacherName", c.getTeacher().getFullName());
+                map.put("currentSize", sizes.getOrDefault(c.getId(), 0L).intValue());
+                map.put("capacity", c.getCapacity());
+                map.put("active", c.getActive());
+                return map;
+            }, ClassEntity::getCreatedAt, ClassEntity::getId));
             
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
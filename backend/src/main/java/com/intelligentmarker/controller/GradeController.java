@@ -1,10 +1,8 @@
 package com.intelligentmarker.controller;
 
-import com.intelligentmarker.model.Assignment;
 import com.intelligentmarker.model.Grade;
 import com.intelligentmarker.model.Submission;
 import com.intelligentmarker.model.User;
-import com.intelligentmarker.repository.AssignmentRepository;
 import com.intelligentmarker.repository.GradeRepository;
 import com.intelligentmarker.repository.SubmissionRepository;
 import com.intelligentmarker.repository.UserRepository;
@@ -12,11 +10,12 @@ import com.intelligentmarker.service.AuditLogService;
 import com.intelligentmarker.service.PublishService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -33,71 +32,67 @@ public class GradeController {
     private final GradeRepository gradeRepository;
     private final SubmissionRepository submissionRepository;
     private final UserRepository userRepository;
-    private final AssignmentRepository assignmentRepository;
     private final PublishService publishService;
     private final AuditLogService auditLogService;
 
+    /**
+     * AI-graded but unpublished grades, as seen in teacher review
+     */
+    private static final List<Grade.GradeStatus> PENDING_STATUSES = List.of(
+        Grade.GradeStatus.NEEDS_REVIEW, Grade.GradeStatus.HIGH_CONFIDENCE, Grade.GradeStatus.APPROVED);
+
     /**
      * Get pending submissions for teacher review (only returns assignments created by this teacher)
+     * Oldest submission first, one projection query per page; pass nextCursor back as cursor for the
+     * following page. Offset (page/size) requests also get totalElements/totalPages for existing clients
      */
     @GetMapping("/teacher/{teacherId}/pending")
     public ResponseEntity<?> getTeacherPendingGrades(
         @PathVariable Long teacherId,
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "20") int size
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) Long assignmentId
     ) {
         try {
-            User teacher = userRepository.findById(teacherId)
-                .orElseThrow(() -> new RuntimeException("Teacher not found"));
-
-            // Get all assignments created by the teacher
-            List<Assignment> teacherAssignments = assignmentRepository.findByTeacher(teacher);
-
-            // Get all submissions for these assignments
-            List<Map<String, Object>> allPendingGrades = new ArrayList<>();
-            for (Assignment assignment : teacherAssignments) {
-                List<Submission> submissions = submissionRepository.findByAssignment(assignment);
-
-                for (Submission submission : submissions) {
-                    gradeRepository.findBySubmission(submission).ifPresent(grade -> {
-                        // Only return AI-graded but unpublished grades
-                        if (grade.getStatus() == Grade.GradeStatus.NEEDS_REVIEW ||
-                            grade.getStatus() == Grade.GradeStatus.HIGH_CONFIDENCE ||
-                            grade.getStatus() == Grade.GradeStatus.APPROVED) {
-
-                            Map<String, Object> gradeMap = new java.util.HashMap<>();
-                            gradeMap.put("gradeId", grade.getId());
-                            gradeMap.put("submissionId", submission.getId());
-                            gradeMap.put("studentId", submission.getStudent().getId());
-                            gradeMap.put("studentName", submission.getStudent().getFullName());
-                            gradeMap.put("assignmentId", assignment.getId());
-                            gradeMap.put("assignmentTitle", assignment.getTitle());
-                            gradeMap.put("courseCode", assignment.getCourseCode());
-                            gradeMap.put("aiScore", grade.getAiScore());
-                            gradeMap.put("aiConfidence", grade.getAiConfidence());
-                            gradeMap.put("teacherScore", grade.getTeacherScore());
-                            gradeMap.put("status", grade.getStatus());
-                            gradeMap.put("published", grade.getPublishedAt() != null);
-                            gradeMap.put("submittedAt", submission.getCreatedAt());
-                            allPendingGrades.add(gradeMap);
-                        }
-                    });
-                }
+            if (!userRepository.existsById(teacherId)) {
+                throw new RuntimeException("Teacher not found");
             }
 
-            // Manual pagination
-            int start = page * size;
-            int end = Math.min(start + size, allPendingGrades.size());
-            List<Map<String, Object>> pagedGrades = start < allPendingGrades.size()
-                ? allPendingGrades.subList(start, end)
-                : new ArrayList<>();
+            Pageable pageable = PageCursor.request(cursor, page, size);
+            Slice<GradeRepository.PendingGradeView> rows;
+            if (cursor != null) {
+                PageCursor after = PageCursor.decode(cursor);
+                rows = gradeRepository.findPendingForTeacherAfter(
+                    teacherId, PENDING_STATUSES, assignmentId, after.timestamp(), after.id(), pageable);
+            } else {
+                rows = gradeRepository.findPendingForTeacher(teacherId, PENDING_STATUSES, assignmentId, pageable);
+            }
 
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("content", pagedGrades);
-            response.put("totalElements", allPendingGrades.size());
-            response.put("totalPages", (int) Math.ceil((double) allPendingGrades.size() / size));
-            response.put("currentPage", page);
-            response.put("pageSize", size);
+            Map<String, Object> response = PageCursor.response(rows, row -> {
+                Map<String, Object> gradeMap = new java.util.HashMap<>();
+                gradeMap.put("gradeId", row.getGradeId());
+                gradeMap.put("submissionId", row.getSubmissionId());
+                gradeMap.put("studentId", row.getStudentId());
+                gradeMap.put("studentName", row.getStudentName());
+                gradeMap.put("assignmentId", row.getAssignmentId());
+                gradeMap.put("assignmentTitle", row.getAssignmentTitle());
+                gradeMap.put("courseCode", row.getCourseCode());
+                gradeMap.put("aiScore", row.getAiScore());
+                gradeMap.put("aiConfidence", row.getAiConfidence());
+                gradeMap.put("teacherScore", row.getTeacherScore());
+                gradeMap.put("status", row.getStatus());
+                gradeMap.put("published", row.getPublishedAt() != null);
+                gradeMap.put("submittedAt", row.getSubmittedAt());
+                return gradeMap;
+            }, GradeRepository.PendingGradeView::getSubmittedAt, GradeRepository.PendingGradeView::getGradeId);
+
+            // Totals only for offset paging; keyset clients follow nextCursor and skip the count query
+            if (cursor == null) {
+                long totalElements = gradeRepository.countPendingForTeacher(teacherId, PENDING_STATUSES, assignmentId);
+                response.put("totalElements", totalElements);
+                response.put("totalPages", (int) Math.ceil((double) totalElements / pageable.getPageSize()));
+            }
 
             return ResponseEntity.ok(response);
 
@@ -154,31 +149,26 @@ public class GradeController {
     @GetMapping("/student/{studentId}")
     public ResponseEntity<?> getStudentGrades(@PathVariable Long studentId) {
         try {
-            User student = userRepository.findById(studentId)
-                .orElseThrow(() -> new RuntimeException("Student not found"));
+            if (!userRepository.existsById(studentId)) {
+                throw new RuntimeException("Student not found");
+            }
 
-            List<Submission> submissions = submissionRepository.findByStudent(student);
-
-            List<Map<String, Object>> grades = submissions.stream()
-                .map(submission -> {
-                    return gradeRepository.findBySubmission(submission)
-                        .map(grade -> {
-                            java.util.Map<String, Object> gradeMap = new java.util.HashMap<>();
-                            gradeMap.put("id", grade.getId());
-                            gradeMap.put("submissionId", submission.getId());
-                            gradeMap.put("assignmentTitle", submission.getAssignment().getTitle());
-                            gradeMap.put("aiScore", grade.getAiScore());
-                            gradeMap.put("aiConfidence", grade.getAiConfidence());
-                            gradeMap.put("teacherScore", grade.getTeacherScore());
-                            gradeMap.put("teacherComments", grade.getTeacherComments());
-                            gradeMap.put("aiFeedback", grade.getAiFeedback());
-                            gradeMap.put("status", grade.getStatus());
-                            gradeMap.put("publishedAt", grade.getPublishedAt());
-                            return gradeMap;
-                        })
-                        .orElse(null);
+            // Only published grades, in one query
+            List<Map<String, Object>> grades = gradeRepository.findPublishedForStudent(studentId).stream()
+                .map(grade -> {
+                    java.util.Map<String, Object> gradeMap = new java.util.HashMap<>();
+                    gradeMap.put("id", grade.getId());
+                    gradeMap.put("submissionId", grade.getSubmissionId());
+                    gradeMap.put("assignmentTitle", grade.getAssignmentTitle());
+                    gradeMap.put("aiScore", grade.getAiScore());
+                    gradeMap.put("aiConfidence", grade.getAiConfidence());
+                    gradeMap.put("teacherScore", grade.getTeacherScore());
+                    gradeMap.put("teacherComments", grade.getTeacherComments());
+                    gradeMap.put("aiFeedback", grade.getAiFeedback());
+                    gradeMap.put("status", grade.getStatus());
+                    gradeMap.put("publishedAt", grade.getPublishedAt());
+                    return gradeMap;
                 })
-                .filter(g -> g != null && g.get("publishedAt") != null) // Only return published grades
                 .collect(Collectors.toList());
 
             return ResponseEntity.ok(grades);
@@ -0,0 +1,72 @@
+package com.intelligentmarker.controller;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keyset position (timestamp, id) of the last row of a list page ordered on that pair (newest first,
+ * except the oldest-first teacher review queue)
+ * Sent to clients as an opaque base64url token (nextCursor) that they pass back as ?cursor=
+ * to get the following page; page/size offset paging stays available for existing clients
+ */
+record PageCursor(LocalDateTime timestamp, long id) {
+
+    static final int MAX_PAGE_SIZE = 200;
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((timestamp + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by encode
+     */
+    static PageCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf('|');
+            return new PageCursor(LocalDateTime.parse(value.substring(0, separator)),
+                Long.parseLong(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Page request for either paging style: keyset pages always start at offset 0
+     */
+    static Pageable request(String cursor, int page, int size) {
+        return PageRequest.of(cursor != null ? 0 : Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Standard list response: content, currentPage, pageSize, hasNext and nextCursor
+     */
+    static <T> Map<String, Object> response(Slice<T> slice, Function<T, Map<String, Object>> mapper,
+                                            Function<T, LocalDateTime> timestamp, ToLongFunction<T> id) {
+        List<T> rows = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext() && !rows.isEmpty()) {
+            T last = rows.get(rows.size() - 1);
+            nextCursor = new PageCursor(timestamp.apply(last), id.applyAsLong(last)).encode();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", rows.stream().map(mapper).toList());
+        response.put("currentPage", slice.getNumber());
+        response.put("pageSize", slice.getSize());
+        response.put("hasNext", slice.hasNext());
+        response.put("nextCursor", nextCursor);
+        return response;
+    }
+}
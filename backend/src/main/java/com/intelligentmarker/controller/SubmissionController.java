@@ -4,20 +4,41 @@ import com.intelligentmarker.model.Assignment;
 import com.intelligentmarker.model.ClassEntity;
 import com.intelligentmarker.model.Course;
 import com.intelligentmarker.model.Submission;
+import com.intelligentmarker.model.SubmissionText;
 import com.intelligentmarker.model.User;
 import com.intelligentmarker.repository.AssignmentRepository;
 import com.intelligentmarker.repository.ClassRepository;
 import com.intelligentmarker.repository.CourseEnrollmentRepository;
 import com.intelligentmarker.repository.CourseRepository;
+import com.intelligentmarker.repository.GradeRepository;
+import com.intelligentmarker.repository.SubmissionRepository;
+import com.intelligentmarker.repository.SubmissionTextRepository;
 import com.intelligentmarker.repository.UserRepository;
+import com.intelligentmarker.service.ScoringStreamBroadcaster;
+import com.intelligentmarker.service.StorageService;
+import com.intelligentmarker.service.SubmissionQueueService;
 import com.intelligentmarker.service.SubmissionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Submission related APIs
@@ -29,11 +50,17 @@ import java.util.Map;
 public class SubmissionController {
     
     private final SubmissionService submissionService;
+    private final SubmissionQueueService submissionQueueService;
     private final UserRepository userRepository;
     private final AssignmentRepository assignmentRepository;
     private final CourseEnrollmentRepository courseEnrollmentRepository;
     private final CourseRepository courseRepository;
     private final ClassRepository classRepository;
+    private final GradeRepository gradeRepository;
+    private final SubmissionRepository submissionRepository;
+    private final SubmissionTextRepository submissionTextRepository;
+    private final ScoringStreamBroadcaster scoringStreamBroadcaster;
+    private final StorageService storageService;
     
     /**
      * Upload assignment
@@ -100,11 +127,19 @@ public class SubmissionController {
                 log.info("Student {} verified in class {}", studentId, assignmentClass.getClassId());
             }
             
-            // Create submission record (within transaction)
-            Submission submission = submissionService.createSubmission(student, assignment, file);
+            // ✅ Backpressure: reject while the processing queue is full instead of dropping work
+            if (!submissionQueueService.hasCapacity()) {
+                log.warn("Submission queue full, rejecting upload from student {}", studentId);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of(
+                        "success", false,
+                        "error", "The grading queue is currently full. Please try again in a moment."
+                    ));
+            }
             
-            // Trigger asynchronous processing (outside transaction to avoid rollback conflicts)
-            submissionService.triggerAsyncProcessing(submission.getId());
+            // Create submission record and processing job (within transaction)
+            Submission submission = submissionService.createSubmission(student, assignment, file);
             
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -128,17 +163,18 @@ public class SubmissionController {
     @GetMapping("/assignment/{assignmentId}")
     public ResponseEntity<?> getSubmissionsByAssignment(@PathVariable Long assignmentId) {
         try {
-            Assignment assignment = assignmentRepository.findById(assignmentId)
-                .orElseThrow(() -> new RuntimeException("Assignment not found"));
+            if (!assignmentRepository.existsById(assignmentId)) {
+                throw new RuntimeException("Assignment not found");
+            }
             
-            var submissions = submissionService.getSubmissionsByAssignment(assignment);
+            var submissions = submissionRepository.findSummariesByAssignmentId(assignmentId);
             
             return ResponseEntity.ok(submissions.stream()
                 .map(submission -> {
                     java.util.Map<String, Object> subMap = new java.util.HashMap<>();
                     subMap.put("id", submission.getId());
-                    subMap.put("studentId", submission.getStudent().getId());
-                    subMap.put("studentName", submission.getStudent().getFullName());
+                    subMap.put("studentId", submission.getStudentId());
+                    subMap.put("studentName", submission.getStudentName());
                     subMap.put("originalFileName", submission.getOriginalFileName());
                     subMap.put("status", submission.getStatus());
                     subMap.put("createdAt", submission.getCreatedAt());
@@ -170,9 +206,7 @@ public class SubmissionController {
                 "originalFileName", submission.getOriginalFileName(),
                 "createdAt", submission.getCreatedAt(),
                 "updatedAt", submission.getUpdatedAt(),
-                "ocrTextPreview", submission.getOcrText() != null 
-                    ? submission.getOcrText().substring(0, Math.min(200, submission.getOcrText().length())) 
-                    : null
+                "ocrTextPreview", submissionTextRepository.findOcrTextPrefix(id, 200).orElse(null)
             ));
             
         } catch (Exception e) {
@@ -190,13 +224,14 @@ public class SubmissionController {
     public ResponseEntity<?> getSubmissionContent(@PathVariable Long id) {
         try {
             Submission submission = submissionService.getSubmission(id);
+            SubmissionText text = submissionTextRepository.findById(id).orElseGet(SubmissionText::new);
             
             return ResponseEntity.ok(Map.of(
                 "id", submission.getId(),
                 "originalFileName", submission.getOriginalFileName(),
-                "originalText", submission.getOcrText() != null ? submission.getOcrText() : "",
-                "ocrText", submission.getOcrText() != null ? submission.getOcrText() : "",
-                "anonymizedText", submission.getAnonymizedText() != null ? submission.getAnonymizedText() : "",
+                "originalText", text.getOcrText() != null ? text.getOcrText() : "",
+                "ocrText", text.getOcrText() != null ? text.getOcrText() : "",
+                "anonymizedText", text.getAnonymizedText() != null ? text.getAnonymizedText() : "",
                 "originalFileUrl", submission.getOriginalDocUrl() != null ? submission.getOriginalDocUrl() : ""
             ));
             
@@ -208,6 +243,64 @@ public class SubmissionController {
         }
     }
     
+    /**
+     * Download the original file
+     * Local files go out through Tomcat's sendfile when the connector supports it (the kernel copies the file
+     * to the socket); otherwise, and for OSS, the file is streamed through a small buffer, never loaded whole
+     */
+    @GetMapping("/{id}/file")
+    public ResponseEntity<?> downloadOriginalFile(@PathVariable Long id, HttpServletRequest request,
+                                                  HttpServletResponse response) {
+        try {
+            Submission submission = submissionService.getSubmission(id);
+            String fileUrl = submission.getOriginalDocUrl();
+            if (fileUrl == null || fileUrl.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                    "success", false,
+                    "error", "Submission has no stored file"
+                ));
+            }
+
+            String fileName = submission.getOriginalFileName() != null
+                ? submission.getOriginalFileName() : "submission-" + id;
+            MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            String disposition = ContentDisposition.attachment()
+                .filename(fileName, StandardCharsets.UTF_8).build().toString();
+
+            Optional<Path> localFile = storageService.localPath(fileUrl);
+            if (localFile.isPresent()) {
+                Path path = localFile.get();
+                long size = Files.size(path);
+                if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+                    response.setContentType(contentType.toString());
+                    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+                    response.setContentLengthLong(size);
+                    request.setAttribute("org.apache.tomcat.sendfile.filename", path.toAbsolutePath().toString());
+                    request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+                    request.setAttribute("org.apache.tomcat.sendfile.end", size);
+                    return null; // Response fully described; Tomcat writes the body
+                }
+                return ResponseEntity.ok()
+                    .contentType(contentType)
+                    .contentLength(size)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
+                    .body(new FileSystemResource(path));
+            }
+
+            return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
+                .body(new InputStreamResource(storageService.openStream(fileUrl)));
+
+        } catch (Exception e) {
+            log.error("Failed to download file for submission {}", id, e);
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+
     /**
      * Get submission status (for polling)
      */
@@ -229,5 +322,35 @@ public class SubmissionController {
             ));
         }
     }
-}
 
+    /**
+     * Stream scoring progress (server-sent events)
+     * Events: delta (feedback text as generated), score (totalScore + confidence as soon as known),
+     * done (final grade) or error. Already scored submissions get a single done event
+     */
+    @GetMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSubmission(@PathVariable Long id) {
+        Submission submission = submissionService.getSubmission(id);
+        // Subscribe before reading the status, so scoring that finishes in between is not missed
+        SseEmitter emitter = scoringStreamBroadcaster.subscribe(id);
+        Submission.SubmissionStatus status = submissionRepository.findStatusById(id).orElse(submission.getStatus());
+
+        boolean inProgress = switch (status) {
+            case UPLOADED, OCR_PROCESSING, ANONYMIZING, SCORING -> true;
+            default -> false;
+        };
+        if (!inProgress) {
+            Map<String, Object> result = new java.util.HashMap<>();
+            result.put("status", status);
+            gradeRepository.findBySubmission(submission).ifPresent(grade -> {
+                result.put("gradeId", grade.getId());
+                result.put("totalScore", grade.getAiScore());
+                result.put("confidence", grade.getAiConfidence());
+                result.put("status", grade.getStatus());
+            });
+            scoringStreamBroadcaster.complete(id,
+                status == Submission.SubmissionStatus.FAILED ? "error" : "done", result);
+        }
+        return emitter;
+    }
+}
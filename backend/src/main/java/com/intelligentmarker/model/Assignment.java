@@ -3,14 +3,19 @@ package com.intelligentmarker.model;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "assignments")
+@Table(name = "assignments", indexes = {
+    @Index(name = "idx_assignments_teacher_created", columnList = "teacher_id, created_at, id"),
+    @Index(name = "idx_assignments_created", columnList = "created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,16 +31,20 @@ public class Assignment {
     @Column(columnDefinition = "TEXT")
     private String description;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "teacher_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private User teacher;
     
     /**
      * Associated class (newly added)
      * Assignments now belong to a class instead of a generic courseCode
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "class_id")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private ClassEntity classEntity;
 
     /**
@@ -56,6 +65,10 @@ public class Assignment {
     @Column(nullable = false)
     private AssignmentStatus status;
     
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "VARCHAR(20) DEFAULT 'REALTIME'")
+    private ScoringMode scoringMode = ScoringMode.REALTIME; // How submissions are sent to OpenAI
+    
     @CreationTimestamp
     private LocalDateTime createdAt;
     
@@ -67,5 +80,10 @@ public class Assignment {
         PUBLISHED,
         CLOSED
     }
+    
+    public enum ScoringMode {
+        REALTIME,   // Scored as soon as the submission reaches the SCORE stage
+        BATCH       // Collected into OpenAI Batch API jobs (lower cost, results within 24h)
+    }
 }
 
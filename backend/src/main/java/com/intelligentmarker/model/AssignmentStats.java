@@ -0,0 +1,59 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Materialized grade statistics of one assignment
+ * Kept current by AssignmentStatsWriter on every grade change and reconciled periodically,
+ * so dashboards read one row instead of aggregating all grades. Only written through SQL
+ */
+@Entity
+@Table(name = "assignment_stats")
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AssignmentStats {
+
+    public static final int HISTOGRAM_BUCKETS = 100; // One point wide over 0-100
+
+    @Id
+    private Long assignmentId;
+
+    // Grades by status
+    private long highConfidenceCount;
+    private long needsReviewCount;
+    private long approvedCount;
+    private long publishedCount;
+    private long appealedCount;
+
+    private long scoredCount; // Grades with a score (teacher score, else AI score)
+
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal scoreSum;
+
+    @Column(precision = 18, scale = 4, nullable = false)
+    private BigDecimal scoreSumSq; // Sum of squared scores, for the standard deviation
+
+    @Column(nullable = false)
+    private long[] histogram; // Scores per bucket [i, i + 1); 100 falls into the last bucket
+
+    private LocalDateTime updatedAt;
+
+    public long count(Grade.GradeStatus status) {
+        return switch (status) {
+            case HIGH_CONFIDENCE -> highConfidenceCount;
+            case NEEDS_REVIEW -> needsReviewCount;
+            case APPROVED -> approvedCount;
+            case PUBLISHED -> publishedCount;
+            case APPEALED -> appealedCount;
+        };
+    }
+}
@@ -9,7 +9,10 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "audit_logs")
+@Table(name = "audit_logs", indexes = {
+    @Index(name = "idx_audit_logs_timestamp", columnList = "timestamp, id"),
+    @Index(name = "idx_audit_logs_action_timestamp", columnList = "action, timestamp, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,61 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Submission waiting for (or sent in) an OpenAI batch
+ */
+@Entity
+@Table(name = "batch_scoring_requests", indexes = {
+    @Index(name = "idx_batch_scoring_requests_status", columnList = "status, created_at"),
+    @Index(name = "idx_batch_scoring_requests_batch", columnList = "batch_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchScoringRequest {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "submission_id", nullable = false, unique = true)
+    private Long submissionId;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String prompt; // Exact scoring messages as JSON (also the scoring cache key input)
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private RequestStatus status;
+
+    @Column(name = "batch_id")
+    private Long batchId; // OpenAiBatch the request was last sent in
+
+    @Column(nullable = false)
+    private Integer attempts; // Batches the request has been sent in
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum RequestStatus {
+        QUEUED,     // Waiting for the next batch
+        SUBMITTED,  // Part of a running batch
+        COMPLETED,  // Result applied
+        FAILED      // Attempts exhausted
+    }
+}
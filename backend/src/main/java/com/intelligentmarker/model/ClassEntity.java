@@ -19,7 +19,9 @@ import java.util.List;
  * - Teachers can only see submissions for their own class
  */
 @Entity
-@Table(name = "classes")
+@Table(name = "classes", indexes = {
+    @Index(name = "idx_classes_created", columnList = "created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
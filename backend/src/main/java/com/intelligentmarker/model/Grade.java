@@ -3,7 +3,9 @@ package com.intelligentmarker.model;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -11,7 +13,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "grades")
+@Table(name = "grades", indexes = {
+    @Index(name = "idx_grades_status_id", columnList = "status, id")
+})
+@EntityListeners(GradeStatsListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,8 +26,10 @@ public class Grade {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "submission_id", nullable = false, unique = true)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Submission submission;
     
     @Column(precision = 5, scale = 2)
@@ -47,8 +54,10 @@ public class Grade {
     @Column(nullable = false)
     private GradeStatus status;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "reviewed_by")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private User reviewedBy; // Reviewing teacher
     
     private LocalDateTime reviewedAt;
@@ -60,6 +69,11 @@ public class Grade {
     
     @UpdateTimestamp
     private LocalDateTime updatedAt;
+
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private GradeStatsListener.State statsState; // As last read or written, for assignment_stats increments
     
     public enum GradeStatus {
         HIGH_CONFIDENCE,    // High confidence, recommend auto-approval
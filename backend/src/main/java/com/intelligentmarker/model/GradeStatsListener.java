@@ -0,0 +1,81 @@
+package com.intelligentmarker.model;
+
+import com.intelligentmarker.service.AssignmentStatsWriter;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.hibernate.Hibernate;
+
+import java.math.BigDecimal;
+
+/**
+ * Keeps assignment_stats current as grades are created, changed and deleted through JPA
+ * The state last read from or written to the database is remembered on the Grade, so each write applies
+ * the difference. Instantiated by Hibernate through Spring's bean container, so dependencies are constructor injected
+ */
+public class GradeStatsListener {
+
+    private final AssignmentStatsWriter statsWriter;
+
+    public GradeStatsListener(AssignmentStatsWriter statsWriter) {
+        this.statsWriter = statsWriter;
+    }
+
+    @PostLoad
+    void onLoad(Grade grade) {
+        grade.setStatsState(State.of(grade));
+    }
+
+    @PostPersist
+    @PostUpdate
+    void onWrite(Grade grade) {
+        State before = grade.getStatsState();
+        State after = State.of(grade);
+        grade.setStatsState(after);
+        Long assignmentId = assignmentId(grade);
+        if (assignmentId == null) {
+            return;
+        }
+        AssignmentStatsWriter.Delta delta = new AssignmentStatsWriter.Delta().add(after.status(), after.score());
+        if (before != null) {
+            delta.remove(before.status(), before.score());
+        }
+        statsWriter.apply(assignmentId, delta);
+    }
+
+    @PostRemove
+    void onRemove(Grade grade) {
+        State before = grade.getStatsState() != null ? grade.getStatsState() : State.of(grade);
+        grade.setStatsState(null);
+        Long assignmentId = assignmentId(grade);
+        if (assignmentId != null) {
+            statsWriter.apply(assignmentId, new AssignmentStatsWriter.Delta().remove(before.status(), before.score()));
+        }
+    }
+
+    /**
+     * Assignment of the grade's submission, without loading a lazy submission inside the callback
+     */
+    private Long assignmentId(Grade grade) {
+        Submission submission = grade.getSubmission();
+        if (submission == null || submission.getId() == null) {
+            return null;
+        }
+        if (Hibernate.isInitialized(submission) && submission.getAssignment() != null) {
+            return submission.getAssignment().getId();
+        }
+        return statsWriter.assignmentOf(submission.getId());
+    }
+
+    /**
+     * Part of a grade the statistics depend on
+     */
+    public record State(Grade.GradeStatus status, BigDecimal score) {
+
+        static State of(Grade grade) {
+            BigDecimal score = grade.getTeacherScore() != null ? grade.getTeacherScore() : grade.getAiScore();
+            return new State(grade.getStatus(), score);
+        }
+    }
+}
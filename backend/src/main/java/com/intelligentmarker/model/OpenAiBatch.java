@@ -0,0 +1,60 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Batch job submitted to the OpenAI Batch API (BATCH scoring mode)
+ */
+@Entity
+@Table(name = "openai_batches", indexes = {
+    @Index(name = "idx_openai_batches_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OpenAiBatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String openaiBatchId; // batch_... id returned by OpenAI
+
+    @Column(nullable = false)
+    private String inputFileId; // Uploaded JSONL file
+
+    private String outputFileId;
+
+    private String errorFileId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private BatchStatus status;
+
+    private String remoteStatus; // Last status reported by OpenAI (validating, in_progress, finalizing, ...)
+
+    @Column(nullable = false)
+    private Integer requestCount;
+
+    private LocalDateTime completedAt;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum BatchStatus {
+        SUBMITTED,  // Running at OpenAI
+        APPLIED,    // Results written to grades
+        FAILED      // Failed, expired or cancelled at OpenAI (requests were re-queued)
+    }
+}
@@ -0,0 +1,74 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Assignment-level batch re-scoring job
+ * Submissions are processed in id order; lastSubmissionId is the resume cursor after a restart
+ */
+@Entity
+@Table(name = "rescore_jobs", indexes = {
+    @Index(name = "idx_rescore_jobs_assignment", columnList = "assignment_id"),
+    @Index(name = "idx_rescore_jobs_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RescoreJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "assignment_id", nullable = false)
+    private Long assignmentId;
+
+    private Long requestedBy; // Teacher who started the job (optional)
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private RescoreStatus status;
+
+    @Column(nullable = false)
+    private Integer totalSubmissions; // Graded submissions when the job was created
+
+    @Column(nullable = false)
+    private Integer processed; // Submissions scored so far
+
+    @Column(nullable = false)
+    private Integer failed; // Submissions whose scoring failed (left unchanged)
+
+    @Column(nullable = false)
+    private Long lastSubmissionId; // Highest submission id already processed
+
+    private String lockedBy; // Node running the job
+
+    private LocalDateTime heartbeatAt; // Renewed on a timer while running; stale jobs are taken over
+
+    private LocalDateTime availableAt; // PENDING job deferred until the chat circuit may close (null = now)
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    private LocalDateTime completedAt;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum RescoreStatus {
+        PENDING,    // Waiting to be picked up
+        RUNNING,    // In progress
+        COMPLETED,  // All submissions processed
+        FAILED      // Aborted (assignment missing or unexpected error)
+    }
+}
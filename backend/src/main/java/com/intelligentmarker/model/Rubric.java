@@ -11,6 +11,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "rubrics")
+@EntityListeners(RubricChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
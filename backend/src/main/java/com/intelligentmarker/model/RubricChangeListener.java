@@ -0,0 +1,42 @@
+package com.intelligentmarker.model;
+
+import com.intelligentmarker.service.RubricPromptCache;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Drops the cached rubric prompt section when a rubric changes
+ * Instantiated by Hibernate through Spring's bean container, so dependencies are constructor injected
+ */
+public class RubricChangeListener {
+
+    private final RubricPromptCache rubricPromptCache;
+
+    public RubricChangeListener(RubricPromptCache rubricPromptCache) {
+        this.rubricPromptCache = rubricPromptCache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void onChange(Rubric rubric) {
+        if (rubric.getAssignment() == null || rubric.getAssignment().getId() == null) {
+            return;
+        }
+        Long assignmentId = rubric.getAssignment().getId();
+        rubricPromptCache.invalidate(assignmentId);
+
+        // Again after commit, so a scoring call reading the old rows in between cannot re-cache them
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rubricPromptCache.invalidate(assignmentId);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persistent tier of the AI scoring cache
+ * Keyed by SHA-256 of model, temperature and the exact prompt, so identical inputs reuse one OpenAI response
+ */
+@Entity
+@Table(name = "scoring_cache", indexes = {
+    @Index(name = "idx_scoring_cache_created_at", columnList = "created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoringCacheEntry {
+
+    @Id
+    @Column(length = 64)
+    private String cacheKey; // SHA-256 hex of model + temperature + prompt
+
+    @Column(nullable = false)
+    private String model; // Model that produced the response
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String response; // Raw OpenAI response
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
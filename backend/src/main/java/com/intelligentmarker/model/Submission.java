@@ -3,14 +3,23 @@ package com.intelligentmarker.model;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
+/**
+ * Submission of one student for one assignment
+ * The extracted and anonymized text live in the same row but are mapped by SubmissionText,
+ * so loading submissions for lists and status changes does not read them
+ */
 @Entity
-@Table(name = "submissions")
+@Table(name = "submissions", indexes = {
+    @Index(name = "idx_submissions_assignment", columnList = "assignment_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,12 +29,16 @@ public class Submission {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "student_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private User student;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "assignment_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Assignment assignment;
     
     @Column(length = 500)
@@ -34,12 +47,6 @@ public class Submission {
     @Column(length = 500)
     private String anonymizedDocUrl; // Aliyun OSS anonymized file URL
 
-    @Column(columnDefinition = "TEXT")
-    private String ocrText; // OCR extracted text
-
-    @Column(columnDefinition = "TEXT")
-    private String anonymizedText; // Anonymized text
-    
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private SubmissionStatus status;
@@ -0,0 +1,100 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Durable submission processing job
+ * One row per submission; the job moves through the pipeline stages (OCR → ANONYMIZE → SCORE)
+ * and each stage's workers claim PENDING rows of that stage with SELECT ... FOR UPDATE SKIP LOCKED
+ */
+@Entity
+@Table(name = "submission_jobs", indexes = {
+    @Index(name = "idx_submission_jobs_stage_status_available", columnList = "stage, status, available_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubmissionJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "submission_id", nullable = false, unique = true)
+    private Long submissionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "VARCHAR(20) DEFAULT 'OCR'")
+    private Stage stage; // Pipeline stage the job is queued for or running in
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private JobStatus status;
+
+    @Column(nullable = false)
+    private Integer attempts; // Number of times a worker has claimed this job
+
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt; // Job is not claimed before this time (retry backoff)
+
+    private LocalDateTime lockedAt; // When the current worker claimed the job
+
+    private String lockedBy; // Worker instance holding the job
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError; // Last processing error
+
+    @Column(columnDefinition = "TEXT")
+    private String visionAnalysis; // Handed from the OCR stage to the SCORE stage (images only)
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum JobStatus {
+        PENDING,    // Waiting for a worker of the current stage
+        RUNNING,    // Claimed by a worker
+        DEFERRED,   // Waiting on an OpenAI batch (BATCH scoring mode)
+        COMPLETED,  // Pipeline finished (submission may still be FAILED)
+        FAILED      // Retries exhausted
+    }
+
+    /**
+     * Pipeline stages, one per processing step of Submission.SubmissionStatus
+     */
+    public enum Stage {
+        OCR(Submission.SubmissionStatus.OCR_PROCESSING),      // Text extraction (Tesseract/PDFBox, Vision for images)
+        ANONYMIZE(Submission.SubmissionStatus.ANONYMIZING),   // Redaction + anonymized text upload
+        SCORE(Submission.SubmissionStatus.SCORING);           // AI scoring
+
+        private final Submission.SubmissionStatus status;
+
+        Stage(Submission.SubmissionStatus status) {
+            this.status = status;
+        }
+
+        public Submission.SubmissionStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Stage to resume a submission left in the given status
+         */
+        public static Stage forStatus(Submission.SubmissionStatus status) {
+            return switch (status) {
+                case ANONYMIZING -> ANONYMIZE;
+                case SCORING -> SCORE;
+                default -> OCR;
+            };
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.intelligentmarker.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Extracted and anonymized text of a submission
+ * Maps the text columns of the submissions row, so they are only read where the text is needed.
+ * Rows are created by Submission; this entity is never persisted, only read and updated via SubmissionTextRepository
+ */
+@Entity
+@Table(name = "submissions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubmissionText {
+
+    // Shared columns are declared as in Submission, so the generated schema is the same whichever entity comes first
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id; // Submission id
+
+    @Column(name = "assignment_id", nullable = false, insertable = false, updatable = false)
+    private Long assignmentId;
+
+    @Column(columnDefinition = "TEXT")
+    private String ocrText; // OCR extracted text
+
+    @Column(columnDefinition = "TEXT")
+    private String anonymizedText; // Anonymized text
+}
@@ -2,14 +2,38 @@ package com.intelligentmarker.repository;
 
 import com.intelligentmarker.model.Appeal;
 import com.intelligentmarker.model.Submission;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface AppealRepository extends JpaRepository<Appeal, Long> {
     List<Appeal> findBySubmission(Submission submission);
     List<Appeal> findByStatus(Appeal.AppealStatus status);
+
+    /**
+     * Appeals in a status, newest first (offset paging)
+     */
+    @Query("SELECT a FROM Appeal a JOIN FETCH a.submission s JOIN FETCH s.assignment JOIN FETCH a.student " +
+           "WHERE a.status = :status ORDER BY a.createdAt DESC, a.id DESC")
+    Slice<Appeal> findPageByStatus(@Param("status") Appeal.AppealStatus status, Pageable pageable);
+
+    /**
+     * Page following the (createdAt, id) position of the previous page's last row
+     */
+    @Query("SELECT a FROM Appeal a JOIN FETCH a.submission s JOIN FETCH s.assignment JOIN FETCH a.student " +
+           "WHERE a.status = :status " +
+           "AND (a.createdAt < :createdAt OR (a.createdAt = :createdAt AND a.id < :id)) " +
+           "ORDER BY a.createdAt DESC, a.id DESC")
+    Slice<Appeal> findPageByStatusBefore(@Param("status") Appeal.AppealStatus status,
+                                         @Param("createdAt") LocalDateTime createdAt,
+                                         @Param("id") Long id,
+                                         Pageable pageable);
 }
 
@@ -2,14 +2,41 @@ package com.intelligentmarker.repository;
 
 import com.intelligentmarker.model.Assignment;
 import com.intelligentmarker.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface AssignmentRepository extends JpaRepository<Assignment, Long> {
     List<Assignment> findByTeacher(User teacher);
     List<Assignment> findByStatus(Assignment.AssignmentStatus status);
+
+    /**
+     * Newest first, optionally for one teacher (offset paging)
+     */
+    @Query("SELECT a FROM Assignment a JOIN FETCH a.teacher " +
+           "WHERE (:teacherId IS NULL OR a.teacher.id = :teacherId) ORDER BY a.createdAt DESC, a.id DESC")
+    Slice<Assignment> findPage(@Param("teacherId") Long teacherId, Pageable pageable);
+
+    /**
+     * Page following the (createdAt, id) position of the previous page's last row
+     */
+    @Query("SELECT a FROM Assignment a JOIN FETCH a.teacher " +
+           "WHERE (:teacherId IS NULL OR a.teacher.id = :teacherId) " +
+           "AND (a.createdAt < :createdAt OR (a.createdAt = :createdAt AND a.id < :id)) " +
+           "ORDER BY a.createdAt DESC, a.id DESC")
+    Slice<Assignment> findPageBefore(@Param("teacherId") Long teacherId,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+
+    @Query("SELECT a.id FROM Assignment a ORDER BY a.id")
+    List<Long> findAllIds();
 }
 
@@ -0,0 +1,9 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.AssignmentStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AssignmentStatsRepository extends JpaRepository<AssignmentStats, Long> {
+}
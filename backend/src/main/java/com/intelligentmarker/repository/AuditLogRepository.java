@@ -1,14 +1,38 @@
 package com.intelligentmarker.repository;
 
 import com.intelligentmarker.model.AuditLog;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     List<AuditLog> findByEntityTypeAndEntityId(String entityType, Long entityId);
     List<AuditLog> findByAction(String action);
+
+    /**
+     * Newest first, optionally filtered by action (offset paging)
+     */
+    @Query("SELECT l FROM AuditLog l LEFT JOIN FETCH l.actor " +
+           "WHERE (:action IS NULL OR l.action = :action) ORDER BY l.timestamp DESC, l.id DESC")
+    Slice<AuditLog> findPage(@Param("action") String action, Pageable pageable);
+
+    /**
+     * Page following the (timestamp, id) position of the previous page's last row
+     */
+    @Query("SELECT l FROM AuditLog l LEFT JOIN FETCH l.actor " +
+           "WHERE (:action IS NULL OR l.action = :action) " +
+           "AND (l.timestamp < :timestamp OR (l.timestamp = :timestamp AND l.id < :id)) " +
+           "ORDER BY l.timestamp DESC, l.id DESC")
+    Slice<AuditLog> findPageBefore(@Param("action") String action,
+                                   @Param("timestamp") LocalDateTime timestamp,
+                                   @Param("id") Long id,
+                                   Pageable pageable);
 }
 
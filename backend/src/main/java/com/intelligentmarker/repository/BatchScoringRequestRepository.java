@@ -0,0 +1,41 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.BatchScoringRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BatchScoringRequestRepository extends JpaRepository<BatchScoringRequest, Long> {
+    Optional<BatchScoringRequest> findBySubmissionId(Long submissionId);
+    List<BatchScoringRequest> findByStatusOrderByCreatedAtAsc(BatchScoringRequest.RequestStatus status, Pageable pageable);
+    List<BatchScoringRequest> findByBatchIdAndStatus(Long batchId, BatchScoringRequest.RequestStatus status);
+    long countByStatus(BatchScoringRequest.RequestStatus status);
+
+    /**
+     * Claim the oldest queued requests for a new batch; rows claimed by another node are skipped
+     * (claimed rows are SUBMITTED without a batch until the batch is created)
+     */
+    @Query(value = "UPDATE batch_scoring_requests SET status = 'SUBMITTED', updated_at = now() " +
+                   "WHERE id IN (SELECT id FROM batch_scoring_requests WHERE status = 'QUEUED' " +
+                   "ORDER BY created_at, id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id", nativeQuery = true)
+    List<Long> claimQueued(@Param("limit") int limit);
+
+    /**
+     * Put back requests claimed by a node that died before creating their batch
+     */
+    @Modifying
+    @Query("UPDATE BatchScoringRequest r SET r.status = :queued " +
+           "WHERE r.status = :submitted AND r.batchId IS NULL AND r.updatedAt < :before")
+    int requeueUnbatched(@Param("queued") BatchScoringRequest.RequestStatus queued,
+                         @Param("submitted") BatchScoringRequest.RequestStatus submitted,
+                         @Param("before") LocalDateTime before);
+}
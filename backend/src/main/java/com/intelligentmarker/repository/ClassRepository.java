@@ -2,11 +2,15 @@ package com.intelligentmarker.repository;
 
 import com.intelligentmarker.model.ClassEntity;
 import com.intelligentmarker.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -46,5 +50,33 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
      * Find all classes for a semester
      */
     List<ClassEntity> findBySemesterAndActiveTrue(String semester);
+
+    /**
+     * All classes, newest first (offset paging)
+     */
+    @Query("SELECT c FROM ClassEntity c JOIN FETCH c.teacher ORDER BY c.createdAt DESC, c.id DESC")
+    Slice<ClassEntity> findPage(Pageable pageable);
+
+    /**
+     * Page following the (createdAt, id) position of the previous page's last row
+     */
+    @Query("SELECT c FROM ClassEntity c JOIN FETCH c.teacher " +
+           "WHERE c.createdAt < :createdAt OR (c.createdAt = :createdAt AND c.id < :id) " +
+           "ORDER BY c.createdAt DESC, c.id DESC")
+    Slice<ClassEntity> findPageBefore(@Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") Long id,
+                                      Pageable pageable);
+
+    /**
+     * Enrolled student count per class, without loading the student collections
+     */
+    @Query("SELECT c.id AS classId, COUNT(s) AS students FROM ClassEntity c LEFT JOIN c.students s " +
+           "WHERE c.id IN :ids GROUP BY c.id")
+    List<ClassSize> countStudents(@Param("ids") Collection<Long> ids);
+
+    interface ClassSize {
+        Long getClassId();
+        long getStudents();
+    }
 }
 
@@ -2,9 +2,16 @@ package com.intelligentmarker.repository;
 
 import com.intelligentmarker.model.Grade;
 import com.intelligentmarker.model.Submission;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,5 +19,118 @@ import java.util.Optional;
 public interface GradeRepository extends JpaRepository<Grade, Long> {
     Optional<Grade> findBySubmission(Submission submission);
     List<Grade> findByStatus(Grade.GradeStatus status);
+    List<Grade> findBySubmissionIdIn(Collection<Long> submissionIds);
+
+    /**
+     * Grades awaiting a teacher's review across their assignments, oldest submission first, in one query
+     * (offset paging)
+     */
+    @Query("SELECT g.id AS gradeId, s.id AS submissionId, st.id AS studentId, st.fullName AS studentName, " +
+           "a.id AS assignmentId, a.title AS assignmentTitle, a.courseCode AS courseCode, " +
+           "g.aiScore AS aiScore, g.aiConfidence AS aiConfidence, g.teacherScore AS teacherScore, " +
+           "g.status AS status, g.publishedAt AS publishedAt, s.createdAt AS submittedAt " +
+           "FROM Grade g JOIN g.submission s JOIN s.assignment a JOIN s.student st " +
+           "WHERE a.teacher.id = :teacherId AND g.status IN :statuses " +
+           "AND (:assignmentId IS NULL OR a.id = :assignmentId) " +
+           "ORDER BY s.createdAt, g.id")
+    Slice<PendingGradeView> findPendingForTeacher(@Param("teacherId") Long teacherId,
+                                                  @Param("statuses") Collection<Grade.GradeStatus> statuses,
+                                                  @Param("assignmentId") Long assignmentId,
+                                                  Pageable pageable);
+
+    /**
+     * Review list page following the (submittedAt, gradeId) position of the previous page's last row
+     */
+    @Query("SELECT g.id AS gradeId, s.id AS submissionId, st.id AS studentId, st.fullName AS studentName, " +
+           "a.id AS assignmentId, a.title AS assignmentTitle, a.courseCode AS courseCode, " +
+           "g.aiScore AS aiScore, g.aiConfidence AS aiConfidence, g.teacherScore AS teacherScore, " +
+           "g.status AS status, g.publishedAt AS publishedAt, s.createdAt AS submittedAt " +
+           "FROM Grade g JOIN g.submission s JOIN s.assignment a JOIN s.student st " +
+           "WHERE a.teacher.id = :teacherId AND g.status IN :statuses " +
+           "AND (:assignmentId IS NULL OR a.id = :assignmentId) " +
+           "AND (s.createdAt > :submittedAt OR (s.createdAt = :submittedAt AND g.id > :gradeId)) " +
+           "ORDER BY s.createdAt, g.id")
+    Slice<PendingGradeView> findPendingForTeacherAfter(@Param("teacherId") Long teacherId,
+                                                       @Param("statuses") Collection<Grade.GradeStatus> statuses,
+                                                       @Param("assignmentId") Long assignmentId,
+                                                       @Param("submittedAt") LocalDateTime submittedAt,
+                                                       @Param("gradeId") Long gradeId,
+                                                       Pageable pageable);
+
+    @Query("SELECT COUNT(g) FROM Grade g JOIN g.submission s JOIN s.assignment a " +
+           "WHERE a.teacher.id = :teacherId AND g.status IN :statuses " +
+           "AND (:assignmentId IS NULL OR a.id = :assignmentId)")
+    long countPendingForTeacher(@Param("teacherId") Long teacherId,
+                                @Param("statuses") Collection<Grade.GradeStatus> statuses,
+                                @Param("assignmentId") Long assignmentId);
+
+    /**
+     * A student's published grades with the assignment title, in one query
+     */
+    @Query("SELECT g.id AS id, s.id AS submissionId, a.title AS assignmentTitle, " +
+           "g.aiScore AS aiScore, g.aiConfidence AS aiConfidence, g.teacherScore AS teacherScore, " +
+           "g.teacherComments AS teacherComments, g.aiFeedback AS aiFeedback, " +
+           "g.status AS status, g.publishedAt AS publishedAt " +
+           "FROM Grade g JOIN g.submission s JOIN s.assignment a " +
+           "WHERE s.student.id = :studentId AND g.publishedAt IS NOT NULL ORDER BY s.id")
+    List<StudentGradeView> findPublishedForStudent(@Param("studentId") Long studentId);
+
+    /**
+     * Exact median of an assignment's current scores (teacher score, else AI score); null when nothing is scored
+     */
+    @Query(value = "SELECT percentile_cont(0.5) WITHIN GROUP (ORDER BY COALESCE(g.teacher_score, g.ai_score)) " +
+                   "FROM grades g JOIN submissions s ON s.id = g.submission_id " +
+                   "WHERE s.assignment_id = :assignmentId AND COALESCE(g.teacher_score, g.ai_score) IS NOT NULL",
+           nativeQuery = true)
+    Double medianScore(@Param("assignmentId") Long assignmentId);
+
+    /**
+     * Score histogram of an assignment: equal-width buckets 1..buckets over 0-100, empty buckets omitted
+     * (a score of exactly 100 falls into the last bucket)
+     */
+    @Query(value = "SELECT GREATEST(LEAST(width_bucket(sc.score, 0, 100, :buckets), :buckets), 1) AS \"bucket\", " +
+                   "COUNT(*) AS \"count\" " +
+                   "FROM (SELECT COALESCE(g.teacher_score, g.ai_score) AS score FROM grades g " +
+                   "JOIN submissions s ON s.id = g.submission_id WHERE s.assignment_id = :assignmentId) sc " +
+                   "WHERE sc.score IS NOT NULL GROUP BY 1 ORDER BY 1",
+           nativeQuery = true)
+    List<ScoreBucket> scoreHistogram(@Param("assignmentId") Long assignmentId, @Param("buckets") int buckets);
+
+    interface StudentGradeView {
+        Long getId();
+        Long getSubmissionId();
+        String getAssignmentTitle();
+        BigDecimal getAiScore();
+        BigDecimal getAiConfidence();
+        BigDecimal getTeacherScore();
+        String getTeacherComments();
+        String getAiFeedback();
+        Grade.GradeStatus getStatus();
+        LocalDateTime getPublishedAt();
+    }
+
+    interface ScoreBucket {
+        int getBucket();
+        long getCount();
+    }
+
+    /**
+     * Row of the teacher review list (no entities loaded)
+     */
+    interface PendingGradeView {
+        Long getGradeId();
+        Long getSubmissionId();
+        Long getStudentId();
+        String getStudentName();
+        Long getAssignmentId();
+        String getAssignmentTitle();
+        String getCourseCode();
+        BigDecimal getAiScore();
+        BigDecimal getAiConfidence();
+        BigDecimal getTeacherScore();
+        Grade.GradeStatus getStatus();
+        LocalDateTime getPublishedAt();
+        LocalDateTime getSubmittedAt();
+    }
 }
 
@@ -0,0 +1,12 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.OpenAiBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OpenAiBatchRepository extends JpaRepository<OpenAiBatch, Long> {
+    List<OpenAiBatch> findByStatus(OpenAiBatch.BatchStatus status);
+}
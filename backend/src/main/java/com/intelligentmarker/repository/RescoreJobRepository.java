@@ -0,0 +1,97 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.RescoreJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RescoreJobRepository extends JpaRepository<RescoreJob, Long> {
+
+    Optional<RescoreJob> findFirstByAssignmentIdOrderByIdDesc(Long assignmentId);
+
+    Optional<RescoreJob> findFirstByAssignmentIdAndStatusIn(Long assignmentId, Collection<RescoreJob.RescoreStatus> statuses);
+
+    /**
+     * Jobs a node may pick up: pending ones that are due, and running ones whose node stopped sending heartbeats
+     */
+    @Query("SELECT j.id FROM RescoreJob j " +
+           "WHERE (j.status = :pending AND (j.availableAt IS NULL OR j.availableAt <= :now)) " +
+           "OR (j.status = :running AND j.heartbeatAt < :staleBefore) ORDER BY j.id")
+    List<Long> findRunnableIds(@Param("pending") RescoreJob.RescoreStatus pending,
+                               @Param("running") RescoreJob.RescoreStatus running,
+                               @Param("now") LocalDateTime now,
+                               @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Claim a job; returns 0 when another node got it first
+     */
+    @Modifying
+    @Query("UPDATE RescoreJob j SET j.status = :running, j.lockedBy = :worker, j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND ((j.status = :pending AND (j.availableAt IS NULL OR j.availableAt <= :now)) " +
+           "OR (j.status = :running AND j.heartbeatAt < :staleBefore))")
+    int claim(@Param("id") Long id,
+              @Param("pending") RescoreJob.RescoreStatus pending,
+              @Param("running") RescoreJob.RescoreStatus running,
+              @Param("worker") String worker,
+              @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Renew the heartbeat of jobs this node still holds
+     */
+    @Modifying
+    @Query("UPDATE RescoreJob j SET j.heartbeatAt = :now " +
+           "WHERE j.id IN :ids AND j.status = :running AND j.lockedBy = :worker")
+    int renewHeartbeats(@Param("ids") Collection<Long> ids,
+                        @Param("running") RescoreJob.RescoreStatus running,
+                        @Param("worker") String worker,
+                        @Param("now") LocalDateTime now);
+
+    /**
+     * Record a processed chunk and move the cursor; returns 0 when the job is no longer held by the worker
+     */
+    @Modifying
+    @Query("UPDATE RescoreJob j SET j.processed = j.processed + :processed, j.failed = j.failed + :failed, " +
+           "j.lastSubmissionId = :lastSubmissionId, j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.status = :running AND j.lockedBy = :worker")
+    int advance(@Param("id") Long id,
+                @Param("running") RescoreJob.RescoreStatus running,
+                @Param("worker") String worker,
+                @Param("processed") int processed,
+                @Param("failed") int failed,
+                @Param("lastSubmissionId") Long lastSubmissionId,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * Hand a job held by the worker back to the queue, to resume from its cursor at availableAt
+     */
+    @Modifying
+    @Query("UPDATE RescoreJob j SET j.status = :pending, j.lockedBy = null, j.availableAt = :availableAt " +
+           "WHERE j.id = :id AND j.status = :running AND j.lockedBy = :worker")
+    int defer(@Param("id") Long id,
+              @Param("running") RescoreJob.RescoreStatus running,
+              @Param("pending") RescoreJob.RescoreStatus pending,
+              @Param("worker") String worker,
+              @Param("availableAt") LocalDateTime availableAt);
+
+    /**
+     * Move a job held by the worker to COMPLETED or FAILED; returns 0 when another node took it over
+     */
+    @Modifying
+    @Query("UPDATE RescoreJob j SET j.status = :status, j.lockedBy = null, j.completedAt = :completedAt, " +
+           "j.lastError = :lastError WHERE j.id = :id AND j.status = :running AND j.lockedBy = :worker")
+    int finish(@Param("id") Long id,
+               @Param("running") RescoreJob.RescoreStatus running,
+               @Param("worker") String worker,
+               @Param("status") RescoreJob.RescoreStatus status,
+               @Param("completedAt") LocalDateTime completedAt,
+               @Param("lastError") String lastError);
+}
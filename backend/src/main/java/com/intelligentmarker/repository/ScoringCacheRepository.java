@@ -0,0 +1,21 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.ScoringCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ScoringCacheRepository extends JpaRepository<ScoringCacheEntry, String> {
+
+    /**
+     * Delete entries created before the cutoff (expired under the cache TTL)
+     */
+    @Modifying
+    @Query("DELETE FROM ScoringCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,93 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.SubmissionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SubmissionJobRepository extends JpaRepository<SubmissionJob, Long> {
+
+    Optional<SubmissionJob> findBySubmissionId(Long submissionId);
+
+    List<SubmissionJob> findBySubmissionIdIn(Collection<Long> submissionIds);
+
+    long countByStatusIn(Collection<SubmissionJob.JobStatus> statuses);
+
+    long countByStageAndStatus(SubmissionJob.Stage stage, SubmissionJob.JobStatus status);
+
+    /**
+     * Lock the next due jobs of a stage; rows locked by other workers are skipped instead of waited on
+     */
+    @Query(value = "SELECT id FROM submission_jobs " +
+                   "WHERE stage = :stage AND status = 'PENDING' AND available_at <= :now " +
+                   "ORDER BY available_at, id LIMIT :limit " +
+                   "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockNextPendingIds(@Param("stage") String stage,
+                                  @Param("now") LocalDateTime now,
+                                  @Param("limit") int limit);
+
+    /**
+     * Complete jobs whose OpenAI batch results have been applied
+     */
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.status = :completed WHERE j.submissionId IN :submissionIds AND j.status = :deferred")
+    int completeDeferred(@Param("submissionIds") Collection<Long> submissionIds,
+                         @Param("deferred") SubmissionJob.JobStatus deferred,
+                         @Param("completed") SubmissionJob.JobStatus completed);
+
+    /**
+     * Renew the lease of jobs the worker is still running
+     */
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.lockedAt = :now " +
+           "WHERE j.id IN :ids AND j.status = :running AND j.lockedBy = :workerId")
+    int renewLeases(@Param("ids") Collection<Long> ids,
+                    @Param("running") SubmissionJob.JobStatus running,
+                    @Param("workerId") String workerId,
+                    @Param("now") LocalDateTime now);
+
+    /**
+     * Release jobs whose worker lease has expired (worker crashed or node restarted)
+     */
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.status = :pending, j.lockedAt = null, j.lockedBy = null, j.availableAt = :now " +
+           "WHERE j.status = :running AND j.lockedAt < :expiredBefore")
+    int releaseExpiredLeases(@Param("pending") SubmissionJob.JobStatus pending,
+                             @Param("running") SubmissionJob.JobStatus running,
+                             @Param("expiredBefore") LocalDateTime expiredBefore,
+                             @Param("now") LocalDateTime now);
+
+    /**
+     * Release jobs held by a previous process of this node (the current process never holds them)
+     */
+    @Modifying
+    @Query("UPDATE SubmissionJob j SET j.status = :pending, j.lockedAt = null, j.lockedBy = null, j.availableAt = :now " +
+           "WHERE j.status = :running AND j.lockedBy LIKE :instancePrefix AND j.lockedBy <> :currentWorker")
+    int releaseOrphanedJobs(@Param("pending") SubmissionJob.JobStatus pending,
+                            @Param("running") SubmissionJob.JobStatus running,
+                            @Param("instancePrefix") String instancePrefix,
+                            @Param("currentWorker") String currentWorker,
+                            @Param("now") LocalDateTime now);
+
+    /**
+     * Submissions left mid-pipeline without a live job (e.g. created before the queue existed)
+     */
+    @Query(value = "SELECT s.id AS id, s.status AS status FROM submissions s " +
+                   "WHERE s.status IN ('UPLOADED', 'OCR_PROCESSING', 'ANONYMIZING', 'SCORING') " +
+                   "AND NOT EXISTS (SELECT 1 FROM submission_jobs j " +
+                   "WHERE j.submission_id = s.id AND j.status IN ('PENDING', 'RUNNING', 'DEFERRED'))", nativeQuery = true)
+    List<StuckSubmission> findStuckSubmissions();
+
+    interface StuckSubmission {
+        Long getId();
+        String getStatus();
+    }
+}
@@ -1,11 +1,19 @@
 package com.intelligentmarker.repository;
 
+import com.intelligentmarker.model.Grade;
 import com.intelligentmarker.model.Submission;
 import com.intelligentmarker.model.User;
 import com.intelligentmarker.model.Assignment;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,5 +23,55 @@ public interface SubmissionRepository extends JpaRepository<Submission, Long> {
     List<Submission> findByAssignment(Assignment assignment);
     Optional<Submission> findByStudentAndAssignment(User student, Assignment assignment);
     List<Submission> findByStatus(Submission.SubmissionStatus status);
+
+    /**
+     * Submission with the student, assignment and teacher loaded, for work outside a web request
+     * (pipeline stages, notifications), where lazy associations cannot be loaded later
+     */
+    @EntityGraph(attributePaths = {"student", "assignment", "assignment.teacher"})
+    Optional<Submission> findWithParticipantsById(Long id);
+
+    @EntityGraph(attributePaths = {"student", "assignment", "assignment.teacher"})
+    List<Submission> findWithParticipantsByIdIn(Collection<Long> ids);
+
+    /**
+     * Rows of an assignment's submission list with the current grade, in one query (no entities loaded)
+     */
+    @Query("SELECT s.id AS id, st.id AS studentId, st.fullName AS studentName, " +
+           "s.originalFileName AS originalFileName, s.status AS status, s.createdAt AS createdAt, " +
+           "g.id AS gradeId, g.aiScore AS aiScore, g.teacherScore AS teacherScore, " +
+           "g.status AS gradeStatus, g.publishedAt AS publishedAt " +
+           "FROM Submission s JOIN s.student st LEFT JOIN Grade g ON g.submission = s " +
+           "WHERE s.assignment.id = :assignmentId ORDER BY s.id")
+    List<SubmissionSummary> findSummariesByAssignmentId(@Param("assignmentId") Long assignmentId);
+
+    /**
+     * Current status, read from the database even when the submission is already loaded
+     */
+    @Query("SELECT s.status FROM Submission s WHERE s.id = :id")
+    Optional<Submission.SubmissionStatus> findStatusById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = :status, s.updatedAt = CURRENT_TIMESTAMP WHERE s.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") Submission.SubmissionStatus status);
+
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = com.intelligentmarker.model.Submission.SubmissionStatus.FAILED, " +
+           "s.processingError = :error, s.updatedAt = CURRENT_TIMESTAMP WHERE s.id = :id")
+    int markFailed(@Param("id") Long id, @Param("error") String error);
+
+    interface SubmissionSummary {
+        Long getId();
+        Long getStudentId();
+        String getStudentName();
+        String getOriginalFileName();
+        Submission.SubmissionStatus getStatus();
+        LocalDateTime getCreatedAt();
+        Long getGradeId();          // null until scored
+        BigDecimal getAiScore();
+        BigDecimal getTeacherScore();
+        Grade.GradeStatus getGradeStatus();
+        LocalDateTime getPublishedAt();
+    }
 }
 
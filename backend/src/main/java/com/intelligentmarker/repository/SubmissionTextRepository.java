@@ -0,0 +1,59 @@
+package com.intelligentmarker.repository;
+
+import com.intelligentmarker.model.SubmissionText;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Text columns of submissions (read and update only: rows belong to Submission)
+ */
+@Repository
+public interface SubmissionTextRepository extends org.springframework.data.repository.Repository<SubmissionText, Long> {
+
+    Optional<SubmissionText> findById(Long id);
+
+    @Query("SELECT t.ocrText FROM SubmissionText t WHERE t.id = :id")
+    Optional<String> findOcrText(@Param("id") Long id);
+
+    /**
+     * First characters of the OCR text, cut in the database
+     */
+    @Query("SELECT SUBSTRING(t.ocrText, 1, :length) FROM SubmissionText t WHERE t.id = :id")
+    Optional<String> findOcrTextPrefix(@Param("id") Long id, @Param("length") int length);
+
+    @Query("SELECT t.anonymizedText FROM SubmissionText t WHERE t.id = :id")
+    Optional<String> findAnonymizedText(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE SubmissionText t SET t.ocrText = :text WHERE t.id = :id")
+    int updateOcrText(@Param("id") Long id, @Param("text") String text);
+
+    @Modifying
+    @Query("UPDATE SubmissionText t SET t.anonymizedText = :text WHERE t.id = :id")
+    int updateAnonymizedText(@Param("id") Long id, @Param("text") String text);
+
+    /**
+     * Next chunk of an assignment's graded submissions after the given id (batch re-scoring)
+     */
+    @Query("SELECT t.id AS id, t.anonymizedText AS anonymizedText FROM SubmissionText t " +
+           "WHERE t.assignmentId = :assignmentId AND t.anonymizedText IS NOT NULL AND t.id > :afterId " +
+           "AND EXISTS (SELECT g.id FROM Grade g WHERE g.submission.id = t.id) ORDER BY t.id")
+    List<ScorableText> findScorableAfter(@Param("assignmentId") Long assignmentId,
+                                         @Param("afterId") Long afterId,
+                                         Pageable pageable);
+
+    @Query("SELECT COUNT(t) FROM SubmissionText t WHERE t.assignmentId = :assignmentId " +
+           "AND t.anonymizedText IS NOT NULL AND EXISTS (SELECT g.id FROM Grade g WHERE g.submission.id = t.id)")
+    long countScorable(@Param("assignmentId") Long assignmentId);
+
+    interface ScorableText {
+        Long getId();
+        String getAnonymizedText();
+    }
+}
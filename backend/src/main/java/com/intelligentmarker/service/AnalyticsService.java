@@ -1,13 +1,14 @@
 package com.intelligentmarker.service;
 
 import com.intelligentmarker.model.Assignment;
+import com.intelligentmarker.model.AssignmentStats;
 import com.intelligentmarker.model.Grade;
 import com.intelligentmarker.model.Submission;
 import com.intelligentmarker.repository.AssignmentRepository;
 import com.intelligentmarker.repository.GradeRepository;
 import com.intelligentmarker.repository.SubmissionRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -21,61 +22,94 @@ import java.util.stream.Collectors;
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class AnalyticsService {
+
+    private static final BigDecimal MAX_SCORE = BigDecimal.valueOf(100);
+    private static final int MAX_BUCKETS = 100;
     
     private final AssignmentRepository assignmentRepository;
     private final SubmissionRepository submissionRepository;
     private final GradeRepository gradeRepository;
     private final OpenAiService openAiService;
+    private final AssignmentStatsService assignmentStatsService;
+    private final int defaultBuckets;
+
+    public AnalyticsService(AssignmentRepository assignmentRepository,
+                            SubmissionRepository submissionRepository,
+                            GradeRepository gradeRepository,
+                            OpenAiService openAiService,
+                            AssignmentStatsService assignmentStatsService,
+                            @Value("${app.analytics.distribution-buckets:10}") int defaultBuckets) {
+        this.assignmentRepository = assignmentRepository;
+        this.submissionRepository = submissionRepository;
+        this.gradeRepository = gradeRepository;
+        this.openAiService = openAiService;
+        this.assignmentStatsService = assignmentStatsService;
+        this.defaultBuckets = defaultBuckets;
+    }
     
     /**
      * Get grade distribution for assignment
+     * Served from the assignment's materialized statistics, except the median, which cannot be kept
+     * incrementally and is computed exactly with percentile_cont. Bucket counts that do not divide 100 are
+     * aggregated from the grades
+     * @param buckets Histogram buckets over 0-100, null for app.analytics.distribution-buckets
      */
-    public ScoreDistribution getScoreDistribution(Long assignmentId) {
-        Assignment assignment = assignmentRepository.findById(assignmentId)
-            .orElseThrow(() -> new RuntimeException("Assignment not found"));
-
-        List<Submission> submissions = submissionRepository.findByAssignment(assignment);
-
-        if (submissions.isEmpty()) {
-            return new ScoreDistribution(Collections.emptyList(), null, null, null, 0);
+    public ScoreDistribution getScoreDistribution(Long assignmentId, Integer buckets) {
+        if (!assignmentRepository.existsById(assignmentId)) {
+            throw new RuntimeException("Assignment not found");
+        }
+        int bucketCount = buckets != null ? buckets : defaultBuckets;
+        if (bucketCount < 1 || bucketCount > MAX_BUCKETS) {
+            throw new IllegalArgumentException("buckets must be between 1 and " + MAX_BUCKETS);
         }
 
-        // Collect all scores
-        List<BigDecimal> scores = submissions.stream()
-            .map(sub -> gradeRepository.findBySubmission(sub))
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .map(grade -> grade.getTeacherScore() != null
-                ? grade.getTeacherScore()
-                : grade.getAiScore())
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+        AssignmentStats stats = assignmentStatsService.get(assignmentId);
+        long[] counts = new long[bucketCount];
+        if (AssignmentStats.HISTOGRAM_BUCKETS % bucketCount == 0) {
+            int merged = AssignmentStats.HISTOGRAM_BUCKETS / bucketCount;
+            for (int i = 0; i < stats.getHistogram().length; i++) {
+                counts[i / merged] += stats.getHistogram()[i];
+            }
+        } else if (stats.getScoredCount() > 0) {
+            for (GradeRepository.ScoreBucket row : gradeRepository.scoreHistogram(assignmentId, bucketCount)) {
+                counts[row.getBucket() - 1] = row.getCount();
+            }
+        }
 
-        if (scores.isEmpty()) {
-            return new ScoreDistribution(Collections.emptyList(), null, null, null, 0);
+        long n = stats.getScoredCount();
+        if (n == 0) {
+            return new ScoreDistribution(histogram(counts), null, null, null, 0);
         }
 
-        // Calculate statistical metrics
-        BigDecimal mean = scores.stream()
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(BigDecimal.valueOf(scores.size()), 2, RoundingMode.HALF_UP);
+        BigDecimal count = BigDecimal.valueOf(n);
+        BigDecimal mean = stats.getScoreSum().divide(count, 2, RoundingMode.HALF_UP);
+        // Population variance: (n * sum(x^2) - sum(x)^2) / n^2
+        BigDecimal variance = count.multiply(stats.getScoreSumSq())
+            .subtract(stats.getScoreSum().pow(2))
+            .divide(count.pow(2), 8, RoundingMode.HALF_UP);
+        BigDecimal stdDev = BigDecimal.valueOf(Math.sqrt(Math.max(0, variance.doubleValue())))
+            .setScale(2, RoundingMode.HALF_UP);
 
-        List<BigDecimal> sortedScores = scores.stream().sorted().collect(Collectors.toList());
-        BigDecimal median = sortedScores.get(sortedScores.size() / 2);
+        Double median = gradeRepository.medianScore(assignmentId);
+        return new ScoreDistribution(histogram(counts), mean,
+            median != null ? BigDecimal.valueOf(median).setScale(2, RoundingMode.HALF_UP) : null, stdDev, (int) n);
+    }
 
-        // Calculate standard deviation
-        double variance = scores.stream()
-            .mapToDouble(s -> Math.pow(s.subtract(mean).doubleValue(), 2))
-            .average()
-            .orElse(0.0);
-        BigDecimal stdDev = BigDecimal.valueOf(Math.sqrt(variance))
-            .setScale(2, RoundingMode.HALF_UP);
-        
-        return new ScoreDistribution(scores, mean, median, stdDev, scores.size());
+    /**
+     * All buckets in order, including empty ones
+     */
+    private List<ScoreBucket> histogram(long[] counts) {
+        int bucketCount = counts.length;
+        BigDecimal width = MAX_SCORE.divide(BigDecimal.valueOf(bucketCount), 2, RoundingMode.HALF_UP);
+        List<ScoreBucket> histogram = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            BigDecimal upper = i == bucketCount - 1 ? MAX_SCORE : width.multiply(BigDecimal.valueOf(i + 1));
+            histogram.add(new ScoreBucket(width.multiply(BigDecimal.valueOf(i)), upper, counts[i]));
+        }
+        return histogram;
     }
-    
+
     /**
      * Get error heatmap (frequently incorrect knowledge points)
      */
@@ -255,13 +289,22 @@ public class AnalyticsService {
      * Score distribution DTO
      */
     public record ScoreDistribution(
-        List<BigDecimal> scores,
+        List<ScoreBucket> histogram,
         BigDecimal mean,
         BigDecimal median,
         BigDecimal stdDev,
         int sampleSize
     ) {}
 
+    /**
+     * Histogram bucket DTO: scores in [lower, upper), the last bucket includes upper
+     */
+    public record ScoreBucket(
+        BigDecimal lower,
+        BigDecimal upper,
+        long count
+    ) {}
+
     /**
      * Error heatmap item DTO
      */
@@ -0,0 +1,77 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.AssignmentStats;
+import com.intelligentmarker.repository.AssignmentRepository;
+import com.intelligentmarker.repository.AssignmentStatsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Per-assignment grade statistics for dashboards (see AssignmentStats)
+ * Reads are a primary key lookup; a periodic job rebuilds every row from the grades to repair drift
+ * (writes outside JPA and GradeBatchWriter, or a failed increment)
+ */
+@Service
+@Slf4j
+public class AssignmentStatsService {
+
+    private final AssignmentStatsRepository statsRepository;
+    private final AssignmentRepository assignmentRepository;
+    private final AssignmentStatsWriter statsWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter reconciled;
+
+    public AssignmentStatsService(AssignmentStatsRepository statsRepository,
+                                  AssignmentRepository assignmentRepository,
+                                  AssignmentStatsWriter statsWriter,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry meterRegistry) {
+        this.statsRepository = statsRepository;
+        this.assignmentRepository = assignmentRepository;
+        this.statsWriter = statsWriter;
+        this.transactionTemplate = transactionTemplate;
+        this.reconciled = Counter.builder("assignment.stats.reconciled")
+            .description("assignment_stats rows rebuilt because they were missing or differed from the grades")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Statistics of an assignment; built from its grades when the row does not exist yet
+     */
+    public AssignmentStats get(Long assignmentId) {
+        return statsRepository.findById(assignmentId).orElseGet(() -> {
+            transactionTemplate.executeWithoutResult(status -> statsWriter.reconcile(assignmentId));
+            return statsRepository.findById(assignmentId)
+                .orElseThrow(() -> new IllegalStateException("Statistics of assignment " + assignmentId + " not found"));
+        });
+    }
+
+    /**
+     * Scheduled task: rebuild each assignment's row from its grades, one short transaction per assignment
+     */
+    @Scheduled(fixedDelayString = "${app.analytics.stats-reconcile-interval-ms:3600000}",
+               initialDelayString = "${app.analytics.stats-reconcile-interval-ms:3600000}")
+    public void reconcileAll() {
+        List<Long> assignmentIds = assignmentRepository.findAllIds();
+        int corrected = 0;
+        for (Long assignmentId : assignmentIds) {
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> statsWriter.reconcile(assignmentId)))) {
+                    corrected++;
+                    reconciled.increment();
+                }
+            } catch (Exception e) {
+                log.error("Failed to reconcile statistics of assignment {}", assignmentId, e);
+            }
+        }
+        if (corrected > 0) {
+            log.info("Reconciled statistics of {} of {} assignments", corrected, assignmentIds.size());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.AssignmentStats;
+import com.intelligentmarker.model.Grade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the assignment_stats rows (see AssignmentStats)
+ * Grade changes are applied as increments in the caller's transaction, so concurrent writers never lose
+ * each other's updates and a rollback drops the increment with the grade change. A missing row is built
+ * from the grades table the first time an assignment's grades change
+ */
+@Component
+@RequiredArgsConstructor
+public class AssignmentStatsWriter {
+
+    private static final Grade.GradeStatus[] STATUSES = Grade.GradeStatus.values();
+
+    private static final String STATUS_COLUMNS = Arrays.stream(STATUSES)
+        .map(AssignmentStatsWriter::countColumn)
+        .collect(Collectors.joining(", "));
+
+    private static final String APPLY_SQL =
+        "UPDATE assignment_stats SET " +
+        Arrays.stream(STATUSES)
+            .map(s -> countColumn(s) + " = " + countColumn(s) + " + ?")
+            .collect(Collectors.joining(", ")) + ", " +
+        "scored_count = scored_count + ?, score_sum = score_sum + ?, score_sum_sq = score_sum_sq + ?, " +
+        "histogram = (SELECT array_agg(t.h + t.d ORDER BY t.i) " +
+        "FROM unnest(histogram, ?::bigint[]) WITH ORDINALITY AS t(h, d, i)), " +
+        "updated_at = now() " +
+        "WHERE assignment_id = ?";
+
+    // Statistics of one assignment computed from its grades (parameters: assignment id twice)
+    private static final String BUILD_SQL =
+        "INSERT INTO assignment_stats (assignment_id, " + STATUS_COLUMNS + ", " +
+        "scored_count, score_sum, score_sum_sq, histogram, updated_at) " +
+        "WITH sc AS (SELECT g.status, COALESCE(g.teacher_score, g.ai_score) AS score FROM grades g " +
+        "JOIN submissions s ON s.id = g.submission_id WHERE s.assignment_id = ?) " +
+        "SELECT ?, " +
+        Arrays.stream(STATUSES)
+            .map(s -> "COUNT(*) FILTER (WHERE sc.status = '" + s.name() + "')")
+            .collect(Collectors.joining(", ")) + ", " +
+        "COUNT(sc.score), COALESCE(SUM(sc.score), 0), COALESCE(SUM(sc.score * sc.score), 0), " +
+        "ARRAY(SELECT COUNT(h.score) FROM generate_series(1, " + AssignmentStats.HISTOGRAM_BUCKETS + ") b " +
+        "LEFT JOIN sc h ON GREATEST(LEAST(width_bucket(h.score, 0, 100, " + AssignmentStats.HISTOGRAM_BUCKETS + "), " +
+        AssignmentStats.HISTOGRAM_BUCKETS + "), 1) = b GROUP BY b ORDER BY b), " +
+        "now() FROM sc ";
+
+    private static final String CREATE_SQL = BUILD_SQL + "ON CONFLICT (assignment_id) DO NOTHING";
+
+    // Overwrites the row only when it differs from the grades
+    private static final String RECONCILE_SQL = BUILD_SQL +
+        "ON CONFLICT (assignment_id) DO UPDATE SET " +
+        Arrays.stream(STATUSES)
+            .map(s -> countColumn(s) + " = EXCLUDED." + countColumn(s))
+            .collect(Collectors.joining(", ")) + ", " +
+        "scored_count = EXCLUDED.scored_count, score_sum = EXCLUDED.score_sum, " +
+        "score_sum_sq = EXCLUDED.score_sum_sq, histogram = EXCLUDED.histogram, updated_at = EXCLUDED.updated_at " +
+        "WHERE (" + prefixed("assignment_stats.") + ") IS DISTINCT FROM (" + prefixed("EXCLUDED.") + ")";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Apply a grade change to the assignment's statistics (joins the caller's transaction)
+     * The grade change must already be written, so a row built here includes it
+     */
+    public void apply(Long assignmentId, Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        if (update(assignmentId, delta) == 0 && jdbcTemplate.update(CREATE_SQL, assignmentId, assignmentId) == 0) {
+            // Another transaction created the row first, without this change
+            update(assignmentId, delta);
+        }
+    }
+
+    /**
+     * Rebuild the assignment's row from its grades
+     * Locks the row first, so the grades are read after concurrent increments to it have committed;
+     * changes still in flight apply their increments after the rebuild
+     * @return Whether the row was missing or had drifted from the grades
+     */
+    public boolean reconcile(Long assignmentId) {
+        jdbcTemplate.query("SELECT assignment_id FROM assignment_stats WHERE assignment_id = ? FOR UPDATE",
+            rs -> { }, assignmentId);
+        return jdbcTemplate.update(RECONCILE_SQL, assignmentId, assignmentId) > 0;
+    }
+
+    /**
+     * Assignment of a submission, read without going through the persistence context
+     */
+    public Long assignmentOf(Long submissionId) {
+        return jdbcTemplate.query("SELECT assignment_id FROM submissions WHERE id = ?",
+            rs -> rs.next() ? rs.getLong(1) : null, submissionId);
+    }
+
+    private int update(Long assignmentId, Delta delta) {
+        return jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(APPLY_SQL);
+            int i = 1;
+            for (long count : delta.statusCounts) {
+                ps.setLong(i++, count);
+            }
+            ps.setLong(i++, delta.scoredCount);
+            ps.setBigDecimal(i++, delta.scoreSum);
+            ps.setBigDecimal(i++, delta.scoreSumSq);
+            ps.setArray(i++, con.createArrayOf("bigint", Arrays.stream(delta.histogram).boxed().toArray()));
+            ps.setLong(i, assignmentId);
+            return ps;
+        });
+    }
+
+    private static String countColumn(Grade.GradeStatus status) {
+        return status.name().toLowerCase() + "_count";
+    }
+
+    private static String prefixed(String prefix) {
+        return Arrays.stream(STATUSES)
+            .map(s -> prefix + countColumn(s))
+            .collect(Collectors.joining(", ")) + ", " +
+            prefix + "scored_count, " + prefix + "score_sum, " + prefix + "score_sum_sq, " + prefix + "histogram";
+    }
+
+    /**
+     * Histogram bucket (0-based) of a score
+     */
+    public static int bucketOf(BigDecimal score) {
+        return Math.max(0, Math.min(score.intValue(), AssignmentStats.HISTOGRAM_BUCKETS - 1));
+    }
+
+    /**
+     * Net change of grades within one assignment
+     */
+    public static final class Delta {
+
+        private final long[] statusCounts = new long[STATUSES.length];
+        private long scoredCount;
+        private BigDecimal scoreSum = BigDecimal.ZERO;
+        private BigDecimal scoreSumSq = BigDecimal.ZERO;
+        private final long[] histogram = new long[AssignmentStats.HISTOGRAM_BUCKETS];
+
+        /**
+         * A grade in this state was added
+         * @param score Teacher score, else AI score; null when unscored
+         */
+        public Delta add(Grade.GradeStatus status, BigDecimal score) {
+            return change(status, score, 1);
+        }
+
+        /**
+         * A grade in this state was removed or left it
+         */
+        public Delta remove(Grade.GradeStatus status, BigDecimal score) {
+            return change(status, score, -1);
+        }
+
+        private Delta change(Grade.GradeStatus status, BigDecimal score, int sign) {
+            if (status != null) {
+                statusCounts[status.ordinal()] += sign;
+            }
+            if (score != null) {
+                scoredCount += sign;
+                scoreSum = scoreSum.add(score.multiply(BigDecimal.valueOf(sign)));
+                scoreSumSq = scoreSumSq.add(score.multiply(score).multiply(BigDecimal.valueOf(sign)));
+                histogram[bucketOf(score)] += sign;
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return scoredCount == 0 && scoreSum.signum() == 0 && scoreSumSq.signum() == 0
+                && Arrays.stream(statusCounts).allMatch(c -> c == 0)
+                && Arrays.stream(histogram).allMatch(c -> c == 0);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.*;
+import com.intelligentmarker.repository.AssignmentRepository;
+import com.intelligentmarker.repository.RescoreJobRepository;
+import com.intelligentmarker.repository.SubmissionJobRepository;
+import com.intelligentmarker.repository.SubmissionTextRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Assignment-level batch re-scoring
+ * The assignment part of the prompt (rubric section cached per assignment) is built once per job; submissions are scored
+ * in chunks with bounded parallelism (batchScoringExecutor) and each chunk's grades are written
+ * with one JDBC batch upsert. Progress is kept on the rescore_jobs row, which doubles as the
+ * resume cursor when a node restarts. Every write to the row is conditional on this node still
+ * holding the job, so a node that lost its lease stops instead of overwriting the new owner's cursor.
+ * When every chat provider's circuit is open the current chunk is dropped and the job goes back to
+ * PENDING at its cursor until the breaker may close
+ */
+@Service
+@Slf4j
+public class BatchScoringService {
+
+    private static final List<RescoreJob.RescoreStatus> OPEN_STATUSES =
+        List.of(RescoreJob.RescoreStatus.PENDING, RescoreJob.RescoreStatus.RUNNING);
+
+    private final RescoreJobRepository rescoreJobRepository;
+    private final AssignmentRepository assignmentRepository;
+    private final SubmissionTextRepository submissionTextRepository;
+    private final SubmissionJobRepository submissionJobRepository;
+    private final ScoringService scoringService;
+    private final GradeBatchWriter gradeBatchWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final AsyncTaskExecutor batchScoringExecutor;
+    private final AsyncTaskExecutor rescoreJobExecutor;
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final Set<Long> runningJobIds = ConcurrentHashMap.newKeySet();
+    private final int concurrentJobs;
+    private final int chunkSize;
+    private final Duration leaseTimeout;
+    private final String workerId;
+
+    public BatchScoringService(
+        RescoreJobRepository rescoreJobRepository,
+        AssignmentRepository assignmentRepository,
+        SubmissionTextRepository submissionTextRepository,
+        SubmissionJobRepository submissionJobRepository,
+        ScoringService scoringService,
+        GradeBatchWriter gradeBatchWriter,
+        TransactionTemplate transactionTemplate,
+        @Qualifier("batchScoringExecutor") AsyncTaskExecutor batchScoringExecutor,
+        @Qualifier("rescoreJobExecutor") AsyncTaskExecutor rescoreJobExecutor,
+        @Value("${app.batch-scoring.concurrent-jobs:2}") int concurrentJobs,
+        @Value("${app.batch-scoring.chunk-size:50}") int chunkSize,
+        @Value("${app.batch-scoring.lease-timeout:10m}") Duration leaseTimeout
+    ) {
+        this.rescoreJobRepository = rescoreJobRepository;
+        this.assignmentRepository = assignmentRepository;
+        this.submissionTextRepository = submissionTextRepository;
+        this.submissionJobRepository = submissionJobRepository;
+        this.scoringService = scoringService;
+        this.gradeBatchWriter = gradeBatchWriter;
+        this.transactionTemplate = transactionTemplate;
+        this.batchScoringExecutor = batchScoringExecutor;
+        this.rescoreJobExecutor = rescoreJobExecutor;
+        this.concurrentJobs = concurrentJobs;
+        this.chunkSize = chunkSize;
+        this.leaseTimeout = leaseTimeout;
+        this.workerId = resolveHostName() + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Start re-scoring an assignment; returns the already open job if there is one
+     */
+    @Transactional
+    public RescoreJob start(Long assignmentId, Long requestedBy) {
+        assignmentRepository.findById(assignmentId)
+            .orElseThrow(() -> new RuntimeException("Assignment not found"));
+
+        Optional<RescoreJob> open = rescoreJobRepository.findFirstByAssignmentIdAndStatusIn(assignmentId, OPEN_STATUSES);
+        if (open.isPresent()) {
+            log.info("Re-score of assignment {} already in progress (job {})", assignmentId, open.get().getId());
+            return open.get();
+        }
+
+        RescoreJob job = new RescoreJob();
+        job.setAssignmentId(assignmentId);
+        job.setRequestedBy(requestedBy);
+        job.setStatus(RescoreJob.RescoreStatus.PENDING);
+        job.setTotalSubmissions((int) submissionTextRepository.countScorable(assignmentId));
+        job.setProcessed(0);
+        job.setFailed(0);
+        job.setLastSubmissionId(0L);
+
+        job = rescoreJobRepository.save(job);
+        log.info("Re-score job {} created for assignment {} ({} submissions)",
+                job.getId(), assignmentId, job.getTotalSubmissions());
+        return job;
+    }
+
+    /**
+     * Latest re-score job of an assignment
+     */
+    public Optional<RescoreJob> getLatest(Long assignmentId) {
+        return rescoreJobRepository.findFirstByAssignmentIdOrderByIdDesc(assignmentId);
+    }
+
+    /**
+     * Scheduled task: claim pending jobs, and jobs whose node died (resuming from the cursor), while
+     * rescoreJobExecutor has a free slot; the jobs run there so the scheduler thread returns at once
+     */
+    @Scheduled(fixedDelayString = "${app.batch-scoring.poll-interval-ms:5000}")
+    public void runPendingJobs() {
+        if (runningJobs.get() >= concurrentJobs) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(leaseTimeout);
+        List<Long> ids = rescoreJobRepository.findRunnableIds(
+            RescoreJob.RescoreStatus.PENDING, RescoreJob.RescoreStatus.RUNNING, now, staleBefore);
+
+        for (Long id : ids) {
+            if (runningJobs.get() >= concurrentJobs) {
+                return;
+            }
+            Integer claimed = transactionTemplate.execute(status -> rescoreJobRepository.claim(
+                id, RescoreJob.RescoreStatus.PENDING, RescoreJob.RescoreStatus.RUNNING,
+                workerId, LocalDateTime.now(), staleBefore));
+            if (claimed != null && claimed > 0) {
+                dispatch(id);
+            }
+        }
+    }
+
+    /**
+     * Scheduled task: renew the heartbeat of jobs running on this node, so a chunk slower than the
+     * lease timeout does not let another node take the job over
+     */
+    @Scheduled(fixedDelayString = "${app.batch-scoring.heartbeat-interval-ms:60000}")
+    public void heartbeat() {
+        Set<Long> ids = Set.copyOf(runningJobIds);
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> rescoreJobRepository.renewHeartbeats(
+                ids, RescoreJob.RescoreStatus.RUNNING, workerId, LocalDateTime.now()));
+        } catch (Exception e) {
+            log.error("Failed to renew re-score job heartbeats", e);
+        }
+    }
+
+    private void dispatch(Long jobId) {
+        runningJobs.incrementAndGet();
+        try {
+            rescoreJobExecutor.execute(() -> {
+                runningJobIds.add(jobId);
+                try {
+                    run(jobId);
+                } finally {
+                    runningJobIds.remove(jobId);
+                    runningJobs.decrementAndGet();
+                }
+            });
+        } catch (Exception e) {
+            runningJobs.decrementAndGet();
+            // The claim stays on the row; the job is taken over once its lease expires
+            log.error("Failed to dispatch re-score job {}", jobId, e);
+        }
+    }
+
+    private void run(Long jobId) {
+        RescoreJob job = rescoreJobRepository.findById(jobId).orElseThrow();
+        log.info("Running re-score job {} for assignment {} from submission {}",
+                jobId, job.getAssignmentId(), job.getLastSubmissionId());
+
+        try {
+            Assignment assignment = assignmentRepository.findById(job.getAssignmentId())
+                .orElseThrow(() -> new RuntimeException("Assignment not found"));
+            if (!scoringService.canScore()) {
+                throw new IllegalStateException("No chat provider configured: AI scoring unavailable");
+            }
+
+            // Assignment part of the prompt: once per job
+            ScoringService.ScoringPrompt prompt = scoringService.buildScoringPrompt(assignment);
+
+            List<SubmissionTextRepository.ScorableText> chunk;
+            while (!(chunk = submissionTextRepository.findScorableAfter(
+                    job.getAssignmentId(), job.getLastSubmissionId(), PageRequest.of(0, chunkSize))).isEmpty()) {
+                if (!scoreChunk(job, chunk, prompt)) {
+                    log.warn("Re-score job {} was taken over by another node, stopping at submission {}",
+                            jobId, job.getLastSubmissionId());
+                    return;
+                }
+            }
+
+            if (finish(job, RescoreJob.RescoreStatus.COMPLETED, null)) {
+                log.info("Re-score job {} completed: {} scored, {} failed", jobId, job.getProcessed(), job.getFailed());
+            }
+
+        } catch (CircuitOpenException e) {
+            log.warn("Re-score job {} paused at submission {}: {}", jobId, job.getLastSubmissionId(), e.getMessage());
+            defer(job, e.getRetryAfter());
+        } catch (Exception e) {
+            log.error("Re-score job {} failed", jobId, e);
+            finish(job, RescoreJob.RescoreStatus.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Put a job this node still holds back to PENDING at its cursor, due once the delay has passed
+     */
+    private void defer(RescoreJob job, Duration delay) {
+        Integer updated = transactionTemplate.execute(tx -> rescoreJobRepository.defer(
+            job.getId(), RescoreJob.RescoreStatus.RUNNING, RescoreJob.RescoreStatus.PENDING,
+            workerId, LocalDateTime.now().plus(delay)));
+        if (updated == null || updated == 0) {
+            log.warn("Re-score job {} was taken over by another node, not deferred", job.getId());
+        }
+    }
+
+    /**
+     * Close a job this node still holds; returns false (and leaves the row alone) when it was taken over
+     */
+    private boolean finish(RescoreJob job, RescoreJob.RescoreStatus status, String error) {
+        Integer updated = transactionTemplate.execute(tx -> rescoreJobRepository.finish(
+            job.getId(), RescoreJob.RescoreStatus.RUNNING, workerId, status, LocalDateTime.now(), error));
+        if (updated == null || updated == 0) {
+            log.warn("Re-score job {} was taken over by another node, {} not recorded", job.getId(), status);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Score one chunk in parallel, then write its grades and advance the cursor in one transaction
+     * Returns false, writing nothing, when the job is no longer held by this node
+     * @throws CircuitOpenException when a submission hit an open circuit; nothing of the chunk is written
+     */
+    private boolean scoreChunk(RescoreJob job, List<SubmissionTextRepository.ScorableText> chunk,
+                               ScoringService.ScoringPrompt prompt) {
+        Map<Long, String> visionAnalyses = submissionJobRepository
+            .findBySubmissionIdIn(chunk.stream().map(SubmissionTextRepository.ScorableText::getId).toList())
+            .stream()
+            .filter(j -> j.getVisionAnalysis() != null)
+            .collect(Collectors.toMap(SubmissionJob::getSubmissionId, SubmissionJob::getVisionAnalysis));
+
+        List<CompletableFuture<GradeBatchWriter.AiGrade>> futures = chunk.stream()
+            .map(submission -> CompletableFuture.supplyAsync(() -> score(submission, prompt, visionAnalyses), batchScoringExecutor))
+            .toList();
+
+        List<GradeBatchWriter.AiGrade> rows = new ArrayList<>(chunk.size());
+        CircuitOpenException circuitOpen = null;
+        for (CompletableFuture<GradeBatchWriter.AiGrade> future : futures) {
+            try {
+                GradeBatchWriter.AiGrade row = future.join();
+                if (row != null) {
+                    rows.add(row);
+                }
+            } catch (CompletionException e) {
+                circuitOpen = CircuitOpenException.causeOf(e);
+                if (circuitOpen == null) {
+                    throw e;
+                }
+            }
+        }
+        if (circuitOpen != null) {
+            // Not a scoring failure: the chunk is scored again once the job resumes
+            throw circuitOpen;
+        }
+
+        int failed = chunk.size() - rows.size();
+        Long lastSubmissionId = chunk.get(chunk.size() - 1).getId();
+        Boolean advanced = transactionTemplate.execute(status -> {
+            if (rescoreJobRepository.advance(job.getId(), RescoreJob.RescoreStatus.RUNNING, workerId,
+                    rows.size(), failed, lastSubmissionId, LocalDateTime.now()) == 0) {
+                return false;
+            }
+            gradeBatchWriter.upsertAiGrades(rows);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(advanced)) {
+            return false;
+        }
+
+        job.setProcessed(job.getProcessed() + rows.size());
+        job.setFailed(job.getFailed() + failed);
+        job.setLastSubmissionId(lastSubmissionId);
+        log.info("Re-score job {}: {}/{} scored ({} failed)",
+                job.getId(), job.getProcessed(), job.getTotalSubmissions(), job.getFailed());
+        return true;
+    }
+
+    /**
+     * Score one submission; returns the grade upsert row, or null when scoring failed
+     * @throws CircuitOpenException when the chat circuit is open, so the job pauses instead of counting a failure
+     */
+    private GradeBatchWriter.AiGrade score(SubmissionTextRepository.ScorableText submission, ScoringService.ScoringPrompt prompt,
+                                           Map<Long, String> visionAnalyses) {
+        try {
+            ScoringService.ScoringResult result = scoringService.scorePrompt(
+                prompt.render(submission.getAnonymizedText(), visionAnalyses.get(submission.getId())));
+            return new GradeBatchWriter.AiGrade(
+                submission.getId(),
+                result.score(),
+                result.confidence(),
+                result.feedbackJsonText(),
+                scoringService.statusFor(result.confidence())
+            );
+        } catch (ScoringResponseException e) {
+            log.warn("Re-score of submission {} returned an unusable response, grade left unchanged: {}",
+                    submission.getId(), e.getMessage());
+            return null;
+        } catch (Exception e) {
+            CircuitOpenException circuitOpen = CircuitOpenException.causeOf(e);
+            if (circuitOpen != null) {
+                throw circuitOpen;
+            }
+            log.warn("Re-score of submission {} failed: {}", submission.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * One chat completions backend (OpenAI, another hosted API or an on-box model server)
+ * Selected per call by ChatRouter
+ */
+public interface ChatProvider {
+
+    String name();
+
+    /**
+     * Model this provider answers with
+     */
+    String model();
+
+    /**
+     * Blended price in dollars per million tokens
+     */
+    double costPerMillionTokens();
+
+    /**
+     * Whether response_format json_schema is honored; otherwise it is stripped from requests
+     */
+    boolean supportsResponseFormat();
+
+    /**
+     * POST /chat/completions
+     * @param body Request body (messages, temperature, ...); model is filled in by the provider
+     * @param estimatedTokens Prompt + completion tokens, for providers with a token budget
+     * @return Completion object
+     */
+    JsonNode complete(Map<String, Object> body, int estimatedTokens) throws Exception;
+
+    /**
+     * POST /chat/completions with stream=true; each chunk is handed over on the calling thread
+     * The last chunk carries token usage
+     */
+    void stream(Map<String, Object> body, int estimatedTokens, Consumer<JsonNode> onChunk) throws Exception;
+}
@@ -0,0 +1,342 @@
+package com.intelligentmarker.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side budget for OpenAI chat completions
+ * - Requests-per-minute and tokens-per-minute token buckets: callers wait until the budget allows the call
+ * - AIMD concurrency limit: +1 per limit successful calls, halved on 429/timeouts, shrunk when latency
+ *   exceeds the target, so a deadline burst settles at what the account can actually serve
+ * - Retries of 429/5xx/IO errors with full-jitter exponential backoff, honoring Retry-After, within
+ *   app.openai-rate.max-retry-time in total so an exhausted call fails back to the submission queue well
+ *   before the job's lease runs out
+ * All waiting uses locks/sleeps that do not pin virtual threads
+ */
+@Service
+@Slf4j
+public class ChatRateLimiter {
+
+    private final TokenBucket requestBudget;
+    private final TokenBucket tokenBudget;
+    private final AdaptiveLimit concurrency;
+    private final Duration latencyTarget;
+    private final int maxRetries;
+    private final Duration maxRetryTime;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+    private final Counter throttled;
+    private final Counter retries;
+    private final LongSupplier nanoClock;
+    private final Sleeper sleeper;
+
+    @Autowired
+    public ChatRateLimiter(
+        @Value("${app.openai-rate.requests-per-minute:500}") long requestsPerMinute,
+        @Value("${app.openai-rate.tokens-per-minute:200000}") long tokensPerMinute,
+        @Value("${app.openai-rate.initial-concurrency:8}") int initialConcurrency,
+        @Value("${app.openai-rate.max-concurrency:32}") int maxConcurrency,
+        @Value("${app.openai-rate.latency-target:45s}") Duration latencyTarget,
+        @Value("${app.openai-rate.max-retries:6}") int maxRetries,
+        @Value("${app.openai-rate.max-retry-time:4m}") Duration maxRetryTime,
+        @Value("${app.openai-rate.base-backoff:1s}") Duration baseBackoff,
+        @Value("${app.openai-rate.max-backoff:60s}") Duration maxBackoff,
+        MeterRegistry meterRegistry
+    ) {
+        this(requestsPerMinute, tokensPerMinute, initialConcurrency, maxConcurrency, latencyTarget, maxRetries,
+            maxRetryTime, baseBackoff, maxBackoff, meterRegistry, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    ChatRateLimiter(long requestsPerMinute, long tokensPerMinute, int initialConcurrency, int maxConcurrency,
+                    Duration latencyTarget, int maxRetries, Duration maxRetryTime, Duration baseBackoff,
+                    Duration maxBackoff, MeterRegistry meterRegistry, LongSupplier nanoClock, Sleeper sleeper) {
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+        this.requestBudget = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute, nanoClock, sleeper) : null;
+        this.tokenBudget = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, nanoClock, sleeper) : null;
+        this.concurrency = new AdaptiveLimit(initialConcurrency, Math.max(1, maxConcurrency));
+        this.latencyTarget = latencyTarget;
+        this.maxRetries = maxRetries;
+        this.maxRetryTime = maxRetryTime;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+
+        this.throttled = Counter.builder("openai.chat.throttled")
+            .description("Chat completions rejected with 429")
+            .register(meterRegistry);
+        this.retries = Counter.builder("openai.chat.retries")
+            .register(meterRegistry);
+        Gauge.builder("openai.chat.concurrency.limit", concurrency, AdaptiveLimit::limit)
+            .register(meterRegistry);
+        Gauge.builder("openai.chat.in_flight", concurrency, AdaptiveLimit::inFlight)
+            .register(meterRegistry);
+
+        log.info("OpenAI chat budget: {} RPM, {} TPM, concurrency {} (max {})",
+                requestsPerMinute, tokensPerMinute, concurrency.limit(), maxConcurrency);
+    }
+
+    /**
+     * Run a chat call within the budget, retrying throttled and transient failures
+     * @param estimatedTokens Prompt + completion tokens reserved from the TPM budget (see reconcile)
+     */
+    public <T> T call(int estimatedTokens, Callable<T> call) throws Exception {
+        long deadline = nanoClock.getAsLong() + maxRetryTime.toNanos();
+        for (int attempt = 1; ; attempt++) {
+            if (requestBudget != null) {
+                requestBudget.acquire(1);
+            }
+            if (tokenBudget != null) {
+                tokenBudget.acquire(estimatedTokens);
+            }
+
+            Duration delay;
+            concurrency.acquire();
+            long start = nanoClock.getAsLong();
+            try {
+                T result = call.call();
+                concurrency.onSuccess(nanoClock.getAsLong() - start > latencyTarget.toNanos());
+                return result;
+            } catch (HttpStatusCodeException e) {
+                int status = e.getStatusCode().value();
+                if (status == 429) {
+                    throttled.increment();
+                    concurrency.onOverload();
+                }
+                if (!isRetryable(status)) {
+                    throw e;
+                }
+                Optional<Duration> serverDelay = retryAfter(e.getResponseHeaders());
+                delay = serverDelay.isPresent() ? serverDelay.get() : backoff(attempt);
+                if (!canRetry(attempt, delay, deadline)) {
+                    throw e;
+                }
+                log.warn("OpenAI chat returned {} (attempt {}/{}), retrying in {} ms",
+                        status, attempt, maxRetries + 1, delay.toMillis());
+            } catch (ResourceAccessException e) {
+                // Connect/read timeout or reset connection: treat like overload
+                concurrency.onOverload();
+                delay = backoff(attempt);
+                if (!canRetry(attempt, delay, deadline)) {
+                    throw e;
+                }
+                log.warn("OpenAI chat I/O error (attempt {}/{}): {}, retrying in {} ms",
+                        attempt, maxRetries + 1, e.getMessage(), delay.toMillis());
+            } finally {
+                concurrency.release();
+            }
+
+            retries.increment();
+            sleeper.sleep(delay.toNanos());
+        }
+    }
+
+    /**
+     * Correct the TPM budget once the real token usage of a call is known
+     */
+    public void reconcile(int estimatedTokens, int actualTokens) {
+        if (tokenBudget != null && actualTokens > 0) {
+            tokenBudget.consume(actualTokens - estimatedTokens);
+        }
+    }
+
+    /**
+     * Rough token estimate for budgeting (about 4 characters per token)
+     */
+    public static int estimateTokens(int promptChars, int maxCompletionTokens) {
+        return promptChars / 4 + maxCompletionTokens;
+    }
+
+    /**
+     * Whether another attempt is allowed: retries left, and the wait ends before the retry time is used up
+     */
+    private boolean canRetry(int attempt, Duration delay, long deadline) {
+        return attempt <= maxRetries && nanoClock.getAsLong() + delay.toNanos() < deadline;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Full jitter: uniform between 0 and min(maxBackoff, baseBackoff * 2^(attempt-1))
+     */
+    private Duration backoff(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(), baseBackoff.toMillis() << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    /**
+     * Server-provided wait (retry-after-ms or Retry-After seconds) plus up to 20% jitter,
+     * so callers throttled together do not all come back at the same instant
+     */
+    private Optional<Duration> retryAfter(HttpHeaders headers) {
+        if (headers == null) {
+            return Optional.empty();
+        }
+        try {
+            long millis;
+            String retryAfterMs = headers.getFirst("retry-after-ms");
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfterMs != null) {
+                millis = (long) Double.parseDouble(retryAfterMs);
+            } else if (retryAfter != null) {
+                millis = (long) (Double.parseDouble(retryAfter) * 1000);
+            } else {
+                return Optional.empty();
+            }
+            millis = Math.min(millis, maxBackoff.toMillis());
+            return Optional.of(Duration.ofMillis(millis + ThreadLocalRandom.current().nextLong(millis / 5 + 1)));
+        } catch (NumberFormatException e) {
+            return Optional.empty(); // HTTP-date form: fall back to our own backoff
+        }
+    }
+
+    /**
+     * Blocking wait, replaced in tests so backoff and budget waits run on a simulated clock
+     */
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    /**
+     * Continuously refilled budget of per-minute units; may go into debt when usage is reconciled
+     */
+    private static final class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNano;
+        private final LongSupplier nanoClock;
+        private final Sleeper sleeper;
+        private double available;
+        private long lastRefill;
+
+        TokenBucket(long perMinute, LongSupplier nanoClock, Sleeper sleeper) {
+            this.capacity = perMinute;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.nanoClock = nanoClock;
+            this.sleeper = sleeper;
+            this.available = perMinute;
+            this.lastRefill = nanoClock.getAsLong();
+        }
+
+        void acquire(double amount) throws InterruptedException {
+            double needed = Math.min(amount, capacity);
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    refill();
+                    if (available >= needed) {
+                        available -= needed;
+                        return;
+                    }
+                    waitNanos = (long) ((needed - available) / refillPerNano);
+                }
+                sleeper.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(10)));
+            }
+        }
+
+        synchronized void consume(double amount) {
+            refill();
+            available = Math.min(capacity, available - amount);
+        }
+
+        private void refill() {
+            long now = nanoClock.getAsLong();
+            available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * Additive-increase / multiplicative-decrease concurrency limit
+     */
+    private static final class AdaptiveLimit {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition slotFreed = lock.newCondition();
+        private final int max;
+        private double limit;
+        private int inFlight;
+
+        AdaptiveLimit(int initial, int max) {
+            this.max = max;
+            this.limit = Math.max(1, Math.min(initial, max));
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (inFlight >= (int) limit) {
+                    slotFreed.await();
+                }
+                inFlight++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                slotFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onSuccess(boolean slow) {
+            lock.lock();
+            try {
+                // Slow answers mean the provider is queuing us: back off gently
+                limit = slow ? Math.max(1, limit * 0.9) : Math.min(max, limit + 1 / limit);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onOverload() {
+            lock.lock();
+            try {
+                limit = Math.max(1, limit / 2);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double limit() {
+            lock.lock();
+            try {
+                return Math.floor(limit);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
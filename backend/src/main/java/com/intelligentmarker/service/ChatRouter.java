@@ -0,0 +1,472 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.config.LlmProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Routes chat completions across the configured providers (app.llm.providers)
+ * - Providers are ranked per call by observed p95 latency, error rate and cost; providers whose
+ *   circuit breaker is open are skipped
+ * - A failed call fails over to the next provider; a stream only fails over before its first chunk
+ * - With app.llm.hedge enabled, a completion still running past the primary provider's recent latency
+ *   percentile is duplicated to the next provider (or the same one): the first answer wins, the other
+ *   call is cancelled, and a budget caps hedges at a share of all calls
+ * An on-box OpenAI-compatible server (llama.cpp, vLLM) configured as a provider keeps grading
+ * going while the hosted API is down
+ */
+@Service
+@Slf4j
+public class ChatRouter {
+
+    private final List<Route> routes = new ArrayList<>();
+    private final double costWeight;
+    private final LlmProperties.Hedge hedging;
+    private final HedgeBudget hedgeBudget;
+    private final AsyncTaskExecutor hedgeExecutor;
+    private final CircuitBreakers circuitBreakers;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+    private final Counter hedgesDenied;
+    private final Counter failovers;
+
+    public ChatRouter(
+        LlmProperties properties,
+        HttpClient openAiHttpClient,
+        ObjectMapper objectMapper,
+        CircuitBreakers circuitBreakers,
+        ChatRateLimiter rateLimiter,
+        @Qualifier("chatHedgeExecutor") AsyncTaskExecutor hedgeExecutor,
+        MeterRegistry meterRegistry
+    ) {
+        this.costWeight = properties.getCostWeight();
+        this.hedging = properties.getHedge();
+        this.hedgeBudget = new HedgeBudget(hedging.getBudget());
+        this.hedgeExecutor = hedgeExecutor;
+        this.circuitBreakers = circuitBreakers;
+
+        for (LlmProperties.Provider config : properties.getProviders()) {
+            if (!usable(config)) {
+                log.info("Chat provider {} disabled or not configured", config.getName());
+                continue;
+            }
+            ChatProvider provider = new OpenAiCompatibleProvider(
+                config, openAiHttpClient, objectMapper, circuitBreakers, rateLimiter);
+            Route route = new Route(provider, new CallStats(Math.max(1, properties.getStatsWindow())),
+                Timer.builder("llm.chat.latency").tag("provider", provider.name()).tag("outcome", "success")
+                    .publishPercentiles(0.95).register(meterRegistry),
+                Counter.builder("llm.chat.errors").tag("provider", provider.name()).register(meterRegistry));
+            Gauge.builder("llm.chat.p95", route.stats(), stats -> stats.percentileMillis(0.95))
+                .tag("provider", provider.name())
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+            routes.add(route);
+            log.info("Chat provider {}: {} at {} (${}/1M tokens)", provider.name(), provider.model(),
+                    config.getBaseUrl(), provider.costPerMillionTokens());
+        }
+
+        this.hedges = Counter.builder("llm.chat.hedges")
+            .description("Duplicate requests sent for slow completions")
+            .register(meterRegistry);
+        this.hedgeWins = Counter.builder("llm.chat.hedges.won")
+            .description("Hedged requests that answered first")
+            .register(meterRegistry);
+        this.hedgesDenied = Counter.builder("llm.chat.hedges.denied")
+            .description("Hedges skipped because the budget was spent")
+            .register(meterRegistry);
+        if (hedging.isEnabled()) {
+            log.info("Chat hedging after p{} of recent latency (min {} ms), budget {}% of calls",
+                    Math.round(hedging.getPercentile() * 100), hedging.getMinDelay().toMillis(),
+                    hedging.getBudget() * 100);
+        }
+        this.failovers = Counter.builder("llm.chat.failovers")
+            .description("Calls retried on the next provider after a failure")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether any provider is configured (otherwise callers fall back to mock responses)
+     */
+    public boolean hasProviders() {
+        return !routes.isEmpty();
+    }
+
+    /**
+     * Chat completion from the best available provider
+     * @throws CircuitOpenException when every provider's breaker is open (otherwise the last provider error)
+     */
+    public Routed complete(Map<String, Object> body, int estimatedTokens) throws Exception {
+        List<Route> ranked = rank();
+        if (ranked.isEmpty()) {
+            throw allOpen();
+        }
+        if (!hedging.isEnabled()) {
+            return completeInOrder(ranked, body, estimatedTokens);
+        }
+
+        hedgeBudget.deposit();
+        Route primary = ranked.get(0);
+        Duration delay = hedgeDelay(primary);
+        Route hedge = ranked.size() > 1 ? ranked.get(1) : hedging.isSameProvider() ? primary : null;
+        if (delay == null || hedge == null) {
+            return completeInOrder(ranked, body, estimatedTokens);
+        }
+        return completeHedged(ranked, hedge, delay, body, estimatedTokens);
+    }
+
+    /**
+     * Streaming chat completion; fails over only until the first chunk was delivered
+     * @return Provider that produced the stream
+     */
+    public ChatProvider stream(Map<String, Object> body, int estimatedTokens, Consumer<JsonNode> onChunk)
+            throws Exception {
+        List<Route> ranked = rank();
+        if (ranked.isEmpty()) {
+            throw allOpen();
+        }
+
+        Exception last = null;
+        Exception failure = null;
+        for (Route route : ranked) {
+            if (last != null) {
+                logFailover(route);
+            }
+            boolean[] emitted = {false};
+            long start = System.nanoTime();
+            try {
+                route.provider().stream(body, estimatedTokens, chunk -> {
+                    emitted[0] = true;
+                    onChunk.accept(chunk);
+                });
+                route.recordSuccess(System.nanoTime() - start);
+                return route.provider();
+            } catch (Exception e) {
+                route.recordFailure(e);
+                if (emitted[0]) {
+                    throw e;
+                }
+                last = e;
+                failure = e instanceof CircuitOpenException ? failure : e;
+            }
+        }
+        throw failureOf(failure, last);
+    }
+
+    private Routed completeInOrder(List<Route> ranked, Map<String, Object> body, int estimatedTokens)
+            throws Exception {
+        Exception last = null;
+        Exception failure = null;
+        for (Route route : ranked) {
+            if (last != null) {
+                logFailover(route);
+            }
+            try {
+                return attempt(route, body, estimatedTokens);
+            } catch (Exception e) {
+                last = e;
+                failure = e instanceof CircuitOpenException ? failure : e;
+            }
+        }
+        throw failureOf(failure, last);
+    }
+
+    /**
+     * At most two calls in flight: the primary and, once the hedge delay passed without an answer and
+     * the budget allows it, the hedge. A failure cancels any pending hedge and starts the next provider
+     * only when nothing else is still running
+     */
+    private Routed completeHedged(List<Route> ranked, Route hedge, Duration delay,
+                                  Map<String, Object> body, int estimatedTokens) throws Exception {
+        ExecutorCompletionService<Routed> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<Routed>> calls = new ArrayList<>();
+        Future<Routed> hedgeCall = null;
+        int next = 0;
+        Exception last = null;
+        Exception failure = null;
+
+        Route primary = ranked.get(next++);
+        calls.add(completion.submit(() -> attempt(primary, body, estimatedTokens)));
+        int running = 1;
+        try {
+            while (running > 0) {
+                Future<Routed> done;
+                if (hedge != null) {
+                    done = completion.poll(delay.toNanos(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        Route target = hedge;
+                        hedge = null;
+                        if (!hedgeBudget.withdraw()) {
+                            hedgesDenied.increment();
+                            continue;
+                        }
+                        if (target != primary) {
+                            next++;
+                        }
+                        hedges.increment();
+                        log.info("Chat call on {} slower than {} ms, hedging to {}",
+                                primary.name(), delay.toMillis(), target.name());
+                        hedgeCall = completion.submit(() -> attempt(target, body, estimatedTokens));
+                        calls.add(hedgeCall);
+                        running++;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                running--;
+                hedge = null;
+
+                try {
+                    Routed routed = done.get();
+                    if (done == hedgeCall) {
+                        hedgeWins.increment();
+                    }
+                    return routed;
+                } catch (ExecutionException e) {
+                    last = e.getCause() instanceof Exception cause ? cause : e;
+                    failure = last instanceof CircuitOpenException ? failure : last;
+                    if (running == 0 && next < ranked.size()) {
+                        Route failover = ranked.get(next++);
+                        logFailover(failover);
+                        calls.add(completion.submit(() -> attempt(failover, body, estimatedTokens)));
+                        running++;
+                    }
+                }
+            }
+            throw failureOf(failure, last);
+        } finally {
+            // Cancel the losing (or abandoned) call; its breaker ignores the interruption
+            for (Future<Routed> call : calls) {
+                call.cancel(true);
+            }
+        }
+    }
+
+    private Routed attempt(Route route, Map<String, Object> body, int estimatedTokens) throws Exception {
+        long start = System.nanoTime();
+        try {
+            JsonNode response = route.provider().complete(body, estimatedTokens);
+            route.recordSuccess(System.nanoTime() - start);
+            return new Routed(route.provider(), response);
+        } catch (Exception e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                route.recordFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hedge delay for a call on this provider: the configured percentile of its recent successful
+     * latencies, but not below min-delay; null (no hedging) until enough calls were observed
+     */
+    private Duration hedgeDelay(Route primary) {
+        if (primary.stats().successes() < hedging.getMinSamples()) {
+            return null;
+        }
+        long millis = (long) primary.stats().percentileMillis(hedging.getPercentile());
+        return Duration.ofMillis(Math.max(hedging.getMinDelay().toMillis(), millis));
+    }
+
+    /**
+     * Providers whose breaker is not open, best first:
+     * p95 latency (ms) inflated by the error rate, plus cost weighted by app.llm.cost-weight
+     */
+    private List<Route> rank() {
+        List<Route> available = new ArrayList<>();
+        for (Route route : routes) {
+            if (circuitBreakers.state(CircuitBreakers.chat(route.name())) != CircuitBreakers.State.OPEN) {
+                available.add(route);
+            }
+        }
+        available.sort(Comparator.comparingDouble(this::score));
+        return available;
+    }
+
+    private double score(Route route) {
+        return route.stats().percentileMillis(0.95) * (1 + 10 * route.stats().errorRate())
+            + costWeight * route.provider().costPerMillionTokens();
+    }
+
+    /**
+     * Exception for a call no provider answered: the last real failure, so an error from a healthy provider
+     * (4xx, unusable response) is not mistaken for an outage. CircuitOpenException, which re-queues the
+     * submission without using an attempt, only when every provider tried rejected the call with an open breaker
+     */
+    private static Exception failureOf(Exception failure, Exception last) {
+        return failure != null ? failure : last;
+    }
+
+    private CircuitOpenException allOpen() {
+        String soonest = routes.stream()
+            .map(route -> CircuitBreakers.chat(route.name()))
+            .filter(breaker -> circuitBreakers.state(breaker) == CircuitBreakers.State.OPEN)
+            .min(Comparator.comparing(circuitBreakers::retryAfter))
+            .orElse(CircuitBreakers.chat(routes.get(0).name())); // Open period ended since ranking: retry now
+        return new CircuitOpenException(soonest, circuitBreakers.retryAfter(soonest));
+    }
+
+    private void logFailover(Route next) {
+        failovers.increment();
+        log.warn("Failing over to chat provider {}", next.name());
+    }
+
+    private static boolean usable(LlmProperties.Provider config) {
+        if (!config.isEnabled() || isBlank(config.getBaseUrl()) || isBlank(config.getModel())) {
+            return false;
+        }
+        return config.isLocal() || hasRealKey(config.getApiKey());
+    }
+
+    /**
+     * Whether an API key is set and is not one of the placeholder values
+     */
+    static boolean hasRealKey(String apiKey) {
+        return !isBlank(apiKey) && !apiKey.equals("mock-key") && !apiKey.equals("your-openai-key");
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Completion and the provider that produced it
+     */
+    public record Routed(ChatProvider provider, JsonNode response) {
+    }
+
+    private record Route(ChatProvider provider, CallStats stats, Timer latency, Counter errors) {
+
+        String name() {
+            return provider.name();
+        }
+
+        void recordSuccess(long nanos) {
+            stats.record(nanos, true);
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void recordFailure(Exception e) {
+            if (e instanceof CircuitOpenException) {
+                return; // Rejected without a call: nothing observed
+            }
+            log.warn("Chat provider {} failed: {}", name(), e.getMessage());
+            stats.record(0, false);
+            errors.increment();
+        }
+    }
+
+    /**
+     * Token bucket for hedges: every call deposits budget tokens, every hedge withdraws one, so over
+     * time at most budget hedges are sent per call; a few tokens may be saved up for a slow spell
+     */
+    private static final class HedgeBudget {
+
+        private static final double MAX_SAVED = 10;
+
+        private final double perCall;
+        private double tokens;
+
+        HedgeBudget(double perCall) {
+            this.perCall = Math.max(0, perCall);
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(MAX_SAVED, tokens + perCall);
+        }
+
+        synchronized boolean withdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Outcomes of the last N calls of one provider
+     */
+    private static final class CallStats {
+
+        private final long[] latencies;
+        private final boolean[] failed;
+        private int size;
+        private int next;
+
+        CallStats(int window) {
+            this.latencies = new long[window];
+            this.failed = new boolean[window];
+        }
+
+        synchronized void record(long nanos, boolean success) {
+            latencies[next] = nanos;
+            failed[next] = !success;
+            next = (next + 1) % latencies.length;
+            size = Math.min(size + 1, latencies.length);
+        }
+
+        /**
+         * Percentile (0-1) of successful calls; 0 before any, so a new provider gets tried
+         */
+        synchronized double percentileMillis(double percentile) {
+            long[] successful = new long[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!failed[i]) {
+                    successful[count++] = latencies[i];
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            Arrays.sort(successful, 0, count);
+            int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(percentile * count) - 1));
+            return successful[index] / 1_000_000.0;
+        }
+
+        synchronized int successes() {
+            int successes = 0;
+            for (int i = 0; i < size; i++) {
+                if (!failed[i]) {
+                    successes++;
+                }
+            }
+            return successes;
+        }
+
+        synchronized double errorRate() {
+            if (size == 0) {
+                return 0;
+            }
+            int failures = 0;
+            for (int i = 0; i < size; i++) {
+                if (failed[i]) {
+                    failures++;
+                }
+            }
+            return failures / (double) size;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.intelligentmarker.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breakers per remote LLM endpoint (Vision, Batch API, and one per chat provider)
+ * A breaker opens when at least failure-rate of the last window-size calls (and min-calls or more)
+ * failed with a server error or timeout. While open, calls fail immediately with CircuitOpenException;
+ * after open-duration the breaker reports HALF_OPEN and a single probe call decides between closing and
+ * opening again.
+ * 4xx responses (including 429, handled by ChatRateLimiter) do not count as failures
+ */
+@Service
+@Slf4j
+public class CircuitBreakers {
+
+    public static final String VISION = "vision";   // Chat completions with images
+    public static final String BATCH = "batch";     // Files + Batch API
+
+    /**
+     * Breaker name of a chat provider (see ChatRouter)
+     */
+    public static String chat(String provider) {
+        return "chat:" + provider;
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRate;
+    private final Duration openDuration;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public CircuitBreakers(
+        @Value("${app.circuit-breaker.window-size:20}") int windowSize,
+        @Value("${app.circuit-breaker.min-calls:10}") int minCalls,
+        @Value("${app.circuit-breaker.failure-rate:0.5}") double failureRate,
+        @Value("${app.circuit-breaker.open-duration:30s}") Duration openDuration,
+        MeterRegistry meterRegistry
+    ) {
+        this(windowSize, minCalls, failureRate, openDuration, meterRegistry, System::nanoTime);
+    }
+
+    CircuitBreakers(int windowSize, int minCalls, double failureRate, Duration openDuration,
+                    MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.windowSize = windowSize;
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failureRate = failureRate;
+        this.openDuration = openDuration;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Run call through the endpoint's breaker
+     * @throws CircuitOpenException when the breaker is open
+     */
+    public <T> T call(String endpoint, Callable<T> call) throws Exception {
+        Breaker breaker = breaker(endpoint);
+        breaker.acquirePermission();
+        try {
+            T result = call.call();
+            breaker.record(false);
+            return result;
+        } catch (Exception e) {
+            breaker.record(isFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Current state; an open breaker whose open-duration has passed is HALF_OPEN, so callers that skip
+     * open endpoints (ChatRouter) still send it the probe that can close it
+     */
+    public State state(String endpoint) {
+        return breaker(endpoint).state();
+    }
+
+    /**
+     * Time until an open breaker lets a probe through (zero when not open)
+     */
+    public Duration retryAfter(String endpoint) {
+        return breaker(endpoint).retryAfter();
+    }
+
+    private Breaker breaker(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, name -> {
+            Counter rejected = Counter.builder("circuit.breaker.rejected")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+            Breaker breaker = new Breaker(name, windowSize, minCalls, failureRate, openDuration, rejected, nanoClock);
+            Gauge.builder("circuit.breaker.state", breaker, b -> b.state().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    /**
+     * Server errors and I/O failures count; a call interrupted because a hedge won does not
+     */
+    private static boolean isFailure(Exception e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+    }
+
+    private static final class Breaker {
+
+        private final String endpoint;
+        private final boolean[] window;
+        private final int minCalls;
+        private final double failureRate;
+        private final Duration openDuration;
+        private final Counter rejected;
+        private final LongSupplier nanoClock;
+        private int position;
+        private int calls;
+        private int failures;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private boolean probeInFlight;
+
+        Breaker(String endpoint, int windowSize, int minCalls, double failureRate,
+                Duration openDuration, Counter rejected, LongSupplier nanoClock) {
+            this.endpoint = endpoint;
+            this.window = new boolean[windowSize];
+            this.minCalls = minCalls;
+            this.failureRate = failureRate;
+            this.openDuration = openDuration;
+            this.rejected = rejected;
+            this.nanoClock = nanoClock;
+        }
+
+        synchronized void acquirePermission() {
+            if (state == State.OPEN) {
+                long remaining = remainingOpenNanos();
+                if (remaining > 0) {
+                    rejected.increment();
+                    throw new CircuitOpenException(endpoint, Duration.ofNanos(remaining));
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probeInFlight) {
+                    rejected.increment();
+                    throw new CircuitOpenException(endpoint, openDuration);
+                }
+                probeInFlight = true;
+            }
+        }
+
+        synchronized void record(boolean failed) {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+                if (failed) {
+                    open();
+                } else {
+                    reset();
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return; // Call started before the breaker opened
+            }
+
+            if (calls == window.length && window[position]) {
+                failures--;
+            }
+            window[position] = failed;
+            if (failed) {
+                failures++;
+            }
+            position = (position + 1) % window.length;
+            calls = Math.min(calls + 1, window.length);
+
+            if (calls >= minCalls && failures >= failureRate * calls) {
+                open();
+            }
+        }
+
+        synchronized State state() {
+            return state == State.OPEN && remainingOpenNanos() <= 0 ? State.HALF_OPEN : state;
+        }
+
+        synchronized Duration retryAfter() {
+            if (state != State.OPEN) {
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos(Math.max(0, remainingOpenNanos()));
+        }
+
+        private long remainingOpenNanos() {
+            return openDuration.toNanos() - (nanoClock.getAsLong() - openedAt);
+        }
+
+        private void open() {
+            reset();
+            openedAt = nanoClock.getAsLong();
+            transition(State.OPEN);
+        }
+
+        private void reset() {
+            Arrays.fill(window, false);
+            position = 0;
+            calls = 0;
+            failures = 0;
+        }
+
+        private void transition(State next) {
+            if (state != next) {
+                log.warn("Circuit breaker {}: {} -> {}", endpoint, state, next);
+                state = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.intelligentmarker.service;
+
+import java.time.Duration;
+
+/**
+ * Call rejected because the endpoint's circuit breaker is open
+ * The submission pipeline re-queues the job for when the breaker may close instead of failing it
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String endpoint;
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String endpoint, Duration retryAfter) {
+        super("Circuit open for " + endpoint + ", retry in " + retryAfter.toSeconds() + "s");
+        this.endpoint = endpoint;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * The CircuitOpenException in a cause chain, or null
+     */
+    public static CircuitOpenException causeOf(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof CircuitOpenException open) {
+                return open;
+            }
+        }
+        return null;
+    }
+}
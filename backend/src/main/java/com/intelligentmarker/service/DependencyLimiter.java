@@ -0,0 +1,59 @@
+package com.intelligentmarker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Concurrency caps per external dependency (OpenAI chat has its own adaptive budget, see ChatRateLimiter,
+ * and Tesseract is bounded by its engine pool, see TesseractPool)
+ * Workers may be plentiful (virtual threads), but each remote service only sees as many
+ * concurrent calls as it has permits
+ */
+@Service
+@Slf4j
+public class DependencyLimiter {
+
+    public enum Dependency {
+        OSS,        // Aliyun OSS / local storage reads and writes
+        VISION      // OpenAI Vision API
+    }
+
+    private final Map<Dependency, Semaphore> permits = new EnumMap<>(Dependency.class);
+
+    public DependencyLimiter(
+        @Value("${app.limits.oss:32}") int ossPermits,
+        @Value("${app.limits.vision:16}") int visionPermits
+    ) {
+        permits.put(Dependency.OSS, new Semaphore(Math.max(1, ossPermits), true));
+        permits.put(Dependency.VISION, new Semaphore(Math.max(1, visionPermits), true));
+
+        log.info("Dependency limits: OSS={}, VISION={}",
+                available(Dependency.OSS), available(Dependency.VISION));
+    }
+
+    /**
+     * Run call while holding a permit for the dependency (blocks until one is free)
+     */
+    public <T> T call(Dependency dependency, Callable<T> call) throws Exception {
+        Semaphore semaphore = permits.get(dependency);
+        semaphore.acquire();
+        try {
+            return call.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Currently free permits (for logging and diagnostics)
+     */
+    public int available(Dependency dependency) {
+        return permits.get(dependency).availablePermits();
+    }
+}
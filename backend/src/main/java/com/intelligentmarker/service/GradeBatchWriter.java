@@ -0,0 +1,86 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.Grade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk writer for AI grades (batch re-scoring, OpenAI Batch API results)
+ * One JDBC batch upsert per call instead of a load + save per Grade
+ */
+@Component
+@RequiredArgsConstructor
+public class GradeBatchWriter {
+
+    // Teacher-reviewed grades keep their status; only the AI fields are refreshed
+    private static final String UPSERT_GRADE_SQL =
+        "INSERT INTO grades (submission_id, ai_score, ai_confidence, ai_feedback, status, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, now(), now()) " +
+        "ON CONFLICT (submission_id) DO UPDATE SET " +
+        "ai_score = EXCLUDED.ai_score, ai_confidence = EXCLUDED.ai_confidence, ai_feedback = EXCLUDED.ai_feedback, " +
+        "status = CASE WHEN grades.status IN ('HIGH_CONFIDENCE', 'NEEDS_REVIEW') THEN EXCLUDED.status ELSE grades.status END, " +
+        "updated_at = now()";
+
+    // Current grades of the submissions, locked until the upsert commits
+    private static final String CURRENT_GRADES_SQL =
+        "SELECT s.id, s.assignment_id, g.status, g.teacher_score, g.ai_score FROM submissions s " +
+        "LEFT JOIN (SELECT * FROM grades WHERE submission_id = ANY(?) FOR UPDATE) g ON g.submission_id = s.id " +
+        "WHERE s.id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AssignmentStatsWriter statsWriter;
+
+    /**
+     * Insert or update the AI part of each submission's Grade (joins the caller's transaction)
+     * assignment_stats gets the net change per assignment, as the upsert itself cannot report what it replaced
+     */
+    public void upsertAiGrades(List<AiGrade> grades) {
+        if (grades.isEmpty()) {
+            return;
+        }
+        Map<Long, AiGrade> bySubmission = grades.stream()
+            .collect(Collectors.toMap(AiGrade::submissionId, g -> g, (a, b) -> b));
+        Map<Long, AssignmentStatsWriter.Delta> deltas = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(CURRENT_GRADES_SQL);
+            Array ids = con.createArrayOf("bigint", bySubmission.keySet().toArray());
+            ps.setArray(1, ids);
+            ps.setArray(2, ids);
+            return ps;
+        }, rs -> {
+            AiGrade update = bySubmission.get(rs.getLong("id"));
+            String current = rs.getString("status");
+            Grade.GradeStatus status = current != null ? Grade.GradeStatus.valueOf(current) : null;
+            BigDecimal teacherScore = rs.getBigDecimal("teacher_score");
+            BigDecimal aiScore = rs.getBigDecimal("ai_score");
+
+            // Same outcome as the upsert
+            Grade.GradeStatus newStatus = status == null || status == Grade.GradeStatus.HIGH_CONFIDENCE
+                || status == Grade.GradeStatus.NEEDS_REVIEW ? update.status() : status;
+            AssignmentStatsWriter.Delta delta = deltas.computeIfAbsent(rs.getLong("assignment_id"),
+                id -> new AssignmentStatsWriter.Delta());
+            if (status != null) {
+                delta.remove(status, teacherScore != null ? teacherScore : aiScore);
+            }
+            delta.add(newStatus, teacherScore != null ? teacherScore : update.score());
+        });
+
+        jdbcTemplate.batchUpdate(UPSERT_GRADE_SQL, grades.stream()
+            .map(g -> new Object[] { g.submissionId(), g.score(), g.confidence(), g.feedbackJson(), g.status().name() })
+            .toList());
+        deltas.forEach(statsWriter::apply);
+    }
+
+    public record AiGrade(Long submissionId, BigDecimal score, BigDecimal confidence,
+                          String feedbackJson, Grade.GradeStatus status) {
+    }
+}
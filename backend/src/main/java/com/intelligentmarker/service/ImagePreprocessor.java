@@ -0,0 +1,435 @@
+package com.intelligentmarker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Image preprocessing shared by OCR and Vision
+ * An uploaded image is decoded once and turned into
+ * - an OCR image: scaled to at most ocr-max-side pixels (about A4 at 300 dpi), grayscale, deskewed
+ *   and binarized with Otsu's threshold
+ * - a Vision JPEG: color, scaled to at most vision-max-side pixels, re-encoded until it fits vision-max-bytes
+ * Results are cached by SHA-256 of the original bytes, so the quality check, OCR and Vision calls
+ * for the same upload (and re-runs) reuse them
+ */
+@Component
+@Slf4j
+public class ImagePreprocessor {
+
+    private static final double DESKEW_STEP_DEGREES = 0.5;
+    private static final int DESKEW_SAMPLE_SIDE = 800;
+
+    private final boolean enabled;
+    private final int ocrMaxSide;
+    private final boolean binarize;
+    private final boolean deskew;
+    private final double maxSkewDegrees;
+    private final int visionMaxSide;
+    private final float visionQuality;
+    private final long visionMaxBytes;
+    private final Cache<String, PreparedImage> cache;
+    private final Timer preprocessTime;
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary visionBytes;
+
+    public ImagePreprocessor(
+        @Value("${app.image-preprocessing.enabled:true}") boolean enabled,
+        @Value("${app.image-preprocessing.ocr-max-side:3508}") int ocrMaxSide,
+        @Value("${app.image-preprocessing.binarize:true}") boolean binarize,
+        @Value("${app.image-preprocessing.deskew:true}") boolean deskew,
+        @Value("${app.image-preprocessing.max-skew-degrees:5}") double maxSkewDegrees,
+        @Value("${app.image-preprocessing.vision-max-side:2048}") int visionMaxSide,
+        @Value("${app.image-preprocessing.vision-quality:0.85}") float visionQuality,
+        @Value("${app.image-preprocessing.vision-max-bytes:1048576}") long visionMaxBytes,
+        @Value("${app.image-preprocessing.cache-max-bytes:67108864}") long cacheMaxBytes,
+        @Value("${app.image-preprocessing.cache-ttl:30m}") Duration cacheTtl,
+        MeterRegistry meterRegistry
+    ) {
+        this.enabled = enabled;
+        this.ocrMaxSide = ocrMaxSide;
+        this.binarize = binarize;
+        this.deskew = deskew;
+        this.maxSkewDegrees = maxSkewDegrees;
+        this.visionMaxSide = visionMaxSide;
+        this.visionQuality = visionQuality;
+        this.visionMaxBytes = visionMaxBytes;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(cacheMaxBytes)
+            .weigher((String key, PreparedImage image) -> image.weight())
+            .expireAfterAccess(cacheTtl)
+            .build();
+
+        this.preprocessTime = Timer.builder("image.preprocess")
+            .register(meterRegistry);
+        this.originalBytes = DistributionSummary.builder("image.preprocess.bytes")
+            .baseUnit("bytes")
+            .tag("image", "original")
+            .register(meterRegistry);
+        this.visionBytes = DistributionSummary.builder("image.preprocess.bytes")
+            .baseUnit("bytes")
+            .tag("image", "vision")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Decode and preprocess an uploaded image (cached by content hash)
+     * @throws IllegalArgumentException when the bytes are not a readable image
+     */
+    public PreparedImage prepare(byte[] imageBytes) {
+        return prepare(ByteBuffer.wrap(imageBytes));
+    }
+
+    /**
+     * Decode and preprocess an uploaded image held in a buffer (e.g. a memory-mapped local file)
+     * @throws IllegalArgumentException when the content is not a readable image
+     */
+    public PreparedImage prepare(ByteBuffer content) {
+        ByteBuffer image = content.asReadOnlyBuffer();
+        try {
+            return cache.get(sha256(image.duplicate()), key -> preprocessTime.record(() -> process(image)));
+        } catch (UncheckedIOException e) {
+            throw new IllegalArgumentException("Failed to read image: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    /**
+     * OCR preparation of an already decoded image (rendered PDF pages); not cached
+     */
+    public BufferedImage forOcr(BufferedImage image) {
+        return enabled ? ocrImage(image) : image;
+    }
+
+    private PreparedImage process(ByteBuffer content) {
+        int size = content.remaining();
+        BufferedImage original;
+        try {
+            original = ImageIO.read(new BufferInputStream(content.duplicate()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (original == null) {
+            throw new UncheckedIOException(new IOException("unsupported image format"));
+        }
+
+        BufferedImage ocr = enabled ? ocrImage(original) : original;
+        // Uploads that already fit the Vision limits, or that re-encode larger (flat scans as PNG), are sent as they are
+        boolean fitsVision = Math.max(original.getWidth(), original.getHeight()) <= visionMaxSide
+            && size <= visionMaxBytes;
+        byte[] vision = enabled && !fitsVision ? visionJpeg(original) : null;
+        String visionMime = "image/jpeg";
+        if (vision == null || (vision.length > size && size <= visionMaxBytes)) {
+            vision = new byte[size];
+            content.duplicate().get(vision);
+            visionMime = mimeType(vision);
+        }
+
+        originalBytes.record(size);
+        visionBytes.record(vision.length);
+        log.info("Image preprocessed: {}x{} ({} KB) -> OCR {}x{}, Vision {} KB",
+                original.getWidth(), original.getHeight(), size / 1024,
+                ocr.getWidth(), ocr.getHeight(), vision.length / 1024);
+
+        return new PreparedImage(original.getWidth(), original.getHeight(), ocr, vision, visionMime);
+    }
+
+    /**
+     * Scale down to ocr-max-side, convert to grayscale, deskew, binarize
+     */
+    private BufferedImage ocrImage(BufferedImage source) {
+        BufferedImage gray = scaled(source, ocrMaxSide, BufferedImage.TYPE_BYTE_GRAY);
+        if (deskew) {
+            double skew = estimateSkew(gray);
+            if (Math.abs(skew) >= DESKEW_STEP_DEGREES) {
+                log.debug("Deskewing image by {} degrees", skew);
+                gray = rotate(gray, -skew);
+            }
+        }
+        return binarize ? binarize(gray) : gray;
+    }
+
+    /**
+     * Color JPEG within vision-max-side and, lowering quality if needed, vision-max-bytes
+     */
+    private byte[] visionJpeg(BufferedImage source) {
+        BufferedImage rgb = scaled(source, visionMaxSide, BufferedImage.TYPE_INT_RGB);
+        float quality = visionQuality;
+        byte[] jpeg = encodeJpeg(rgb, quality);
+        while (jpeg.length > visionMaxBytes && quality > 0.4f) {
+            quality -= 0.15f;
+            jpeg = encodeJpeg(rgb, quality);
+        }
+        return jpeg;
+    }
+
+    /**
+     * Copy into the given image type, scaled so the longer side is at most maxSide (never enlarged)
+     * Transparent areas become white
+     */
+    private static BufferedImage scaled(BufferedImage source, int maxSide, int imageType) {
+        double scale = Math.min(1.0, maxSide / (double) Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height, imageType);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Skew angle of text lines in degrees, by projection profile: dark pixels of a downscaled copy are
+     * projected onto rows at each candidate angle; straight lines give the sharpest profile
+     */
+    private double estimateSkew(BufferedImage gray) {
+        BufferedImage sample = scaled(gray, DESKEW_SAMPLE_SIDE, BufferedImage.TYPE_BYTE_GRAY);
+        Raster raster = sample.getRaster();
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        int threshold = otsuThreshold(raster);
+
+        int[] xs = new int[width * height];
+        int[] ys = new int[width * height];
+        int dark = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (raster.getSample(x, y, 0) < threshold) {
+                    xs[dark] = x;
+                    ys[dark] = y;
+                    dark++;
+                }
+            }
+        }
+        if (dark == 0) {
+            return 0;
+        }
+
+        int diagonal = (int) Math.ceil(Math.hypot(width, height));
+        long[] rows = new long[2 * diagonal + 1];
+        double bestAngle = 0;
+        double bestScore = -1;
+        for (double angle = -maxSkewDegrees; angle <= maxSkewDegrees + 1e-9; angle += DESKEW_STEP_DEGREES) {
+            double radians = Math.toRadians(angle);
+            double sin = Math.sin(radians);
+            double cos = Math.cos(radians);
+            Arrays.fill(rows, 0);
+            for (int i = 0; i < dark; i++) {
+                rows[(int) Math.round(ys[i] * cos - xs[i] * sin) + diagonal]++;
+            }
+            double score = 0;
+            for (long count : rows) {
+                score += (double) count * count;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        return bestAngle;
+    }
+
+    private static BufferedImage rotate(BufferedImage gray, double degrees) {
+        BufferedImage rotated = new BufferedImage(gray.getWidth(), gray.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = rotated.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, rotated.getWidth(), rotated.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(gray, AffineTransform.getRotateInstance(
+                Math.toRadians(degrees), gray.getWidth() / 2.0, gray.getHeight() / 2.0), null);
+        } finally {
+            g.dispose();
+        }
+        return rotated;
+    }
+
+    private static BufferedImage binarize(BufferedImage gray) {
+        Raster source = gray.getRaster();
+        int threshold = otsuThreshold(source);
+        BufferedImage binary = new BufferedImage(gray.getWidth(), gray.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster target = binary.getRaster();
+        int[] row = new int[gray.getWidth()];
+        for (int y = 0; y < gray.getHeight(); y++) {
+            source.getSamples(0, y, row.length, 1, 0, row);
+            for (int x = 0; x < row.length; x++) {
+                row[x] = row[x] >= threshold ? 1 : 0;
+            }
+            target.setSamples(0, y, row.length, 1, 0, row);
+        }
+        return binary;
+    }
+
+    /**
+     * Otsu's threshold: the gray level that maximizes the between-class variance of the histogram
+     */
+    private static int otsuThreshold(Raster gray) {
+        long[] histogram = new long[256];
+        int[] row = new int[gray.getWidth()];
+        for (int y = 0; y < gray.getHeight(); y++) {
+            gray.getSamples(0, y, row.length, 1, 0, row);
+            for (int value : row) {
+                histogram[value]++;
+            }
+        }
+
+        long total = (long) gray.getWidth() * gray.getHeight();
+        double sumAll = 0;
+        for (int i = 0; i < 256; i++) {
+            sumAll += (double) i * histogram[i];
+        }
+
+        double sumBackground = 0;
+        long weightBackground = 0;
+        double bestVariance = -1;
+        int threshold = 128;
+        for (int t = 0; t < 256; t++) {
+            weightBackground += histogram[t];
+            if (weightBackground == 0) {
+                continue;
+            }
+            long weightForeground = total - weightBackground;
+            if (weightForeground == 0) {
+                break;
+            }
+            sumBackground += (double) t * histogram[t];
+            double meanBackground = sumBackground / weightBackground;
+            double meanForeground = (sumAll - sumBackground) / weightForeground;
+            double variance = (double) weightBackground * weightForeground
+                * (meanBackground - meanForeground) * (meanBackground - meanForeground);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = t + 1;
+            }
+        }
+        return threshold;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage rgb, float quality) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * MIME type from the file signature, for uploads sent to Vision unchanged
+     */
+    static String mimeType(byte[] bytes) {
+        if (bytes.length >= 8 && (bytes[0] & 0xFF) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G') {
+            return "image/png";
+        }
+        if (bytes.length >= 4 && bytes[0] == 'G' && bytes[1] == 'I' && bytes[2] == 'F') {
+            return "image/gif";
+        }
+        if (bytes.length >= 12 && bytes[0] == 'R' && bytes[1] == 'I' && bytes[8] == 'W' && bytes[9] == 'E') {
+            return "image/webp";
+        }
+        return "image/jpeg";
+    }
+
+    private static String sha256(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * InputStream over a buffer, so mapped files are decoded without a heap copy
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Derived images of one upload
+     * @param width Original width in pixels
+     * @param height Original height in pixels
+     * @param ocrImage Grayscale/binary image for Tesseract
+     * @param visionImage Encoded image for the Vision API
+     * @param visionMimeType MIME type of visionImage
+     */
+    public record PreparedImage(int width, int height, BufferedImage ocrImage,
+                                byte[] visionImage, String visionMimeType) {
+
+        int weight() {
+            int bitsPerPixel = ocrImage.getColorModel().getPixelSize();
+            long ocrBytes = (long) ocrImage.getWidth() * ocrImage.getHeight() * bitsPerPixel / 8;
+            return (int) Math.min(Integer.MAX_VALUE, ocrBytes + visionImage.length);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.intelligentmarker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * File system object store (app.storage.local.root)
+ * Objects live under root/folder/xx/yy/name, where xx/yy come from a hash of the name, so no directory
+ * grows past a few hundred entries. Writes go through a FileChannel into a temp file that is renamed into
+ * place (optionally fsynced first), so readers never see partial files. Reads are memory-mapped
+ */
+@Component
+@Slf4j
+public class LocalObjectStore implements ObjectStore {
+
+    static final String SCHEME = "local://";
+
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final Path root;
+    private final boolean fsync;
+
+    public LocalObjectStore(
+        @Value("${app.storage.local.root:/tmp/uploads}") String root,
+        @Value("${app.storage.local.fsync:true}") boolean fsync
+    ) {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.fsync = fsync;
+        log.info("Local object store at {} (fsync {})", this.root, fsync ? "on" : "off");
+    }
+
+    @Override
+    public String put(String key, InputStream content) throws IOException {
+        Path target = pathFor(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling("." + target.getFileName() + ".part");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             ReadableByteChannel source = Channels.newChannel(content)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (fsync) {
+            syncDirectory(target.getParent());
+        }
+        return SCHEME + target;
+    }
+
+    @Override
+    public boolean owns(String url) {
+        return url.startsWith(SCHEME);
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        return Files.newInputStream(path(url));
+    }
+
+    @Override
+    public ByteBuffer read(String url) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(url), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public DownloadedFile toLocalFile(String url) {
+        return new DownloadedFile(path(url), false);
+    }
+
+    @Override
+    public long size(String url) throws IOException {
+        return Files.size(path(url));
+    }
+
+    @Override
+    public void delete(String url) throws IOException {
+        Files.deleteIfExists(path(url));
+    }
+
+    /**
+     * File behind a local:// URL
+     * URLs written before sharding (flat /tmp/uploads/folder/name) still resolve, as the URL holds the full path
+     */
+    public Path path(String url) {
+        if (!owns(url)) {
+            throw new IllegalArgumentException("Not a local object: " + url);
+        }
+        return Path.of(url.substring(SCHEME.length())).normalize();
+    }
+
+    private Path pathFor(String key) {
+        int slash = key.lastIndexOf('/');
+        String folder = slash >= 0 ? key.substring(0, slash) : "";
+        String name = key.substring(slash + 1).replaceAll("[\\\\:]", "_");
+        String hash = sha256(name);
+
+        Path target = root.resolve(folder).resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4))
+            .resolve(name).normalize();
+        if (!target.startsWith(root) || name.isEmpty() || name.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid object key: " + key);
+        }
+        return target;
+    }
+
+    private static void syncDirectory(Path directory) {
+        // Makes the rename durable; not every platform can open a directory, which is harmless
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Directory fsync not supported for {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,99 +1,291 @@
 package com.intelligentmarker.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * OCR text extraction service
  * Supports PDF, Word, and image formats
+ * Documents are read from a file, never loaded whole: PDFBox reads the file on demand and caches
+ * streams in temp files, DOCX body XML is parsed with StAX, and text is collected page by page into
+ * a buffer capped at app.ocr.max-text-chars.
+ * Scanned PDF pages are rendered to images and recognized in parallel on a bounded fork-join pool;
+ * all recognition runs on engines borrowed from TesseractPool
  */
 @Service
 @Slf4j
 public class OCRService {
     
-    private final Tesseract tesseract;
+    private static final XMLInputFactory XML_INPUT = secureXmlInputFactory();
     
-    public OCRService() {
-        this.tesseract = new Tesseract();
-        // Set Tesseract data path (need to download language pack)
-        // tesseract.setDatapath("/usr/share/tesseract-ocr/4.00/tessdata");
-        tesseract.setLanguage("eng+chi_sim"); // English + Simplified Chinese
+    private final TesseractPool tesseractPool;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ForkJoinPool pagePool;
+    private final int pageParallelism;
+    private final float renderDpi;
+    private final int minPageText;
+    private final int maxTextChars;
+    private final MeterRegistry meterRegistry;
+    
+    public OCRService(
+        TesseractPool tesseractPool,
+        ImagePreprocessor imagePreprocessor,
+        @Value("${app.ocr.page-parallelism:0}") int pageParallelism,
+        @Value("${app.ocr.render-dpi:300}") float renderDpi,
+        @Value("${app.ocr.min-page-text:20}") int minPageText,
+        @Value("${app.ocr.max-text-chars:1000000}") int maxTextChars,
+        MeterRegistry meterRegistry
+    ) {
+        this.tesseractPool = tesseractPool;
+        this.imagePreprocessor = imagePreprocessor;
+        this.pageParallelism = pageParallelism > 0 ? pageParallelism : Runtime.getRuntime().availableProcessors();
+        this.renderDpi = renderDpi;
+        this.minPageText = minPageText;
+        this.maxTextChars = maxTextChars;
+        this.meterRegistry = meterRegistry;
+        this.pagePool = new ForkJoinPool(this.pageParallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ocr-page-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        log.info("PDF page OCR: {} workers at {} dpi", this.pageParallelism, renderDpi);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pagePool.shutdownNow();
     }
 
     /**
      * Extract text based on file type
-     * @param fileBytes File byte array
+     * @param fileBytes File byte array (documents are spooled to a temp file first)
      * @param fileType File type (pdf, docx, jpg, png)
      * @return Extracted text
      */
     public String extractText(byte[] fileBytes, String fileType) {
+        if (isImage(fileType)) {
+            return measured(fileType, () -> extractFromImage(fileBytes));
+        }
+
+        Path spooled = null;
+        try {
+            spooled = Files.createTempFile("ocr-", "." + fileType.toLowerCase());
+            Files.write(spooled, fileBytes);
+            return extractText(spooled, fileType);
+        } catch (IOException e) {
+            throw new RuntimeException("OCR failed: " + e.getMessage());
+        } finally {
+            deleteQuietly(spooled);
+        }
+    }
+
+    /**
+     * Extract text from a file based on file type
+     * @param file Local file (e.g. spooled by StorageService.downloadToFile)
+     * @param fileType File type (pdf, docx, jpg, png)
+     * @return Extracted text
+     */
+    public String extractText(Path file, String fileType) {
+        return measured(fileType, () -> switch (fileType.toLowerCase()) {
+            case "pdf" -> extractFromPdf(file);
+            case "doc", "docx" -> extractFromWord(file);
+            case "jpg", "jpeg", "png", "bmp" -> extractFromImage(Files.readAllBytes(file));
+            default -> throw new IllegalArgumentException("Unsupported file type: " + fileType);
+        });
+    }
+
+    /**
+     * Run an extraction and record the heap it allocated on this thread (ocr.extraction.allocated)
+     * Allocation is an upper bound for the heap an extraction holds; page OCR on the pool threads
+     * is bounded separately by page-parallelism rendered pages
+     */
+    private String measured(String fileType, Extraction extraction) {
+        long allocatedBefore = allocatedBytes();
         try {
-            return switch (fileType.toLowerCase()) {
-                case "pdf" -> extractFromPdf(fileBytes);
-                case "doc", "docx" -> extractFromWord(fileBytes);
-                case "jpg", "jpeg", "png", "bmp" -> extractFromImage(fileBytes);
-                default -> throw new IllegalArgumentException("Unsupported file type: " + fileType);
-            };
+            return extraction.run();
         } catch (Exception e) {
             log.error("OCR extraction failed for file type: {}", fileType, e);
             throw new RuntimeException("OCR failed: " + e.getMessage());
+        } finally {
+            long allocatedAfter = allocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                DistributionSummary.builder("ocr.extraction.allocated")
+                    .baseUnit("bytes")
+                    .tag("type", fileType.toLowerCase())
+                    .register(meterRegistry)
+                    .record(allocatedAfter - allocatedBefore);
+            }
         }
     }
     
     /**
      * Extract text from PDF
+     * The file is read on demand (RandomAccessReadBufferedFile) and decoded streams are cached in
+     * temp files rather than on the heap.
+     * Pages with a text layer are stripped directly; pages with (almost) none are scanned images and
+     * go through OCR. Pages are rendered one at a time on this thread (PDDocument is not thread-safe)
+     * and recognized on the page pool, with at most page-parallelism pages held in memory.
+     * Page texts are appended in page order until the text buffer is full
      */
-    private String extractFromPdf(byte[] fileBytes) throws Exception {
-        try (PDDocument document = Loader.loadPDF(fileBytes)) {
+    private String extractFromPdf(Path file) throws Exception {
+        long start = System.nanoTime();
+        try (RandomAccessReadBufferedFile source = new RandomAccessReadBufferedFile(file.toFile());
+             PDDocument document = Loader.loadPDF(source, MemoryUsageSetting.setupTempFileOnly().streamCache)) {
+            int pageCount = document.getNumberOfPages();
             PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
+            PDFRenderer renderer = new PDFRenderer(document);
+            TextBuffer text = new TextBuffer(maxTextChars);
+            Deque<Future<String>> pending = new ArrayDeque<>();
+            int scanned = 0;
+            int page = 1;
 
-            // If PDF text is empty or too little, might be scanned image, try OCR
-            if (text.trim().length() < 100) {
-                log.info("PDF has little text, may be scanned image, attempting OCR...");
-                // Simplified handling here, should convert PDF to image then OCR
-                return text + "\n[Note: PDF may contain images requiring OCR]";
-            }
+            try {
+                for (; page <= pageCount && !text.isFull(); page++) {
+                    // Bound memory: wait for the oldest page before taking another
+                    while (pending.size() >= pageParallelism) {
+                        text.appendPage(pending.removeFirst().get());
+                    }
 
-            return text;
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    String pageText = stripper.getText(document);
+                    if (pageText.trim().length() >= minPageText) {
+                        pending.addLast(CompletableFuture.completedFuture(pageText));
+                    } else {
+                        BufferedImage image = renderer.renderImageWithDPI(page - 1, renderDpi, ImageType.GRAY);
+                        int pageNumber = page;
+                        pending.addLast(pagePool.submit(() -> ocrPage(image, pageNumber)));
+                        scanned++;
+                    }
+
+                    while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+                        text.appendPage(pending.removeFirst().get());
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    text.appendPage(pending.removeFirst().get());
+                }
+
+                if (text.isFull()) {
+                    log.warn("PDF text truncated at {} characters (page {} of {})", maxTextChars, page - 1, pageCount);
+                }
+                log.info("PDF text extracted: {} pages ({} OCR'd) in {} ms",
+                        pageCount, scanned, (System.nanoTime() - start) / 1_000_000);
+                return text.toString();
+
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                for (Future<String> remaining : pending) {
+                    remaining.cancel(false);
+                }
+            }
         }
     }
 
+    /**
+     * OCR one rendered page (page and image OCR share the engines of TesseractPool)
+     */
+    private String ocrPage(BufferedImage image, int pageNumber) throws Exception {
+        String text = tesseractPool.recognize(imagePreprocessor.forOcr(image));
+        log.debug("OCR page {}: {} characters", pageNumber, text.length());
+        return text;
+    }
+
     /**
      * Extract text from Word document
+     * Streams word/document.xml out of the zip with StAX instead of building the POI object model:
+     * runs (w:t) are appended as they are read, paragraphs (w:p) end a line
      */
-    private String extractFromWord(byte[] fileBytes) throws Exception {
-        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(fileBytes));
-             XWPFWordExtractor extractor = new XWPFWordExtractor(document)) {
+    private String extractFromWord(Path file) throws Exception {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry body = zip.getEntry("word/document.xml");
+            if (body == null) {
+                throw new IllegalArgumentException("Not a DOCX document");
+            }
 
-            return extractor.getText();
+            TextBuffer text = new TextBuffer(maxTextChars);
+            try (InputStream in = zip.getInputStream(body)) {
+                XMLStreamReader reader = XML_INPUT.createXMLStreamReader(in);
+                try {
+                    while (reader.hasNext() && !text.isFull()) {
+                        int event = reader.next();
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            switch (reader.getLocalName()) {
+                                case "t" -> text.append(reader.getElementText());
+                                case "tab" -> text.append("\t");
+                                case "br", "cr" -> text.append("\n");
+                                default -> { }
+                            }
+                        } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("p")) {
+                            text.append("\n");
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+
+            if (text.isFull()) {
+                log.warn("Word text truncated at {} characters", maxTextChars);
+            }
+            return text.toString();
         }
     }
 
+    /**
+     * Extract text from an image that is already decoded and preprocessed (see SubmissionArtifacts)
+     * @param image Prepared image
+     * @param fileType File type, for the allocation metric
+     * @return Extracted text
+     */
+    public String extractText(ImagePreprocessor.PreparedImage image, String fileType) {
+        return measured(fileType, () -> recognizeImage(image.ocrImage()));
+    }
+
     /**
      * Extract text from image (using Tesseract OCR)
      */
     private String extractFromImage(byte[] fileBytes) throws Exception {
-        try {
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(fileBytes));
-
-            if (image == null) {
-                throw new RuntimeException("Failed to read image");
-            }
+        // Downscaled, deskewed and binarized once per upload (shared with the quality check)
+        return recognizeImage(imagePreprocessor.prepare(fileBytes).ocrImage());
+    }
 
-            String text = tesseract.doOCR(image);
+    private String recognizeImage(BufferedImage image) throws Exception {
+        try {
+            // CPU bound: at most app.ocr.engines concurrent recognitions
+            String text = tesseractPool.recognize(image);
 
             log.info("OCR extracted {} characters from image", text.length());
             return text;
@@ -110,28 +302,103 @@ public class OCRService {
      */
     public boolean checkImageQuality(byte[] imageBytes) {
         try {
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            return checkImageQuality(imagePreprocessor.prepare(imageBytes));
+        } catch (Exception e) {
+            log.error("Failed to check image quality", e);
+            return false;
+        }
+    }
 
-            if (image == null) {
-                return false;
-            }
+    /**
+     * Check if a prepared image is large enough for OCR (original dimensions)
+     * @return true if quality is sufficient
+     */
+    public boolean checkImageQuality(ImagePreprocessor.PreparedImage image) {
+        // Simple check: whether the original width and height are sufficient
+        int width = image.width();
+        int height = image.height();
 
-            // Simple check: whether width and height are sufficient
-            int width = image.getWidth();
-            int height = image.getHeight();
+        // Minimum requirement: 300x300 pixels
+        boolean qualityOk = width >= 300 && height >= 300;
 
-            // Minimum requirement: 300x300 pixels
-            boolean qualityOk = width >= 300 && height >= 300;
+        log.info("Image quality check: {}x{} - {}", width, height,
+                qualityOk ? "PASS" : "FAIL (too small)");
 
-            log.info("Image quality check: {}x{} - {}", width, height,
-                    qualityOk ? "PASS" : "FAIL (too small)");
+        return qualityOk;
+    }
 
-            return qualityOk;
+    private static boolean isImage(String fileType) {
+        return fileType.toLowerCase().matches("jpg|jpeg|png|bmp");
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to check image quality", e);
-            return false;
+    /**
+     * Bytes allocated by the current thread so far, or -1 when the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
         }
+        return -1;
     }
-}
 
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete temp file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * StAX factory that ignores DTDs and external entities (uploaded documents are untrusted)
+     */
+    private static XMLInputFactory secureXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    @FunctionalInterface
+    private interface Extraction {
+        String run() throws Exception;
+    }
+
+    /**
+     * Text collected up to a character limit; later appends are dropped once it is full
+     */
+    private static final class TextBuffer {
+
+        private final StringBuilder text = new StringBuilder();
+        private final int maxChars;
+
+        TextBuffer(int maxChars) {
+            this.maxChars = maxChars;
+        }
+
+        void append(String value) {
+            int room = maxChars - text.length();
+            if (room > 0) {
+                text.append(value, 0, Math.min(room, value.length()));
+            }
+        }
+
+        void appendPage(String page) {
+            append(page);
+            append("\n");
+        }
+
+        boolean isFull() {
+            return text.length() >= maxChars;
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.intelligentmarker.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Storage backend for uploaded files and generated documents
+ * Objects are addressed by the URL returned from put, which is what entities store
+ * (https://bucket.endpoint/key for OSS, local:///path for the local file system)
+ */
+public interface ObjectStore {
+
+    /**
+     * Store content under a key
+     * @param key Object key (folder/name)
+     * @param content Content stream, read to the end but not closed
+     * @return URL of the stored object
+     */
+    String put(String key, InputStream content) throws IOException;
+
+    /**
+     * Whether the URL belongs to this store
+     */
+    boolean owns(String url);
+
+    /**
+     * Open the object for streaming; the caller closes the stream
+     */
+    InputStream open(String url) throws IOException;
+
+    /**
+     * Whole object as a read-only buffer (memory-mapped where the backend has local files)
+     */
+    ByteBuffer read(String url) throws IOException;
+
+    /**
+     * Object as a local file; close the result when done
+     */
+    DownloadedFile toLocalFile(String url) throws IOException;
+
+    /**
+     * Object size in bytes
+     */
+    long size(String url) throws IOException;
+
+    void delete(String url) throws IOException;
+
+    /**
+     * Local copy of a stored file; close deletes it when it is a temp download
+     */
+    @Slf4j
+    record DownloadedFile(Path path, boolean temporary) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            if (!temporary) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete temp download {}: {}", path, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.model.*;
+import com.intelligentmarker.repository.BatchScoringRequestRepository;
+import com.intelligentmarker.repository.OpenAiBatchRepository;
+import com.intelligentmarker.repository.SubmissionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Offline scoring through the OpenAI Batch API (assignments in BATCH scoring mode)
+ * The SCORE stage queues a request instead of calling OpenAI; queued requests are sent as one JSONL
+ * batch once enough have accumulated (or the oldest has waited long enough), finished batches are
+ * polled and their results applied to grades in bulk. Failed requests go into the next batch
+ */
+@Service
+@Slf4j
+public class OfflineScoringService {
+
+    private static final String CUSTOM_ID_PREFIX = "submission-";
+    private static final Set<String> TERMINAL_STATUSES = Set.of("completed", "expired", "cancelled", "failed");
+
+    private final BatchScoringRequestRepository requestRepository;
+    private final OpenAiBatchRepository batchRepository;
+    private final SubmissionRepository submissionRepository;
+    private final OpenAiBatchClient batchClient;
+    private final OpenAiService openAiService;
+    private final ScoringService scoringService;
+    private final ScoringResponseParser responseParser;
+    private final GradeBatchWriter gradeBatchWriter;
+    private final SubmissionQueueService submissionQueueService;
+    private final NotificationService notificationService;
+    private final AuditLogService auditLogService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int minRequests;
+    private final int maxRequests;
+    private final Duration maxWait;
+    private final int maxAttempts;
+
+    public OfflineScoringService(
+        BatchScoringRequestRepository requestRepository,
+        OpenAiBatchRepository batchRepository,
+        SubmissionRepository submissionRepository,
+        OpenAiBatchClient batchClient,
+        OpenAiService openAiService,
+        ScoringService scoringService,
+        ScoringResponseParser responseParser,
+        GradeBatchWriter gradeBatchWriter,
+        SubmissionQueueService submissionQueueService,
+        NotificationService notificationService,
+        AuditLogService auditLogService,
+        TransactionTemplate transactionTemplate,
+        ObjectMapper objectMapper,
+        @Value("${app.openai-batch.min-requests:100}") int minRequests,
+        @Value("${app.openai-batch.max-requests:5000}") int maxRequests,
+        @Value("${app.openai-batch.max-wait:30m}") Duration maxWait,
+        @Value("${app.openai-batch.max-attempts:2}") int maxAttempts
+    ) {
+        this.requestRepository = requestRepository;
+        this.batchRepository = batchRepository;
+        this.submissionRepository = submissionRepository;
+        this.batchClient = batchClient;
+        this.openAiService = openAiService;
+        this.scoringService = scoringService;
+        this.responseParser = responseParser;
+        this.gradeBatchWriter = gradeBatchWriter;
+        this.submissionQueueService = submissionQueueService;
+        this.notificationService = notificationService;
+        this.auditLogService = auditLogService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.minRequests = minRequests;
+        this.maxRequests = maxRequests;
+        this.maxWait = maxWait;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Whether the assignment's submissions are scored offline (needs a real API key)
+     */
+    public boolean accepts(Assignment assignment) {
+        return assignment.getScoringMode() == Assignment.ScoringMode.BATCH && openAiService.isConfigured();
+    }
+
+    /**
+     * Queue submission for the next batch (joins the caller's transaction)
+     */
+    @Transactional
+    public void enqueue(Submission submission, String visionAnalysis) {
+        BatchScoringRequest request = requestRepository.findBySubmissionId(submission.getId())
+            .orElseGet(BatchScoringRequest::new);
+        request.setSubmissionId(submission.getId());
+        request.setPrompt(writeMessages(scoringService.buildPrompt(submission, visionAnalysis)));
+        request.setStatus(BatchScoringRequest.RequestStatus.QUEUED);
+        request.setBatchId(null);
+        request.setAttempts(0);
+        request.setLastError(null);
+        requestRepository.save(request);
+        log.info("Submission {} queued for OpenAI batch scoring", submission.getId());
+    }
+
+    /**
+     * Scheduled task: send queued requests as one batch when enough have accumulated or the oldest is due
+     */
+    @Scheduled(fixedDelayString = "${app.openai-batch.submit-interval-ms:60000}")
+    public void submitQueued() {
+        List<BatchScoringRequest> oldest = requestRepository.findByStatusOrderByCreatedAtAsc(
+            BatchScoringRequest.RequestStatus.QUEUED, PageRequest.of(0, 1));
+        if (oldest.isEmpty()) {
+            return;
+        }
+
+        long queued = requestRepository.countByStatus(BatchScoringRequest.RequestStatus.QUEUED);
+        boolean due = oldest.get(0).getCreatedAt().isBefore(LocalDateTime.now().minus(maxWait));
+        if (queued < minRequests && !due) {
+            return;
+        }
+
+        List<Long> ids = transactionTemplate.execute(status -> requestRepository.claimQueued(maxRequests));
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        List<BatchScoringRequest> requests = requestRepository.findAllById(ids);
+
+        try {
+            // Upload and create the batch outside any transaction
+            String fileId = batchClient.uploadBatchFile(buildJsonl(requests), "scoring-" + System.currentTimeMillis() + ".jsonl");
+            JsonNode remote = batchClient.createBatch(fileId);
+
+            transactionTemplate.executeWithoutResult(status -> {
+                OpenAiBatch batch = new OpenAiBatch();
+                batch.setOpenaiBatchId(remote.path("id").asText());
+                batch.setInputFileId(fileId);
+                batch.setStatus(OpenAiBatch.BatchStatus.SUBMITTED);
+                batch.setRemoteStatus(remote.path("status").asText(null));
+                batch.setRequestCount(requests.size());
+                OpenAiBatch saved = batchRepository.save(batch);
+
+                for (BatchScoringRequest request : requests) {
+                    request.setBatchId(saved.getId());
+                    request.setAttempts(request.getAttempts() + 1);
+                }
+                requestRepository.saveAll(requests);
+            });
+            log.info("📦 Submitted OpenAI batch {} with {} scoring requests", remote.path("id").asText(), requests.size());
+
+        } catch (Exception e) {
+            log.error("Failed to submit OpenAI batch ({} requests), will retry", requests.size(), e);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (BatchScoringRequest request : requests) {
+                    request.setStatus(BatchScoringRequest.RequestStatus.QUEUED);
+                    request.setLastError("Batch submission failed: " + e.getMessage());
+                }
+                requestRepository.saveAll(requests);
+            });
+        }
+    }
+
+    /**
+     * Scheduled task: check running batches and apply the results of finished ones
+     */
+    @Scheduled(fixedDelayString = "${app.openai-batch.poll-interval-ms:300000}")
+    public void pollBatches() {
+        transactionTemplate.executeWithoutResult(status -> requestRepository.requeueUnbatched(
+            BatchScoringRequest.RequestStatus.QUEUED,
+            BatchScoringRequest.RequestStatus.SUBMITTED,
+            LocalDateTime.now().minusHours(1)));
+
+        for (OpenAiBatch batch : batchRepository.findByStatus(OpenAiBatch.BatchStatus.SUBMITTED)) {
+            try {
+                pollBatch(batch);
+            } catch (Exception e) {
+                log.warn("Failed to poll OpenAI batch {}: {}", batch.getOpenaiBatchId(), e.getMessage());
+            }
+        }
+    }
+
+    private void pollBatch(OpenAiBatch batch) throws Exception {
+        JsonNode remote = batchClient.getBatch(batch.getOpenaiBatchId());
+        String remoteStatus = remote.path("status").asText();
+        batch.setRemoteStatus(remoteStatus);
+
+        if (!TERMINAL_STATUSES.contains(remoteStatus)) {
+            batchRepository.save(batch);
+            return;
+        }
+
+        // Expired and cancelled batches can still carry partial output
+        batch.setOutputFileId(remote.path("output_file_id").asText(null));
+        batch.setErrorFileId(remote.path("error_file_id").asText(null));
+        Map<Long, String> responses = batch.getOutputFileId() != null
+            ? parseOutput(batchClient.downloadFile(batch.getOutputFileId()))
+            : Map.of();
+
+        applyResults(batch, responses, "completed".equals(remoteStatus));
+    }
+
+    /**
+     * Write all parsed results in one transaction; requests without a usable result are re-queued
+     */
+    private void applyResults(OpenAiBatch batch, Map<Long, String> responses, boolean succeeded) {
+        List<BatchScoringRequest> requests = requestRepository.findByBatchIdAndStatus(
+            batch.getId(), BatchScoringRequest.RequestStatus.SUBMITTED);
+
+        List<GradeBatchWriter.AiGrade> grades = new ArrayList<>();
+        List<Long> scoredIds = new ArrayList<>();
+        List<Long> failedIds = new ArrayList<>();
+        List<Long> needsReviewIds = new ArrayList<>();
+        int requeued = 0;
+
+        for (BatchScoringRequest request : requests) {
+            String content = responses.get(request.getSubmissionId());
+            ScoringService.ScoringResult result = null;
+            String error = "No result in batch " + batch.getOpenaiBatchId();
+            if (content != null) {
+                try {
+                    result = scoringService.parseResponse(readMessages(request.getPrompt()), content);
+                } catch (ScoringResponseException e) {
+                    error = e.getMessage();
+                }
+            }
+
+            if (result != null) {
+                Grade.GradeStatus status = scoringService.statusFor(result.confidence());
+                grades.add(new GradeBatchWriter.AiGrade(request.getSubmissionId(), result.score(),
+                        result.confidence(), result.feedbackJsonText(), status));
+                scoredIds.add(request.getSubmissionId());
+                if (status == Grade.GradeStatus.NEEDS_REVIEW) {
+                    needsReviewIds.add(request.getSubmissionId());
+                }
+                request.setStatus(BatchScoringRequest.RequestStatus.COMPLETED);
+            } else if (request.getAttempts() < maxAttempts) {
+                request.setStatus(BatchScoringRequest.RequestStatus.QUEUED);
+                request.setLastError(error);
+                requeued++;
+            } else {
+                request.setStatus(BatchScoringRequest.RequestStatus.FAILED);
+                request.setLastError("No usable result after " + request.getAttempts() + " batches");
+                failedIds.add(request.getSubmissionId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            gradeBatchWriter.upsertAiGrades(grades);
+            if (!scoredIds.isEmpty()) {
+                submissionRepository.updateStatus(scoredIds, Submission.SubmissionStatus.SCORED);
+            }
+            if (!failedIds.isEmpty()) {
+                submissionRepository.updateStatus(failedIds, Submission.SubmissionStatus.FAILED);
+            }
+            List<Long> finished = new ArrayList<>(scoredIds);
+            finished.addAll(failedIds);
+            submissionQueueService.completeDeferred(finished);
+
+            requestRepository.saveAll(requests);
+            batch.setStatus(succeeded ? OpenAiBatch.BatchStatus.APPLIED : OpenAiBatch.BatchStatus.FAILED);
+            batch.setCompletedAt(LocalDateTime.now());
+            batchRepository.save(batch);
+        });
+
+        // Notify teachers after the grades are committed
+        submissionRepository.findWithParticipantsByIdIn(needsReviewIds).forEach(notificationService::notifyTeacherReviewNeeded);
+
+        auditLogService.log(
+            null, // System operation
+            "AI_SCORE_BATCH",
+            "OPENAI_BATCH",
+            batch.getId(),
+            Map.of(
+                "openaiBatchId", batch.getOpenaiBatchId(),
+                "scored", scoredIds.size(),
+                "requeued", requeued,
+                "failed", failedIds.size()
+            )
+        );
+        log.info("✅ OpenAI batch {} applied: {} scored, {} re-queued, {} failed",
+                batch.getOpenaiBatchId(), scoredIds.size(), requeued, failedIds.size());
+    }
+
+    /**
+     * One /v1/chat/completions request per line, same parameters as real-time scoring
+     */
+    private byte[] buildJsonl(List<BatchScoringRequest> requests) throws Exception {
+        StringBuilder jsonl = new StringBuilder();
+        for (BatchScoringRequest request : requests) {
+            Map<String, Object> body = openAiService.buildRequest(
+                readMessages(request.getPrompt()), responseParser.responseFormat());
+            Map<String, Object> line = Map.of(
+                "custom_id", CUSTOM_ID_PREFIX + request.getSubmissionId(),
+                "method", "POST",
+                "url", "/v1/chat/completions",
+                "body", body
+            );
+            jsonl.append(objectMapper.writeValueAsString(line)).append('\n');
+        }
+        return jsonl.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String writeMessages(List<OpenAiService.Message> messages) {
+        try {
+            return objectMapper.writeValueAsString(messages);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to serialize scoring prompt", e);
+        }
+    }
+
+    /**
+     * Stored scoring messages; rows queued before prompts were split hold a single user prompt
+     */
+    private List<OpenAiService.Message> readMessages(String prompt) {
+        if (!prompt.startsWith("[")) {
+            return List.of(OpenAiService.Message.user(prompt));
+        }
+        try {
+            return List.of(objectMapper.readValue(prompt, OpenAiService.Message[].class));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read scoring prompt", e);
+        }
+    }
+
+    /**
+     * Successful responses of an output file by submission id
+     */
+    private Map<Long, String> parseOutput(String jsonl) {
+        Map<Long, String> responses = new HashMap<>();
+        for (String line : jsonl.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                String customId = node.path("custom_id").asText();
+                JsonNode response = node.path("response");
+                if (!customId.startsWith(CUSTOM_ID_PREFIX) || response.path("status_code").asInt() != 200) {
+                    continue;
+                }
+                String content = response.path("body").path("choices").path(0).path("message").path("content").asText(null);
+                if (content != null) {
+                    responses.put(Long.valueOf(customId.substring(CUSTOM_ID_PREFIX.length())), content);
+                }
+            } catch (Exception e) {
+                log.warn("Skipping malformed batch output line: {}", e.getMessage());
+            }
+        }
+        return responses;
+    }
+}
@@ -4,9 +4,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.*;
 
 /**
@@ -23,17 +26,35 @@ public class OpenAIVisionAdapter implements VisionAdapter {
     private final String visionModel;
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final DependencyLimiter dependencyLimiter;
+    private final CircuitBreakers circuitBreakers;
+    private final ImagePreprocessor imagePreprocessor;
+    private final String baseUrl;
     
     public OpenAIVisionAdapter(
         @Value("${openai.api-key:}") String apiKey,
+        @Value("${openai.base-url:https://api.openai.com/v1}") String baseUrl,
         @Value("${openai.vision.enabled:true}") boolean visionEnabled,
-        @Value("${openai.vision.model:gpt-4o-mini}") String visionModel
+        @Value("${openai.vision.model:gpt-4o-mini}") String visionModel,
+        @Value("${openai.vision.timeout-seconds:60}") int timeoutSeconds,
+        HttpClient openAiHttpClient,
+        DependencyLimiter dependencyLimiter,
+        CircuitBreakers circuitBreakers,
+        ImagePreprocessor imagePreprocessor
     ) {
         this.apiKey = apiKey;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
         this.visionEnabled = visionEnabled;
         this.visionModel = visionModel;
-        this.restTemplate = new RestTemplate();
+        
+        // Shared HTTP/2 client; the per-call timeout keeps a slow Vision endpoint from holding OCR workers
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(openAiHttpClient);
+        requestFactory.setReadTimeout(Duration.ofSeconds(timeoutSeconds));
+        this.restTemplate = new RestTemplate(requestFactory);
         this.objectMapper = new ObjectMapper();
+        this.dependencyLimiter = dependencyLimiter;
+        this.circuitBreakers = circuitBreakers;
+        this.imagePreprocessor = imagePreprocessor;
         
         // Check configuration at startup (enabled by default, prioritize real API)
         if (!visionEnabled) {
@@ -57,15 +78,27 @@ public class OpenAIVisionAdapter implements VisionAdapter {
     
     @Override
     public ImageAnalysisResult analyzeImage(byte[] imageBytes) {
-        log.info("🔍 Analyzing image using Vision AI ({} bytes)", imageBytes.length);
+        ImagePreprocessor.PreparedImage prepared;
+        try {
+            prepared = imagePreprocessor.prepare(imageBytes);
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Unreadable image ({}), using mock Vision analysis", e.getMessage());
+            return getMockAnalysisResult();
+        }
+        return analyzeImage(prepared);
+    }
+
+    @Override
+    public ImageAnalysisResult analyzeImage(ImagePreprocessor.PreparedImage prepared) {
+        log.info("🔍 Analyzing image using Vision AI ({} bytes)", prepared.visionImage().length);
         
         // Prioritize real API
         if (visionEnabled && isValidApiKey(apiKey)) {
             try {
                 log.info("📡 Attempting to use real OpenAI Vision API...");
 
-                // Convert image to Base64
-                String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+                // Size-capped JPEG instead of the full-resolution upload, then Base64
+                String base64Image = Base64.getEncoder().encodeToString(prepared.visionImage());
 
                 // Build request
                 Map<String, Object> requestBody = new HashMap<>();
@@ -82,7 +115,7 @@ public class OpenAIVisionAdapter implements VisionAdapter {
                             "detect charts (bar/pie/line), and describe handwriting if present. " +
                             "Return response in JSON format with fields: description, extractedText, formulas, containsChart, chartType."));
                 content.add(Map.of("type", "image_url", 
-                    "image_url", Map.of("url", "data:image/jpeg;base64," + base64Image)));
+                    "image_url", Map.of("url", "data:" + prepared.visionMimeType() + ";base64," + base64Image)));
                 
                 message.put("content", content);
                 messages.add(message);
@@ -97,12 +130,13 @@ public class OpenAIVisionAdapter implements VisionAdapter {
                 
                 log.info("📤 Sending request to OpenAI Vision API...");
                 @SuppressWarnings({"rawtypes", "unchecked"})
-                ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://api.openai.com/v1/chat/completions",
-                    HttpMethod.POST,
-                    entity,
-                    Map.class
-                );
+                ResponseEntity<Map> response = dependencyLimiter.call(DependencyLimiter.Dependency.VISION,
+                    () -> circuitBreakers.call(CircuitBreakers.VISION, () -> restTemplate.exchange(
+                        baseUrl + "/chat/completions",
+                        HttpMethod.POST,
+                        entity,
+                        Map.class
+                    )));
 
                 // Parse response
                 @SuppressWarnings("unchecked")
@@ -126,6 +160,9 @@ public class OpenAIVisionAdapter implements VisionAdapter {
                 log.error("❌ Unexpected Vision API response format");
                 log.error("Please contact technical team to check API configuration.");
 
+            } catch (CircuitOpenException e) {
+                // Vision known to be down: let the pipeline re-queue instead of using mock analysis
+                throw e;
             } catch (Exception e) {
                 log.error("❌ Real Vision API call failed: {}", e.getMessage());
                 log.error("Error details: ", e);
@@ -0,0 +1,117 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Minimal OpenAI Files + Batch API client
+ * Base URL is configurable (openai.base-url) so a local stand-in server can replace api.openai.com.
+ * Runs on the shared HTTP/2 client behind the BATCH circuit breaker
+ */
+@Service
+@Slf4j
+public class OpenAiBatchClient {
+
+    private final String apiKey;
+    private final String baseUrl;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final CircuitBreakers circuitBreakers;
+
+    public OpenAiBatchClient(
+        @Value("${openai.api-key:}") String apiKey,
+        @Value("${openai.base-url:https://api.openai.com/v1}") String baseUrl,
+        HttpClient openAiHttpClient,
+        ObjectMapper objectMapper,
+        CircuitBreakers circuitBreakers
+    ) {
+        this.apiKey = apiKey;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.objectMapper = objectMapper;
+        this.circuitBreakers = circuitBreakers;
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(openAiHttpClient);
+        requestFactory.setReadTimeout(Duration.ofSeconds(120));
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Upload a JSONL request file (purpose=batch)
+     * @return File id
+     */
+    public String uploadBatchFile(byte[] jsonl, String fileName) throws Exception {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("purpose", "batch");
+        body.add("file", new ByteArrayResource(jsonl) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        });
+
+        HttpHeaders headers = headers();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+        ResponseEntity<String> response = circuitBreakers.call(CircuitBreakers.BATCH, () -> restTemplate.exchange(
+            baseUrl + "/files", HttpMethod.POST, new HttpEntity<>(body, headers), String.class));
+        return objectMapper.readTree(response.getBody()).path("id").asText();
+    }
+
+    /**
+     * Create a batch of chat completions over an uploaded file
+     * @return Batch object
+     */
+    public JsonNode createBatch(String inputFileId) throws Exception {
+        HttpHeaders headers = headers();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        Map<String, Object> body = Map.of(
+            "input_file_id", inputFileId,
+            "endpoint", "/v1/chat/completions",
+            "completion_window", "24h"
+        );
+
+        ResponseEntity<String> response = circuitBreakers.call(CircuitBreakers.BATCH, () -> restTemplate.exchange(
+            baseUrl + "/batches", HttpMethod.POST, new HttpEntity<>(body, headers), String.class));
+        return objectMapper.readTree(response.getBody());
+    }
+
+    /**
+     * Current state of a batch (status, output_file_id, error_file_id, request_counts)
+     */
+    public JsonNode getBatch(String batchId) throws Exception {
+        ResponseEntity<String> response = circuitBreakers.call(CircuitBreakers.BATCH, () -> restTemplate.exchange(
+            baseUrl + "/batches/" + batchId, HttpMethod.GET, new HttpEntity<>(headers()), String.class));
+        return objectMapper.readTree(response.getBody());
+    }
+
+    /**
+     * Download file content (batch output / error JSONL)
+     */
+    public String downloadFile(String fileId) throws Exception {
+        ResponseEntity<byte[]> response = circuitBreakers.call(CircuitBreakers.BATCH, () -> restTemplate.exchange(
+            baseUrl + "/files/" + fileId + "/content", HttpMethod.GET, new HttpEntity<>(headers()), byte[].class));
+        byte[] content = response.getBody();
+        return content != null ? new String(content, StandardCharsets.UTF_8) : "";
+    }
+
+    private HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(apiKey);
+        return headers;
+    }
+}
@@ -0,0 +1,171 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.config.LlmProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Chat completions over the OpenAI wire format (plain and server-sent-event streaming)
+ * Covers api.openai.com as well as compatible servers (llama.cpp, vLLM, Ollama /v1).
+ * Runs on the shared HTTP/2 client behind its own circuit breaker ("chat:" + name); providers
+ * configured as rate limited also go through the account budget in ChatRateLimiter
+ */
+@Slf4j
+public class OpenAiCompatibleProvider implements ChatProvider {
+
+    private final LlmProperties.Provider config;
+    private final String baseUrl;
+    private final String breaker;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final CircuitBreakers circuitBreakers;
+    private final ChatRateLimiter rateLimiter; // null when not rate limited
+
+    public OpenAiCompatibleProvider(
+        LlmProperties.Provider config,
+        HttpClient httpClient,
+        ObjectMapper objectMapper,
+        CircuitBreakers circuitBreakers,
+        ChatRateLimiter rateLimiter
+    ) {
+        String url = config.getBaseUrl();
+        this.config = config;
+        this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.breaker = CircuitBreakers.chat(config.getName());
+        this.objectMapper = objectMapper;
+        this.circuitBreakers = circuitBreakers;
+        this.rateLimiter = config.isRateLimited() ? rateLimiter : null;
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(config.getTimeout());
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public String name() {
+        return config.getName();
+    }
+
+    @Override
+    public String model() {
+        return config.getModel();
+    }
+
+    @Override
+    public double costPerMillionTokens() {
+        return config.getCostPerMillionTokens();
+    }
+
+    @Override
+    public boolean supportsResponseFormat() {
+        return config.isStructuredOutput();
+    }
+
+    @Override
+    public JsonNode complete(Map<String, Object> body, int estimatedTokens) throws Exception {
+        Map<String, Object> request = request(body);
+        JsonNode result = budgeted(estimatedTokens, () -> circuitBreakers.call(breaker, () ->
+            restTemplate.execute(baseUrl + "/chat/completions", HttpMethod.POST,
+                httpRequest -> {
+                    httpRequest.getHeaders().addAll(headers());
+                    objectMapper.writeValue(httpRequest.getBody(), request);
+                },
+                response -> objectMapper.readTree(response.getBody()))));
+        reconcile(estimatedTokens, result.path("usage"));
+        return result;
+    }
+
+    @Override
+    public void stream(Map<String, Object> body, int estimatedTokens, Consumer<JsonNode> onChunk) throws Exception {
+        Map<String, Object> request = request(body);
+        request.put("stream", true);
+        request.put("stream_options", Map.of("include_usage", true));
+
+        boolean[] emitted = {false};
+        budgeted(estimatedTokens, () -> {
+            try {
+                return circuitBreakers.call(breaker, () ->
+                    restTemplate.execute(baseUrl + "/chat/completions", HttpMethod.POST,
+                        httpRequest -> {
+                            httpRequest.getHeaders().addAll(headers());
+                            httpRequest.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+                            objectMapper.writeValue(httpRequest.getBody(), request);
+                        },
+                        response -> {
+                            try (BufferedReader reader = new BufferedReader(
+                                    new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                                String line;
+                                while ((line = reader.readLine()) != null) {
+                                    if (!line.startsWith("data:")) {
+                                        continue;
+                                    }
+                                    String data = line.substring(5).trim();
+                                    if (data.equals("[DONE]")) {
+                                        break;
+                                    }
+                                    JsonNode chunk = objectMapper.readTree(data);
+                                    reconcile(estimatedTokens, chunk.path("usage"));
+                                    emitted[0] = true;
+                                    onChunk.accept(chunk);
+                                }
+                            }
+                            return null;
+                        }));
+            } catch (RuntimeException e) {
+                // Chunks already went out to listeners: a retry would repeat them
+                if (emitted[0]) {
+                    throw new IllegalStateException("Stream interrupted: " + e.getMessage(), e);
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Copy of the body with this provider's model; response_format dropped when unsupported
+     * (the scoring prompt still spells out the JSON format, and the parser tolerates surrounding text)
+     */
+    private Map<String, Object> request(Map<String, Object> body) {
+        Map<String, Object> request = new HashMap<>(body);
+        request.put("model", config.getModel());
+        if (!config.isStructuredOutput()) {
+            request.remove("response_format");
+        }
+        return request;
+    }
+
+    private <T> T budgeted(int estimatedTokens, Callable<T> call) throws Exception {
+        return rateLimiter != null ? rateLimiter.call(estimatedTokens, call) : call.call();
+    }
+
+    private void reconcile(int estimatedTokens, JsonNode usage) {
+        if (rateLimiter != null && usage.isObject()) {
+            rateLimiter.reconcile(estimatedTokens, usage.path("total_tokens").asInt());
+        }
+    }
+
+    private HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+            headers.setBearerAuth(config.getApiKey());
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+}
@@ -1,100 +1,247 @@
 package com.intelligentmarker.service;
 
-import com.theokanning.openai.completion.chat.ChatCompletionRequest;
-import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.completion.chat.ChatMessageRole;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
- * OpenAI API service wrapper
+ * Chat completion service used by scoring, analytics and learning plans
+ * Builds OpenAI-format requests and sends them through ChatRouter, which picks among the
+ * configured providers (OpenAI, on-box model servers)
  */
 @Service
 @Slf4j
 public class OpenAiService {
     
-    private final com.theokanning.openai.service.OpenAiService openAiClient;
+    public static final double TEMPERATURE = 0.3; // Lower temperature for more consistent scoring
+    public static final int MAX_TOKENS = 2000;
+    
+    private final ChatRouter router;
+    private final boolean configured;
     private final String model;
+    private final MeterRegistry meterRegistry;
     
     public OpenAiService(
         @Value("${openai.api-key:}") String apiKey,
-        @Value("${openai.model:gpt-4o-mini}") String model
+        @Value("${openai.model:gpt-4o-mini}") String model,
+        ChatRouter router,
+        MeterRegistry meterRegistry
     ) {
         // Check API Key (default to attempting real API)
-        com.theokanning.openai.service.OpenAiService client = null;
+        this.configured = ChatRouter.hasRealKey(apiKey);
         
-        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("mock-key") || apiKey.equals("your-openai-key")) {
+        if (!configured) {
             log.error("❌ OpenAI API Key not configured or invalid!");
-            log.error("AI scoring will use mock responses. Configure OPENAI_API_KEY to enable real AI scoring.");
+            log.error("Configure OPENAI_API_KEY to enable OpenAI scoring (and BATCH scoring mode).");
+        } else {
+            log.info("✅ OpenAI service initialized with model: {} and valid API key", model);
+        }
+        if (!router.hasProviders()) {
+            log.error("No chat provider available: AI scoring will fail (app.scoring.mock-when-no-provider enables mock grades for development).");
             log.error("For production use, please contact technical team to configure API key.");
         } else {
-            try {
-                client = new com.theokanning.openai.service.OpenAiService(apiKey, Duration.ofSeconds(60));
-                log.info("✅ OpenAI service initialized with model: {} and valid API key", model);
-                log.info("Real API calls will be prioritized. Mock is fallback only.");
-            } catch (Exception e) {
-                log.error("❌ Failed to initialize OpenAI client: {}", e.getMessage());
-                log.error("Please contact technical team to check API configuration.");
-            }
+            log.info("Real API calls only; failed calls are retried or routed to another provider, never replaced by mock responses.");
         }
         
-        this.openAiClient = client;
+        this.router = router;
         this.model = model;
+        this.meterRegistry = meterRegistry;
     }
     
     /**
-     * Send chat request to OpenAI
+     * Whether any chat provider is configured
+     */
+    public boolean hasProviders() {
+        return router.hasProviders();
+    }
+    
+    /**
+     * Send chat request
      * @param prompt The prompt
-     * @return AI response
+     * @return AI response (mock response only when no provider is configured)
+     * @throws IllegalStateException when every provider still fails after retries
      */
     public String chat(String prompt) {
-        // Prioritize real API
-        if (openAiClient != null) {
-            try {
-                log.info("📡 Sending request to real OpenAI API (model: {})", model);
-                
-                ChatMessage message = new ChatMessage(ChatMessageRole.USER.value(), prompt);
-                
-                ChatCompletionRequest request = ChatCompletionRequest.builder()
-                    .model(model)
-                    .messages(List.of(message))
-                    .temperature(0.3) // Lower temperature for more consistent scoring
-                    .maxTokens(2000)
-                    .build();
-                
-                String response = openAiClient.createChatCompletion(request)
-                    .getChoices()
-                    .get(0)
-                    .getMessage()
-                    .getContent();
-                
-                log.info("✅ Successfully received real OpenAI API response ({} chars)", response.length());
-                
-                return response;
-                
-            } catch (Exception e) {
-                log.error("❌ Real OpenAI API call failed: {}", e.getMessage());
-                log.error("Error details: ", e);
-                log.error("⚠️ Falling back to mock mode. Please contact technical team to resolve API issues.");
-            }
-        } else {
-            log.warn("⚠️ OpenAI client not initialized. Using mock response.");
+        return tryChat(prompt).map(Completion::content).orElseGet(() -> {
+            log.info("🔧 Using mock AI response (no chat provider configured)");
+            return getMockResponse();
+        });
+    }
+    
+    /**
+     * Send chat request to a real provider only
+     * @param prompt The prompt
+     * @return AI response, or empty when no provider is configured
+     * @throws IllegalStateException when every provider still fails after retries
+     */
+    public Optional<Completion> tryChat(String prompt) {
+        return tryChat(List.of(Message.user(prompt)), null);
+    }
+    
+    /**
+     * Send a multi-message chat request to a real provider only
+     * @param messages Messages in order (stable content first, see ScoringService)
+     * @param responseFormat response_format object (JSON schema), or null for free text
+     * @return AI response, or empty when no provider is configured
+     * @throws IllegalStateException when every provider still fails after retries
+     */
+    public Optional<Completion> tryChat(List<Message> messages, JsonNode responseFormat) {
+        if (!router.hasProviders()) {
+            log.warn("⚠️ No chat provider configured.");
             log.warn("For production use, please contact technical team to configure API key.");
+            return Optional.empty();
         }
         
-        // Mock as the final fallback
-        log.info("🔧 Using mock AI scoring (fallback mode)");
-        return getMockResponse();
+        try {
+            Map<String, Object> request = buildRequest(messages, responseFormat);
+            ChatRouter.Routed routed = router.complete(request, estimateTokens(messages));
+            JsonNode result = routed.response();
+            String response = result.path("choices").path(0).path("message").path("content").asText();
+            recordUsage(routed.provider(), result.path("usage"));
+            
+            log.info("✅ Received chat response from {} ({} chars)", routed.provider().name(), response.length());
+            
+            return Optional.of(new Completion(response, routed.provider().name(), routed.provider().model()));
+            
+        } catch (CircuitOpenException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("❌ Chat call failed on every provider: {}", e.getMessage());
+            throw new IllegalStateException("Chat completion failed: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Send a streaming chat request to a real provider only
+     * @param messages Messages in order
+     * @param responseFormat response_format object (JSON schema), or null for free text
+     * @param onDelta Receives each content chunk as it arrives (on the calling thread)
+     * @return Full AI response, or empty when no provider is configured
+     * @throws IllegalStateException when every provider still fails after retries
+     */
+    public Optional<Completion> tryChatStream(List<Message> messages, JsonNode responseFormat, Consumer<String> onDelta) {
+        if (!router.hasProviders()) {
+            log.warn("⚠️ No chat provider configured.");
+            return Optional.empty();
+        }
+
+        try {
+            Map<String, Object> request = buildRequest(messages, responseFormat);
+            StringBuilder response = new StringBuilder();
+            JsonNode[] usage = {null};
+            ChatProvider provider = router.stream(request, estimateTokens(messages), chunk -> {
+                if (chunk.path("usage").isObject()) {
+                    usage[0] = chunk.path("usage");
+                }
+                String delta = chunk.path("choices").path(0).path("delta").path("content").asText("");
+                if (!delta.isEmpty()) {
+                    response.append(delta);
+                    onDelta.accept(delta);
+                }
+            });
+            recordUsage(provider, usage[0]);
+
+            log.info("✅ Streamed chat response from {} ({} chars)", provider.name(), response.length());
+            return Optional.of(new Completion(response.toString(), provider.name(), provider.model()));
+
+        } catch (CircuitOpenException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("❌ Streaming chat call failed: {}", e.getMessage());
+            throw new IllegalStateException("Chat completion failed: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Chat completion request body; also used for Batch API request lines
+     */
+    public Map<String, Object> buildRequest(List<Message> messages, JsonNode responseFormat) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("model", model);
+        request.put("messages", messages);
+        request.put("temperature", TEMPERATURE);
+        request.put("max_tokens", MAX_TOKENS);
+        if (responseFormat != null) {
+            request.put("response_format", responseFormat);
+        }
+        return request;
+    }
+    
+    /**
+     * Token usage per request and provider; prompt tokens show how much of the scoring prompt is billed,
+     * cached prompt tokens how much of it the provider served from its prefix cache
+     */
+    private void recordUsage(ChatProvider provider, JsonNode usage) {
+        if (usage == null || !usage.isObject()) {
+            return;
+        }
+        tokens(provider, "prompt").record(usage.path("prompt_tokens").asInt());
+        tokens(provider, "cached_prompt").record(usage.path("prompt_tokens_details").path("cached_tokens").asInt());
+        tokens(provider, "completion").record(usage.path("completion_tokens").asInt());
+    }
+    
+    private DistributionSummary tokens(ChatProvider provider, String type) {
+        return DistributionSummary.builder("openai.chat.tokens")
+            .tag("type", type)
+            .tag("provider", provider.name())
+            .register(meterRegistry);
+    }
+    
+    private static int estimateTokens(List<Message> messages) {
+        int chars = 0;
+        for (Message message : messages) {
+            chars += message.content().length();
+        }
+        return ChatRateLimiter.estimateTokens(chars, MAX_TOKENS);
+    }
+    
+    /**
+     * Whether a real OpenAI API key is configured (required by the Batch API path)
+     */
+    public boolean isConfigured() {
+        return configured;
+    }
+    
+    /**
+     * OpenAI model for chat requests; other providers answer with their own (see Completion)
+     */
+    public String getModel() {
+        return model;
+    }
+    
+    /**
+     * Chat response and the provider/model that produced it
+     */
+    public record Completion(String content, String provider, String model) {
+    }
+    
+    /**
+     * One chat message
+     */
+    public record Message(String role, String content) {
+
+        public static Message system(String content) {
+            return new Message("system", content);
+        }
+
+        public static Message user(String content) {
+            return new Message("user", content);
+        }
     }
     
     /**
      * Mock response (for testing or when OpenAI API is unavailable)
      */
-    private String getMockResponse() {
+    public String getMockResponse() {
         return """
             ```json
             {
@@ -0,0 +1,153 @@
+package com.intelligentmarker.service;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSClientBuilder;
+import com.intelligentmarker.config.OssProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+
+/**
+ * Aliyun OSS object store (app.storage.backend=oss)
+ * All calls go through the OSS dependency limit; reads of whole objects are held on the heap
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "oss", matchIfMissing = true)
+public class OssObjectStore implements ObjectStore {
+
+    private final OssProperties ossProperties;
+    private final DependencyLimiter dependencyLimiter;
+    private OSS ossClient;
+
+    @PostConstruct
+    public void init() {
+        try {
+            // Try to initialize OSS client
+            this.ossClient = new OSSClientBuilder().build(
+                ossProperties.getEndpoint(),
+                ossProperties.getAccessKeyId(),
+                ossProperties.getAccessKeySecret()
+            );
+            log.info("Aliyun OSS client initialized");
+        } catch (Exception e) {
+            log.warn("Aliyun OSS not configured, will use local storage mode");
+            this.ossClient = null;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (ossClient != null) {
+            ossClient.shutdown();
+        }
+    }
+
+    public boolean isAvailable() {
+        return ossClient != null;
+    }
+
+    @Override
+    public String put(String key, InputStream content) throws IOException {
+        limited(() -> client().putObject(ossProperties.getBucketName(), key, content));
+        return "https://" + ossProperties.getBucketName() + "." + ossProperties.getEndpoint() + "/" + key;
+    }
+
+    @Override
+    public boolean owns(String url) {
+        return !url.startsWith(LocalObjectStore.SCHEME);
+    }
+
+    /**
+     * Only opening the object counts against the OSS limit, not the time the caller spends reading
+     */
+    @Override
+    public InputStream open(String url) throws IOException {
+        String objectKey = extractObjectKey(url);
+        return limited(() -> client().getObject(ossProperties.getBucketName(), objectKey).getObjectContent());
+    }
+
+    @Override
+    public ByteBuffer read(String url) throws IOException {
+        String objectKey = extractObjectKey(url);
+        byte[] content = limited(() -> {
+            try (InputStream inputStream = client().getObject(ossProperties.getBucketName(), objectKey).getObjectContent()) {
+                return inputStream.readAllBytes();
+            }
+        });
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * Stream the object into a temp file that is deleted on close
+     */
+    @Override
+    public DownloadedFile toLocalFile(String url) throws IOException {
+        String objectKey = extractObjectKey(url);
+        Path tempFile = Files.createTempFile("oss-", "-" + Path.of(objectKey).getFileName());
+        try {
+            limited(() -> {
+                try (InputStream inputStream = client().getObject(ossProperties.getBucketName(), objectKey).getObjectContent()) {
+                    return Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new DownloadedFile(tempFile, true);
+    }
+
+    @Override
+    public long size(String url) throws IOException {
+        String objectKey = extractObjectKey(url);
+        return limited(() -> client().getObjectMetadata(ossProperties.getBucketName(), objectKey).getContentLength());
+    }
+
+    @Override
+    public void delete(String url) throws IOException {
+        String objectKey = extractObjectKey(url);
+        limited(() -> {
+            client().deleteObject(ossProperties.getBucketName(), objectKey);
+            return null;
+        });
+    }
+
+    private OSS client() {
+        if (ossClient == null) {
+            throw new IllegalStateException("OSS not configured");
+        }
+        return ossClient;
+    }
+
+    private <T> T limited(Callable<T> call) throws IOException {
+        try {
+            return dependencyLimiter.call(DependencyLimiter.Dependency.OSS, call);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Extract OSS object key from complete URL
+     */
+    private String extractObjectKey(String url) {
+        // Extract folder/file.pdf from https://bucket.endpoint.com/folder/file.pdf
+        String[] parts = url.split(ossProperties.getEndpoint() + "/");
+        return parts.length > 1 ? parts[1] : url;
+    }
+}
@@ -0,0 +1,44 @@
+package com.intelligentmarker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Rendered rubric section of the scoring prompt, per assignment
+ * Invalidated by RubricChangeListener when a rubric is saved or deleted on this node; the TTL bounds
+ * how long another node's rubric edits can go unseen
+ */
+@Component
+@Slf4j
+public class RubricPromptCache {
+
+    private final Cache<Long, String> sections;
+
+    public RubricPromptCache(
+        @Value("${app.scoring.rubric-cache.max-size:1000}") long maxSize,
+        @Value("${app.scoring.rubric-cache.ttl:10m}") Duration ttl
+    ) {
+        this.sections = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .build();
+    }
+
+    /**
+     * Cached rubric section of the assignment, rendered by the loader on a miss
+     */
+    public String get(Long assignmentId, Function<Long, String> loader) {
+        return sections.get(assignmentId, loader);
+    }
+
+    public void invalidate(Long assignmentId) {
+        sections.invalidate(assignmentId);
+        log.debug("Rubric prompt section of assignment {} invalidated", assignmentId);
+    }
+}
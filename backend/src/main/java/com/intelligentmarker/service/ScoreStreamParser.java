@@ -0,0 +1,64 @@
+package com.intelligentmarker.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental extractor for totalScore/confidence in a streamed scoring response
+ * Only the unscanned tail (plus a small overlap) is searched on each delta; a number counts as
+ * complete once a delimiter follows it, so "7" of "72.5" is never reported. Values ScoringResponseParser
+ * would reject are never reported either
+ */
+public class ScoreStreamParser {
+
+    private static final Pattern TOTAL_SCORE = Pattern.compile("\"totalScore\"\\s*:\\s*(-?\\d+(?:\\.\\d+)?)\\s*[,}\\n]");
+    private static final Pattern CONFIDENCE = Pattern.compile("\"confidence\"\\s*:\\s*(\\d+(?:\\.\\d+)?)\\s*[,}\\n]");
+    private static final int OVERLAP = 64; // Longer than any key/value pair split across deltas
+
+    private final StringBuilder buffer = new StringBuilder();
+    private BigDecimal totalScore;
+    private BigDecimal confidence;
+    private boolean reported;
+
+    /**
+     * Add a streamed chunk
+     * @return Score and confidence, at most once: on the first chunk after which both are known, if in range
+     */
+    public Optional<EarlyScore> feed(String delta) {
+        if (reported || delta == null || delta.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int from = Math.max(0, buffer.length() - OVERLAP);
+        buffer.append(delta);
+
+        if (totalScore == null) {
+            totalScore = find(TOTAL_SCORE, from);
+        }
+        if (confidence == null) {
+            confidence = find(CONFIDENCE, from);
+        }
+
+        if (totalScore != null && confidence != null) {
+            reported = true;
+            return ScoringResponseParser.inRange(totalScore, confidence)
+                ? Optional.of(new EarlyScore(totalScore, confidence))
+                : Optional.empty();
+        }
+        return Optional.empty();
+    }
+
+    private BigDecimal find(Pattern pattern, int from) {
+        Matcher matcher = pattern.matcher(buffer);
+        if (matcher.find(from)) {
+            return new BigDecimal(matcher.group(1)).setScale(2, RoundingMode.HALF_UP);
+        }
+        return null;
+    }
+
+    public record EarlyScore(BigDecimal score, BigDecimal confidence) {
+    }
+}
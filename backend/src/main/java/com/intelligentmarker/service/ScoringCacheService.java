@@ -0,0 +1,160 @@
+package com.intelligentmarker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.intelligentmarker.model.ScoringCacheEntry;
+import com.intelligentmarker.repository.ScoringCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Content-addressed cache of AI scoring responses
+ * Two tiers: a bounded in-memory Caffeine cache (size + TTL eviction) in front of the scoring_cache table.
+ * The TTL applies to both tiers: database rows older than it are ignored on reads and purged on a schedule.
+ * Hits and misses are counted in scoring.cache.requests (tag result = memory_hit, db_hit, miss)
+ */
+@Service
+@Slf4j
+public class ScoringCacheService {
+
+    private final ScoringCacheRepository repository;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Cache<String, String> memory;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public ScoringCacheService(
+        ScoringCacheRepository repository,
+        MeterRegistry meterRegistry,
+        @Value("${app.scoring-cache.enabled:true}") boolean enabled,
+        @Value("${app.scoring-cache.max-size:10000}") long maxSize,
+        @Value("${app.scoring-cache.ttl:24h}") Duration ttl
+    ) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.memory = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "scoring");
+
+        this.memoryHits = meterRegistry.counter("scoring.cache.requests", "result", "memory_hit");
+        this.databaseHits = meterRegistry.counter("scoring.cache.requests", "result", "db_hit");
+        this.misses = meterRegistry.counter("scoring.cache.requests", "result", "miss");
+    }
+
+    /**
+     * Cache key: SHA-256 over model, temperature and every message (role + content)
+     */
+    public static String key(String model, double temperature, List<OpenAiService.Message> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Double.toString(temperature).getBytes(StandardCharsets.UTF_8));
+            for (OpenAiService.Message message : messages) {
+                digest.update((byte) 0);
+                digest.update(message.role().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(message.content().getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Look up a cached response, memory first, then Postgres (a fresh database hit is promoted to memory)
+     */
+    public Optional<String> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        String response = memory.getIfPresent(key);
+        if (response != null) {
+            memoryHits.increment();
+            return Optional.of(response);
+        }
+
+        try {
+            Optional<String> stored = repository.findById(key)
+                .filter(entry -> !isExpired(entry))
+                .map(ScoringCacheEntry::getResponse);
+            if (stored.isPresent()) {
+                databaseHits.increment();
+                memory.put(key, stored.get());
+                return stored;
+            }
+        } catch (Exception e) {
+            log.warn("Scoring cache lookup failed for {}: {}", key, e.getMessage());
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Store a response in both tiers; failures are logged, never propagated to scoring
+     */
+    public void put(String key, String model, String response) {
+        if (!enabled) {
+            return;
+        }
+
+        memory.put(key, response);
+        try {
+            Optional<ScoringCacheEntry> existing = repository.findById(key);
+            if (existing.isEmpty()) {
+                repository.save(new ScoringCacheEntry(key, model, response, null));
+            } else if (isExpired(existing.get())) {
+                // Not purged yet: refresh the row in place
+                ScoringCacheEntry entry = existing.get();
+                entry.setModel(model);
+                entry.setResponse(response);
+                entry.setCreatedAt(LocalDateTime.now());
+                repository.save(entry);
+            }
+        } catch (Exception e) {
+            // Another worker stored the same key concurrently
+            log.debug("Scoring cache entry {} not persisted: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Scheduled task: delete database entries older than the TTL
+     */
+    @Scheduled(fixedDelayString = "${app.scoring-cache.purge-interval-ms:3600000}",
+               initialDelayString = "${app.scoring-cache.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = repository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        if (purged > 0) {
+            log.info("Purged {} expired scoring cache entries", purged);
+        }
+    }
+
+    private boolean isExpired(ScoringCacheEntry entry) {
+        return entry.getCreatedAt() != null && entry.getCreatedAt().isBefore(LocalDateTime.now().minus(ttl));
+    }
+}
@@ -0,0 +1,19 @@
+package com.intelligentmarker.service;
+
+/**
+ * AI scoring response that cannot be turned into a grade (not JSON, or missing/invalid score fields)
+ * Thrown instead of inventing a score. The response is not cached, so the scoring stage is retried through
+ * the submission queue (app.submission-queue.max-attempts) before the submission is marked FAILED
+ */
+public class ScoringResponseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScoringResponseException(String message) {
+        super(message);
+    }
+
+    public ScoringResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,222 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Structured scoring responses: the JSON schema requested from OpenAI and a streaming parser for it
+ * Only totalScore, confidence and breakdown scores are read; feedback is skipped token by token
+ * and the JSON object itself is kept as raw bytes for Grade.aiFeedback
+ */
+@Component
+public class ScoringResponseParser {
+
+    /**
+     * response_format for chat completions (strict mode: every field required, no extra fields)
+     * totalScore and confidence come first so they are streamed before the feedback
+     */
+    private static final String RESPONSE_FORMAT = """
+        {
+          "type": "json_schema",
+          "json_schema": {
+            "name": "scoring_result",
+            "strict": true,
+            "schema": {
+              "type": "object",
+              "properties": {
+                "totalScore": { "type": "number" },
+                "confidence": { "type": "number" },
+                "breakdown": {
+                  "type": "array",
+                  "items": {
+                    "type": "object",
+                    "properties": {
+                      "questionId": { "type": "string" },
+                      "score": { "type": "number" },
+                      "maxScore": { "type": "number" },
+                      "keyPointsFound": { "type": "array", "items": { "type": "string" } },
+                      "keyPointsMissing": { "type": "array", "items": { "type": "string" } }
+                    },
+                    "required": ["questionId", "score", "maxScore", "keyPointsFound", "keyPointsMissing"],
+                    "additionalProperties": false
+                  }
+                },
+                "feedback": {
+                  "type": "object",
+                  "properties": {
+                    "strengths": { "type": "array", "items": { "type": "string" } },
+                    "weaknesses": { "type": "array", "items": { "type": "string" } },
+                    "suggestions": {
+                      "type": "array",
+                      "items": {
+                        "type": "object",
+                        "properties": {
+                          "issue": { "type": "string" },
+                          "suggestion": { "type": "string" },
+                          "why": { "type": "string" },
+                          "howToImprove": { "type": "string" }
+                        },
+                        "required": ["issue", "suggestion", "why", "howToImprove"],
+                        "additionalProperties": false
+                      }
+                    }
+                  },
+                  "required": ["strengths", "weaknesses", "suggestions"],
+                  "additionalProperties": false
+                },
+                "confidenceReason": { "type": "string" }
+              },
+              "required": ["totalScore", "confidence", "breakdown", "feedback", "confidenceReason"],
+              "additionalProperties": false
+            }
+          }
+        }
+        """;
+
+    private final JsonFactory jsonFactory;
+    private final JsonNode responseFormat;
+
+    public ScoringResponseParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        try {
+            this.responseFormat = objectMapper.readTree(RESPONSE_FORMAT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid scoring response schema", e);
+        }
+    }
+
+    /**
+     * response_format object to send with scoring requests
+     */
+    public JsonNode responseFormat() {
+        return responseFormat;
+    }
+
+    /**
+     * Parse a scoring response; text around the JSON object (markdown fences from older or
+     * mock responses) is ignored
+     * @throws ScoringResponseException when there is no valid score in the response
+     */
+    public ScoringService.ScoringResult parse(String aiResponse) {
+        if (aiResponse == null) {
+            throw new ScoringResponseException("Empty AI response");
+        }
+        byte[] bytes = aiResponse.getBytes(StandardCharsets.UTF_8);
+        int start = indexOf(bytes, (byte) '{');
+        int end = lastIndexOf(bytes, (byte) '}');
+        if (start < 0 || end < start) {
+            throw new ScoringResponseException("No JSON object in AI response");
+        }
+
+        BigDecimal totalScore = null;
+        BigDecimal confidence = null;
+        List<ScoringService.QuestionScore> breakdown = List.of();
+
+        try (JsonParser parser = jsonFactory.createParser(bytes, start, end - start + 1)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ScoringResponseException("AI response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "totalScore" -> totalScore = readDecimal(parser, field);
+                    case "confidence" -> confidence = readDecimal(parser, field);
+                    case "breakdown" -> breakdown = readBreakdown(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new ScoringResponseException("Malformed AI response JSON: " + e.getMessage(), e);
+        }
+
+        if (totalScore == null || confidence == null) {
+            throw new ScoringResponseException("AI response is missing totalScore or confidence");
+        }
+        if (!inRange(totalScore, confidence)) {
+            throw new ScoringResponseException(
+                "AI response out of range: totalScore=" + totalScore + ", confidence=" + confidence);
+        }
+
+        return new ScoringService.ScoringResult(
+            totalScore.setScale(2, RoundingMode.HALF_UP),
+            confidence.setScale(2, RoundingMode.HALF_UP),
+            breakdown,
+            Arrays.copyOfRange(bytes, start, end + 1)
+        );
+    }
+
+    /**
+     * Whether a score and confidence are acceptable (shared with ScoreStreamParser)
+     */
+    static boolean inRange(BigDecimal totalScore, BigDecimal confidence) {
+        return totalScore.signum() >= 0 && confidence.signum() >= 0 && confidence.compareTo(BigDecimal.ONE) <= 0;
+    }
+
+    private List<ScoringService.QuestionScore> readBreakdown(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+        List<ScoringService.QuestionScore> breakdown = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String questionId = null;
+            BigDecimal score = null;
+            BigDecimal maxScore = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "questionId" -> questionId = parser.getValueAsString();
+                    case "score" -> score = readDecimal(parser, field);
+                    case "maxScore" -> maxScore = readDecimal(parser, field);
+                    default -> parser.skipChildren();
+                }
+            }
+            breakdown.add(new ScoringService.QuestionScore(questionId, score, maxScore));
+        }
+        return breakdown;
+    }
+
+    private static BigDecimal readDecimal(JsonParser parser, String field) throws IOException {
+        if (!parser.currentToken().isNumeric()) {
+            throw new ScoringResponseException("AI response field " + field + " is not a number");
+        }
+        return parser.getDecimalValue();
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte value) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
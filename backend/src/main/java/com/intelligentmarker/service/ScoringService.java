@@ -1,26 +1,25 @@
 package com.intelligentmarker.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intelligentmarker.model.*;
 import com.intelligentmarker.repository.GradeRepository;
 import com.intelligentmarker.repository.RubricRepository;
-import com.intelligentmarker.service.OpenAiService;
+import com.intelligentmarker.repository.SubmissionTextRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * AI scoring service
- * Uses OpenAI API for intelligent scoring
+ * Uses OpenAI API for intelligent scoring; the OpenAI call runs outside any transaction and only
+ * the resulting Grade is written in a short one
  */
 @Service
 @Slf4j
@@ -28,19 +27,137 @@ import java.util.Map;
 public class ScoringService {
     
     private final GradeRepository gradeRepository;
+    private final SubmissionTextRepository submissionTextRepository;
     private final RubricRepository rubricRepository;
     private final OpenAiService openAiService;
     private final AuditLogService auditLogService;
     private final NotificationService notificationService;
-    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ScoringCacheService scoringCache;
+    private final ScoringStreamBroadcaster streamBroadcaster;
+    private final RubricPromptCache rubricPromptCache;
+    private final ScoringResponseParser responseParser;
+    
+    /**
+     * Static grading instructions and response format, identical for every request
+     * Sent first as the system message so it forms the shared prefix providers cache
+     */
+    static final String SYSTEM_PROMPT = """
+        You are a professional teaching assessment assistant. Grade the student's answer according to \
+        the assignment information and grading criteria provided in the next message.
+
+        ## Grading Requirements
+        1. Grade each question according to the grading criteria
+        2. Identify key points found in the student's answer
+        3. Provide a total score (between 0 and the assignment's Total Marks) and confidence level (0.0-1.0)
+        4. **Provide COMPREHENSIVE and DETAILED feedback**: You MUST provide in-depth analysis of strengths, weaknesses, and improvement suggestions
+
+        ## Detailed Feedback Guidelines
+        **IMPORTANT**: Your feedback must be thorough, specific, and actionable. Follow these guidelines:
+
+        ### Strengths Analysis (Minimum 3-5 detailed points)
+        - Identify SPECIFIC aspects where the student performed well
+        - Quote or reference exact parts of the answer that demonstrate excellence
+        - Explain WHY each strength is important and how it contributes to the overall quality
+        - Cover multiple dimensions: content accuracy, logical reasoning, expression quality, creativity, technical skills, etc.
+        - Example: Instead of "Good code structure", write "Well-organized code with clear separation of concerns: the data validation logic is properly isolated in a separate validator class, making the code more maintainable and testable"
+
+        ### Weaknesses Analysis (Minimum 3-5 detailed points)
+        - Identify SPECIFIC problems or gaps in the student's answer
+        - Explain the IMPACT of each weakness on the overall quality
+        - Provide CONTEXT about why this matters (e.g., industry standards, best practices, common pitfalls)
+        - Prioritize weaknesses by severity (critical issues first)
+        - Example: Instead of "Missing error handling", write "Critical absence of error handling for network requests: the code lacks try-catch blocks for API calls, which could cause the application to crash when the server is unavailable. This violates the principle of defensive programming and creates poor user experience"
+
+        ### Improvement Suggestions (Minimum 3-5 detailed action items)
+        For EACH suggestion, you MUST provide ALL four components:
+        - **issue**: Clearly describe the specific problem (be precise and reference the code/answer)
+        - **suggestion**: Provide a concrete, actionable recommendation for improvement
+        - **why**: Explain the educational value and importance of this improvement (connect to learning objectives, industry practices, or theoretical concepts)
+        - **howToImprove**: Give step-by-step guidance or code examples showing exactly how to implement the improvement
+
+        ### Quality Standards for Feedback
+        ✓ Each strength/weakness should be 2-4 sentences minimum
+        ✓ Use specific examples from the student's work
+        ✓ Avoid generic statements like "good job" or "needs improvement"
+        ✓ Connect feedback to learning objectives and real-world applications
+        ✓ Be constructive and encouraging while remaining honest about areas needing improvement
+        ✓ Suggestions should include concrete examples, code snippets, or reference materials when applicable
+
+        Please return the grading results in the following JSON format:
+        ```json
+        {
+          "totalScore": <0-Total Marks>,
+          "confidence": <0.0-1.0>,
+          "breakdown": [
+            {
+              "questionId": "Q1",
+              "score": <actual score>,
+              "maxScore": <maximum score>,
+              "keyPointsFound": ["Found point 1", "Found point 2"],
+              "keyPointsMissing": ["Missing point 1"]
+            }
+          ],
+          "feedback": {
+            "strengths": [
+              "Detailed strength 1: Comprehensive explanation with specific examples from the student's work, explaining why this is a strength and how it demonstrates mastery of the concept.",
+              "Detailed strength 2: Another thorough analysis with specific references...",
+              "(Provide 3-5 detailed strengths, each being 2-4 sentences)"
+            ],
+            "weaknesses": [
+              "Detailed weakness 1: Specific problem identified in the student's work, explaining the impact and why it matters, with reference to standards or best practices.",
+              "Detailed weakness 2: Another comprehensive analysis of a gap or issue...",
+              "(Provide 3-5 detailed weaknesses, each being 2-4 sentences)"
+            ],
+            "suggestions": [
+              {
+                "issue": "Precise description of the specific problem found in the answer, with reference to exact location or content",
+                "suggestion": "Clear, actionable recommendation for how to address this issue",
+                "why": "Comprehensive explanation of why this improvement matters: connect to learning objectives, industry practices, theoretical concepts, or real-world applications. Should be 2-3 sentences.",
+                "howToImprove": "Step-by-step guidance with concrete examples: include code snippets, pseudocode, reference materials, or specific techniques the student should learn. Should be detailed enough to actually help the student improve."
+              },
+              "(Provide 3-5 detailed suggestions with ALL four components for each)"
+            ]
+          },
+          "confidenceReason": "Confidence explanation"
+        }
+        ```
+        """;
+
+    /**
+     * General grading dimensions for assignments without a rubric
+     */
+    private static final String DEFAULT_CRITERIA = """
+        ## Grading Criteria (General Standards)
+        Since no specific grading criteria have been set, please grade according to the following general dimensions:
+
+        1. **Content Completeness** (40 points)
+           - Whether the assignment requirements have been fully addressed
+           - Whether key knowledge points are covered
+
+        2. **Accuracy** (30 points)
+           - Whether concepts are correctly understood
+           - Whether logical reasoning is reasonable
+
+        3. **Expression Quality** (20 points)
+           - Whether language expression is clear
+           - Whether the structure is reasonable
+
+        4. **Innovation** (10 points)
+           - Whether there are unique insights
+           - Depth of thinking
+
+        """;
     
     @Value("${app.scoring.confidence-threshold:0.85}")
     private double confidenceThreshold;
     
-    /**
-     * Perform AI scoring on submitted assignment
-     */
-    @Transactional
+    @Value("${app.scoring.streaming:true}")
+    private boolean streaming;
+    
+    @Value("${app.scoring.mock-when-no-provider:false}")
+    private boolean mockWhenNoProvider; // Development only: grade with a canned response when no provider is configured
+    
     /**
      * Scoring (without Vision analysis)
      */
@@ -60,38 +177,18 @@ public class ScoringService {
         }
         
         try {
-            // 1. Get grading criteria (use default if not available)
-            List<Rubric> rubrics = rubricRepository.findByAssignment(submission.getAssignment());
-
-            // 2. Call OpenAI for scoring (supports scoring without rubric, includes Vision analysis)
+            // 1-2. Call OpenAI for scoring (cached grading criteria, default if no rubric; includes Vision analysis)
+            //    The score is pushed to /stream subscribers as soon as it appears in the response
             ScoringResult result = performAIScoring(
-                submission.getAnonymizedText(),
-                rubrics,
+                anonymizedText(submission),
                 submission.getAssignment(),
-                visionAnalysis  // Pass Vision analysis result
+                visionAnalysis,  // Pass Vision analysis result
+                streamListener(submission)
             );
 
-            // 3. Create Grade record
-            Grade grade = new Grade();
-            grade.setSubmission(submission);
-            grade.setAiScore(result.getScore());
-            grade.setAiConfidence(result.getConfidence());
-            grade.setAiFeedback(result.getFeedbackJson());
-            
-            // 4. Set status based on confidence level
-            if (result.getConfidence().doubleValue() >= confidenceThreshold) {
-                grade.setStatus(Grade.GradeStatus.HIGH_CONFIDENCE);
-                log.info("High confidence score: {} ({})", result.getScore(), result.getConfidence());
-            } else {
-                grade.setStatus(Grade.GradeStatus.NEEDS_REVIEW);
-                log.info("Low confidence, requires teacher review: {} ({})", 
-                        result.getScore(), result.getConfidence());
-                
-                // Notify teacher that review is needed
-                notificationService.notifyTeacherReviewNeeded(submission);
-            }
-
-            grade = gradeRepository.save(grade);
+            // 3-4. Save Grade in one short transaction
+            //      (the 'done' stream event follows once the submission is SCORED, see SubmissionService)
+            Grade grade = transactionTemplate.execute(status -> saveGrade(submission, result));
 
             // 5. Record audit log
             auditLogService.log(
@@ -101,224 +198,300 @@ public class ScoringService {
                 grade.getId(),
                 Map.of(
                     "submissionId", submission.getId(),
-                    "aiScore", result.getScore(),
-                    "confidence", result.getConfidence(),
+                    "aiScore", result.score(),
+                    "confidence", result.confidence(),
                     "status", grade.getStatus(),
                     "hasVisionAnalysis", visionAnalysis != null
                 )
             );
             
             log.info("AI scoring completed for submission {}: score={}, confidence={}", 
-                    submission.getId(), result.getScore(), result.getConfidence());
+                    submission.getId(), result.score(), result.confidence());
             
             return grade;
             
+        } catch (CircuitOpenException e) {
+            // OpenAI unavailable: the job is re-queued, subscribers keep waiting
+            throw e;
         } catch (Exception e) {
             log.error("AI scoring failed for submission {}", submission.getId(), e);
-            throw new RuntimeException("Scoring failed: " + e.getMessage());
+            streamBroadcaster.complete(submission.getId(), "error", Map.of("error", String.valueOf(e.getMessage())));
+            throw new RuntimeException("Scoring failed: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Streams scoring progress of one submission to SSE subscribers: feedback chunks and the early score
+     * The Grade is only written once the whole response has parsed, so a stream that fails or is cut off
+     * never leaves a grade without feedback behind
+     */
+    private ScoreStreamListener streamListener(Submission submission) {
+        return new ScoreStreamListener() {
+            @Override
+            public void onDelta(String text) {
+                streamBroadcaster.publish(submission.getId(), "delta", text);
+            }
+
+            @Override
+            public void onEarlyScore(ScoreStreamParser.EarlyScore score) {
+                log.info("⚡ Early score for submission {}: {} ({})",
+                        submission.getId(), score.score(), score.confidence());
+                streamBroadcaster.publish(submission.getId(), "score", Map.of(
+                    "totalScore", score.score(),
+                    "confidence", score.confidence()
+                ));
+            }
+        };
+    }
+    
+    /**
+     * Create or update the Grade for a submission
+     * A re-run scoring stage (retry, expired lease) updates the Grade of the earlier attempt instead of
+     * inserting a second one; grades a teacher has already acted on are left untouched
+     */
+    private Grade saveGrade(Submission submission, ScoringResult result) {
+        Grade grade = gradeRepository.findBySubmission(submission).orElseGet(Grade::new);
+        Grade.GradeStatus previousStatus = grade.getStatus();
+        if (previousStatus != null
+                && previousStatus != Grade.GradeStatus.HIGH_CONFIDENCE
+                && previousStatus != Grade.GradeStatus.NEEDS_REVIEW) {
+            log.warn("Grade {} is already {}, keeping it", grade.getId(), previousStatus);
+            return grade;
+        }
+
+        grade.setSubmission(submission);
+        grade.setAiScore(result.score());
+        grade.setAiConfidence(result.confidence());
+        grade.setAiFeedback(result.feedbackJsonText());
+
+        // Set status based on confidence level
+        grade.setStatus(statusFor(result.confidence()));
+        if (grade.getStatus() == Grade.GradeStatus.HIGH_CONFIDENCE) {
+            log.info("High confidence score: {} ({})", result.score(), result.confidence());
+        } else {
+            log.info("Low confidence, requires teacher review: {} ({})", 
+                    result.score(), result.confidence());
+            
+            // Notify teacher that review is needed (once per grade)
+            if (previousStatus != Grade.GradeStatus.NEEDS_REVIEW) {
+                notificationService.notifyTeacherReviewNeeded(submission);
+            }
+        }
+
+        return gradeRepository.save(grade);
+    }
+    
     /**
      * Perform AI scoring (call OpenAI)
      */
-    private ScoringResult performAIScoring(String studentAnswer, List<Rubric> rubrics, Assignment assignment, String visionAnalysis) {
+    private ScoringResult performAIScoring(String studentAnswer, Assignment assignment,
+                                           String visionAnalysis, ScoreStreamListener listener) {
         // Build prompt (including Vision analysis)
-        String prompt = buildScoringPrompt(studentAnswer, rubrics, assignment, visionAnalysis);
+        List<OpenAiService.Message> prompt = buildScoringPrompt(assignment).render(studentAnswer, visionAnalysis);
+        return scorePrompt(prompt, listener);
+    }
+
+    /**
+     * Feeds streamed chunks to the listener and reports the score once it can be parsed
+     * Listener failures are logged and never abort the stream
+     */
+    private java.util.function.Consumer<String> streamConsumer(ScoreStreamListener listener) {
+        ScoreStreamParser parser = new ScoreStreamParser();
+        return delta -> {
+            try {
+                listener.onDelta(delta);
+                parser.feed(delta).ifPresent(listener::onEarlyScore);
+            } catch (Exception e) {
+                log.warn("Scoring stream listener failed: {}", e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Full scoring messages for one submission
+     */
+    List<OpenAiService.Message> buildPrompt(Submission submission, String visionAnalysis) {
+        return buildScoringPrompt(submission.getAssignment())
+            .render(anonymizedText(submission), visionAnalysis);
+    }
 
-        // Call OpenAI
-        String aiResponse = openAiService.chat(prompt);
+    private String anonymizedText(Submission submission) {
+        return submissionTextRepository.findAnonymizedText(submission.getId()).orElse(null);
+    }
 
-        // Parse AI response
-        return parseAIResponse(aiResponse);
+    /**
+     * Parse a response obtained outside scorePrompt (OpenAI Batch API) and cache it
+     * @throws ScoringResponseException when the response holds no valid score
+     */
+    ScoringResult parseResponse(List<OpenAiService.Message> prompt, String aiResponse) {
+        ScoringResult result = responseParser.parse(aiResponse);
+        String cacheKey = ScoringCacheService.key(openAiService.getModel(), OpenAiService.TEMPERATURE, prompt);
+        scoringCache.put(cacheKey, openAiService.getModel(), aiResponse);
+        return result;
     }
 
     /**
-     * Build OpenAI prompt (including optional Vision analysis)
+     * Score a fully built prompt (cache, then OpenAI)
+     * @throws ScoringResponseException when the response holds no valid score
      */
-    private String buildScoringPrompt(String studentAnswer, List<Rubric> rubrics, Assignment assignment, String visionAnalysis) {
-        StringBuilder prompt = new StringBuilder();
-        
-        prompt.append("You are a professional teaching assessment assistant. Please grade the student's answer according to the following grading criteria.\n\n");
-        
+    ScoringResult scorePrompt(List<OpenAiService.Message> prompt) {
+        return scorePrompt(prompt, null);
+    }
+
+    /**
+     * Score a fully built prompt, streaming the response to the listener when given
+     */
+    ScoringResult scorePrompt(List<OpenAiService.Message> prompt, ScoreStreamListener listener) {
+        // Identical prompt already scored: skip the network call
+        String cacheKey = ScoringCacheService.key(openAiService.getModel(), OpenAiService.TEMPERATURE, prompt);
+        Optional<String> cached = scoringCache.get(cacheKey);
+        if (cached.isPresent()) {
+            log.info("Scoring cache hit {}", cacheKey);
+            return responseParser.parse(cached.get());
+        }
+
+        // Call the chat router (outages throw after retries/failover; no provider throws unless mocking is enabled)
+        Optional<OpenAiService.Completion> liveResponse = listener != null && streaming
+            ? openAiService.tryChatStream(prompt, responseParser.responseFormat(), streamConsumer(listener))
+            : openAiService.tryChat(prompt, responseParser.responseFormat());
+        String aiResponse = liveResponse.map(OpenAiService.Completion::content)
+            .orElseGet(this::mockResponse);
+
+        // Parse AI response (throws rather than guessing a score); only real responses from the
+        // model the cache key names are cached, so a fallback model's grade is not replayed later
+        ScoringResult result = responseParser.parse(aiResponse);
+        if (liveResponse.isPresent() && liveResponse.get().model().equals(openAiService.getModel())) {
+            scoringCache.put(cacheKey, openAiService.getModel(), aiResponse);
+        }
+        return result;
+    }
+
+    /**
+     * Whether scorePrompt can produce a grade: a chat provider is configured, or mocking is enabled
+     */
+    boolean canScore() {
+        return openAiService.hasProviders() || mockWhenNoProvider;
+    }
+
+    /**
+     * Canned response used instead of a provider, only with app.scoring.mock-when-no-provider
+     * @throws IllegalStateException otherwise, so no grade is fabricated (the stage is retried or the job fails)
+     */
+    private String mockResponse() {
+        if (!mockWhenNoProvider) {
+            throw new IllegalStateException("No chat provider configured: AI scoring unavailable");
+        }
+        log.warn("🔧 Using mock scoring response (app.scoring.mock-when-no-provider)");
+        return openAiService.getMockResponse();
+    }
+
+    /**
+     * Build the assignment-level part of the OpenAI prompt (everything but the submission)
+     * The rubric section comes from RubricPromptCache; only the short assignment header is rendered here
+     */
+    ScoringPrompt buildScoringPrompt(Assignment assignment) {
+        String rubricSection = rubricPromptCache.get(assignment.getId(),
+            id -> renderRubricSection(rubricRepository.findByAssignment(assignment)));
+
+        StringBuilder prompt = new StringBuilder(rubricSection.length() + 512);
         prompt.append("## Assignment Information\n");
         prompt.append("Title: ").append(assignment.getTitle()).append("\n");
         prompt.append("Description: ").append(assignment.getDescription()).append("\n");
         prompt.append("Total Marks: ").append(assignment.getTotalMarks()).append("\n\n");
-        
+        prompt.append(rubricSection);
+
+        return new ScoringPrompt(prompt.toString());
+    }
+
+    /**
+     * Grading criteria of an assignment (general dimensions when it has no rubric)
+     */
+    private String renderRubricSection(List<Rubric> rubrics) {
         if (rubrics == null || rubrics.isEmpty()) {
-            // If no rubric, use default general grading criteria
-            prompt.append("## Grading Criteria (General Standards)\n");
-            prompt.append("Since no specific grading criteria have been set, please grade according to the following general dimensions:\n\n");
-            prompt.append("1. **Content Completeness** (40 points)\n");
-            prompt.append("   - Whether the assignment requirements have been fully addressed\n");
-            prompt.append("   - Whether key knowledge points are covered\n\n");
-            prompt.append("2. **Accuracy** (30 points)\n");
-            prompt.append("   - Whether concepts are correctly understood\n");
-            prompt.append("   - Whether logical reasoning is reasonable\n\n");
-            prompt.append("3. **Expression Quality** (20 points)\n");
-            prompt.append("   - Whether language expression is clear\n");
-            prompt.append("   - Whether the structure is reasonable\n\n");
-            prompt.append("4. **Innovation** (10 points)\n");
-            prompt.append("   - Whether there are unique insights\n");
-            prompt.append("   - Depth of thinking\n\n");
-        } else {
-            // Use custom rubric
-            prompt.append("## Grading Criteria (Rubric)\n");
-            for (Rubric rubric : rubrics) {
-                prompt.append("### ").append(rubric.getQuestionId()).append(" (").append(rubric.getWeight()).append(" points)\n");
-                prompt.append("Criteria: ").append(rubric.getCriteria()).append("\n");
-                
-                if (rubric.getKeyPoints() != null) {
-                    prompt.append("Key Points: ").append(rubric.getKeyPoints()).append("\n");
-                }
-                
-                if (rubric.getSampleAnswer() != null) {
-                    prompt.append("Sample Answer: ").append(rubric.getSampleAnswer()).append("\n");
-                }
-                prompt.append("\n");
-            }
+            return DEFAULT_CRITERIA;
         }
-        
-        // If there is Vision analysis, add it to the prompt
-        if (visionAnalysis != null && !visionAnalysis.isEmpty()) {
-            prompt.append("## Image Analysis Results (AI Vision Recognition)\n");
-            prompt.append("**Note**: The following is a deep analysis of the submitted image by OpenAI Vision API, including formula recognition, chart detection, handwriting recognition, etc.\n");
-            prompt.append("Please combine this additional information for more accurate grading.\n\n");
-            prompt.append(visionAnalysis).append("\n");
+
+        StringBuilder section = new StringBuilder(256 * rubrics.size());
+        section.append("## Grading Criteria (Rubric)\n");
+        for (Rubric rubric : rubrics) {
+            section.append("### ").append(rubric.getQuestionId()).append(" (").append(rubric.getWeight()).append(" points)\n");
+            section.append("Criteria: ").append(rubric.getCriteria()).append("\n");
+            
+            if (rubric.getKeyPoints() != null) {
+                section.append("Key Points: ").append(rubric.getKeyPoints()).append("\n");
+            }
+            
+            if (rubric.getSampleAnswer() != null) {
+                section.append("Sample Answer: ").append(rubric.getSampleAnswer()).append("\n");
+            }
+            section.append("\n");
         }
-        
-        prompt.append("## Student Answer (OCR Extracted Text)\n");
-        prompt.append(studentAnswer).append("\n\n");
-        
-        prompt.append("## Grading Requirements\n");
-        prompt.append("1. Grade each question according to the grading criteria\n");
-        prompt.append("2. Identify key points found in the student's answer\n");
-        prompt.append("3. Provide a total score and confidence level (0.0-1.0)\n");
-        prompt.append("4. **Provide COMPREHENSIVE and DETAILED feedback**: You MUST provide in-depth analysis of strengths, weaknesses, and improvement suggestions\n\n");
-
-        prompt.append("## Detailed Feedback Guidelines\n");
-        prompt.append("**IMPORTANT**: Your feedback must be thorough, specific, and actionable. Follow these guidelines:\n\n");
-
-        prompt.append("### Strengths Analysis (Minimum 3-5 detailed points)\n");
-        prompt.append("- Identify SPECIFIC aspects where the student performed well\n");
-        prompt.append("- Quote or reference exact parts of the answer that demonstrate excellence\n");
-        prompt.append("- Explain WHY each strength is important and how it contributes to the overall quality\n");
-        prompt.append("- Cover multiple dimensions: content accuracy, logical reasoning, expression quality, creativity, technical skills, etc.\n");
-        prompt.append("- Example: Instead of \"Good code structure\", write \"Well-organized code with clear separation of concerns: the data validation logic is properly isolated in a separate validator class, making the code more maintainable and testable\"\n\n");
-
-        prompt.append("### Weaknesses Analysis (Minimum 3-5 detailed points)\n");
-        prompt.append("- Identify SPECIFIC problems or gaps in the student's answer\n");
-        prompt.append("- Explain the IMPACT of each weakness on the overall quality\n");
-        prompt.append("- Provide CONTEXT about why this matters (e.g., industry standards, best practices, common pitfalls)\n");
-        prompt.append("- Prioritize weaknesses by severity (critical issues first)\n");
-        prompt.append("- Example: Instead of \"Missing error handling\", write \"Critical absence of error handling for network requests: the code lacks try-catch blocks for API calls, which could cause the application to crash when the server is unavailable. This violates the principle of defensive programming and creates poor user experience\"\n\n");
-
-        prompt.append("### Improvement Suggestions (Minimum 3-5 detailed action items)\n");
-        prompt.append("For EACH suggestion, you MUST provide ALL four components:\n");
-        prompt.append("- **issue**: Clearly describe the specific problem (be precise and reference the code/answer)\n");
-        prompt.append("- **suggestion**: Provide a concrete, actionable recommendation for improvement\n");
-        prompt.append("- **why**: Explain the educational value and importance of this improvement (connect to learning objectives, industry practices, or theoretical concepts)\n");
-        prompt.append("- **howToImprove**: Give step-by-step guidance or code examples showing exactly how to implement the improvement\n\n");
-
-        prompt.append("### Quality Standards for Feedback\n");
-        prompt.append("✓ Each strength/weakness should be 2-4 sentences minimum\n");
-        prompt.append("✓ Use specific examples from the student's work\n");
-        prompt.append("✓ Avoid generic statements like \"good job\" or \"needs improvement\"\n");
-        prompt.append("✓ Connect feedback to learning objectives and real-world applications\n");
-        prompt.append("✓ Be constructive and encouraging while remaining honest about areas needing improvement\n");
-        prompt.append("✓ Suggestions should include concrete examples, code snippets, or reference materials when applicable\n\n");
-        
-        prompt.append("Please return the grading results in the following JSON format:\n");
-        prompt.append("```json\n");
-        prompt.append("{\n");
-        prompt.append("  \"totalScore\": <0-").append(assignment.getTotalMarks()).append(">,\n");
-        prompt.append("  \"confidence\": <0.0-1.0>,\n");
-        prompt.append("  \"breakdown\": [\n");
-        prompt.append("    {\n");
-        prompt.append("      \"questionId\": \"Q1\",\n");
-        prompt.append("      \"score\": <actual score>,\n");
-        prompt.append("      \"maxScore\": <maximum score>,\n");
-        prompt.append("      \"keyPointsFound\": [\"Found point 1\", \"Found point 2\"],\n");
-        prompt.append("      \"keyPointsMissing\": [\"Missing point 1\"]\n");
-        prompt.append("    }\n");
-        prompt.append("  ],\n");
-        prompt.append("  \"feedback\": {\n");
-        prompt.append("    \"strengths\": [\n");
-        prompt.append("      \"Detailed strength 1: Comprehensive explanation with specific examples from the student's work, explaining why this is a strength and how it demonstrates mastery of the concept.\",\n");
-        prompt.append("      \"Detailed strength 2: Another thorough analysis with specific references...\",\n");
-        prompt.append("      \"(Provide 3-5 detailed strengths, each being 2-4 sentences)\"\n");
-        prompt.append("    ],\n");
-        prompt.append("    \"weaknesses\": [\n");
-        prompt.append("      \"Detailed weakness 1: Specific problem identified in the student's work, explaining the impact and why it matters, with reference to standards or best practices.\",\n");
-        prompt.append("      \"Detailed weakness 2: Another comprehensive analysis of a gap or issue...\",\n");
-        prompt.append("      \"(Provide 3-5 detailed weaknesses, each being 2-4 sentences)\"\n");
-        prompt.append("    ],\n");
-        prompt.append("    \"suggestions\": [\n");
-        prompt.append("      {\n");
-        prompt.append("        \"issue\": \"Precise description of the specific problem found in the answer, with reference to exact location or content\",\n");
-        prompt.append("        \"suggestion\": \"Clear, actionable recommendation for how to address this issue\",\n");
-        prompt.append("        \"why\": \"Comprehensive explanation of why this improvement matters: connect to learning objectives, industry practices, theoretical concepts, or real-world applications. Should be 2-3 sentences.\",\n");
-        prompt.append("        \"howToImprove\": \"Step-by-step guidance with concrete examples: include code snippets, pseudocode, reference materials, or specific techniques the student should learn. Should be detailed enough to actually help the student improve.\"\n");
-        prompt.append("      },\n");
-        prompt.append("      \"(Provide 3-5 detailed suggestions with ALL four components for each)\"\n");
-        prompt.append("    ]\n");
-        prompt.append("  },\n");
-        prompt.append("  \"confidenceReason\": \"Confidence explanation\"\n");
-        prompt.append("}\n");
-        prompt.append("```\n");
-        
-        return prompt.toString();
+        return section.toString();
     }
-    
+
     /**
-     * Parse AI response
+     * Status of an AI grade with the given confidence
      */
-    private ScoringResult parseAIResponse(String aiResponse) {
-        try {
-            // Extract JSON part (remove markdown code block markers)
-            String jsonStr = aiResponse;
-            if (aiResponse.contains("```json")) {
-                int start = aiResponse.indexOf("```json") + 7;
-                int end = aiResponse.lastIndexOf("```");
-                jsonStr = aiResponse.substring(start, end).trim();
-            }
+    Grade.GradeStatus statusFor(BigDecimal confidence) {
+        return confidence.doubleValue() >= confidenceThreshold
+            ? Grade.GradeStatus.HIGH_CONFIDENCE
+            : Grade.GradeStatus.NEEDS_REVIEW;
+    }
 
-            // Parse JSON
-            @SuppressWarnings("unchecked")
-            Map<String, Object> parsed = objectMapper.readValue(jsonStr, Map.class);
-            
-            Number totalScore = (Number) parsed.get("totalScore");
-            Number confidence = (Number) parsed.get("confidence");
-            
-            ScoringResult result = new ScoringResult();
-            result.setScore(BigDecimal.valueOf(totalScore.doubleValue()).setScale(2, RoundingMode.HALF_UP));
-            result.setConfidence(BigDecimal.valueOf(confidence.doubleValue()).setScale(2, RoundingMode.HALF_UP));
-            result.setFeedbackJson(jsonStr);
+    /**
+     * Receives a scoring response while it is streamed
+     */
+    interface ScoreStreamListener {
+        void onDelta(String text);
+        void onEarlyScore(ScoreStreamParser.EarlyScore score);
+    }
+
+    /**
+     * Assignment-level scoring prompt; messages go from most to least shared so the provider can
+     * reuse the cached prefix: static instructions, then assignment + rubric, then the submission
+     */
+    record ScoringPrompt(String assignmentSection) {
+
+        /**
+         * Messages for one submission (including optional Vision analysis)
+         */
+        List<OpenAiService.Message> render(String studentAnswer, String visionAnalysis) {
+            int answerLength = studentAnswer != null ? studentAnswer.length() : 0;
+            int visionLength = visionAnalysis != null ? visionAnalysis.length() : 0;
+            StringBuilder prompt = new StringBuilder(answerLength + visionLength + 512);
+
+            // If there is Vision analysis, add it to the prompt
+            if (visionAnalysis != null && !visionAnalysis.isEmpty()) {
+                prompt.append("## Image Analysis Results (AI Vision Recognition)\n");
+                prompt.append("**Note**: The following is a deep analysis of the submitted image by OpenAI Vision API, including formula recognition, chart detection, handwriting recognition, etc.\n");
+                prompt.append("Please combine this additional information for more accurate grading.\n\n");
+                prompt.append(visionAnalysis).append("\n");
+            }
             
-            return result;
+            prompt.append("## Student Answer (OCR Extracted Text)\n");
+            prompt.append(studentAnswer).append("\n");
             
-        } catch (Exception e) {
-            log.error("Failed to parse AI response: {}", aiResponse, e);
-
-            // Fallback: return median score with low confidence
-            ScoringResult fallback = new ScoringResult();
-            fallback.setScore(BigDecimal.valueOf(50.0));
-            fallback.setConfidence(BigDecimal.valueOf(0.3));
-            fallback.setFeedbackJson("{\"error\": \"AI parsing failed\"}");
+            return List.of(
+                OpenAiService.Message.system(SYSTEM_PROMPT),
+                OpenAiService.Message.user(assignmentSection),
+                OpenAiService.Message.user(prompt.toString())
+            );
+        }
+    }
+    
+    /**
+     * Scoring result DTO (feedbackJson holds the raw JSON object of the response)
+     */
+    record ScoringResult(BigDecimal score, BigDecimal confidence, List<QuestionScore> breakdown, byte[] feedbackJson) {
 
-            return fallback;
+        String feedbackJsonText() {
+            return new String(feedbackJson, StandardCharsets.UTF_8);
         }
     }
 
     /**
-     * Scoring result DTO
+     * Per-question score from the response breakdown
      */
-    @lombok.Data
-    private static class ScoringResult {
-        private BigDecimal score;
-        private BigDecimal confidence;
-        private String feedbackJson;
+    record QuestionScore(String questionId, BigDecimal score, BigDecimal maxScore) {
     }
 }
-
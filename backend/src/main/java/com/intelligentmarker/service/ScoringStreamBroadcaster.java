@@ -0,0 +1,87 @@
+package com.intelligentmarker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Server-sent event subscribers per submission
+ * The scoring stage publishes streamed feedback (delta), the early score (score) and the final
+ * grade (done) or a failure (error); subscribers are dropped on completion, timeout or send failure
+ */
+@Component
+@Slf4j
+public class ScoringStreamBroadcaster {
+
+    private final Map<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+
+    public ScoringStreamBroadcaster(@Value("${app.scoring.stream-timeout-ms:300000}") long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Register a client for a submission's scoring events
+     */
+    public SseEmitter subscribe(Long submissionId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(submissionId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+
+        Runnable remove = () -> unsubscribe(submissionId, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    /**
+     * Whether anyone is listening (lets callers skip building event payloads)
+     */
+    public boolean hasSubscribers(Long submissionId) {
+        List<SseEmitter> emitters = subscribers.get(submissionId);
+        return emitters != null && !emitters.isEmpty();
+    }
+
+    /**
+     * Send an event to every subscriber of the submission
+     */
+    public void publish(Long submissionId, String event, Object data) {
+        List<SseEmitter> emitters = subscribers.get(submissionId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (Exception e) {
+                log.debug("Dropping SSE subscriber of submission {}: {}", submissionId, e.getMessage());
+                unsubscribe(submissionId, emitter);
+            }
+        }
+    }
+
+    /**
+     * Send a final event and close all streams of the submission
+     */
+    public void complete(Long submissionId, String event, Object data) {
+        publish(submissionId, event, data);
+        List<SseEmitter> emitters = subscribers.remove(submissionId);
+        if (emitters != null) {
+            emitters.forEach(SseEmitter::complete);
+        }
+    }
+
+    private void unsubscribe(Long submissionId, SseEmitter emitter) {
+        subscribers.computeIfPresent(submissionId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package com.intelligentmarker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * File storage service
+ * Writes go to the configured backend (app.storage.backend): Aliyun OSS, falling back to local storage
+ * when an OSS write fails, or the local store only for on-prem deployments. Reads are routed by URL,
+ * so files written by either backend stay readable
+ */
+@Service
+@Slf4j
+public class StorageService {
+
+    private final LocalObjectStore localStore;
+    private final OssObjectStore ossStore; // null with app.storage.backend=local
+
+    public StorageService(LocalObjectStore localStore, ObjectProvider<OssObjectStore> ossStore) {
+        this.localStore = localStore;
+        this.ossStore = ossStore.getIfAvailable();
+    }
+
+    /**
+     * Upload file
+     * @param file File
+     * @param folder Folder path
+     * @return OSS file URL or local path
+     */
+    public String uploadFile(MultipartFile file, String folder) {
+        try {
+            String fileName = folder + "/" + UUID.randomUUID() + "_" + file.getOriginalFilename();
+
+            // If OSS is available, upload to OSS
+            if (ossStore != null && ossStore.isAvailable()) {
+                try (InputStream inputStream = file.getInputStream()) {
+                    String url = ossStore.put(fileName, inputStream);
+                    log.info("File uploaded to OSS: {}", url);
+                    return url;
+                } catch (Exception ossEx) {
+                    log.warn("OSS upload failed, falling back to local storage: {}", ossEx.getMessage());
+                }
+            }
+
+            try (InputStream inputStream = file.getInputStream()) {
+                String url = localStore.put(fileName, inputStream);
+                log.info("File saved to local storage: {}", url);
+                return url;
+            }
+
+        } catch (Exception e) {
+            log.error("Failed to upload file", e);
+            throw new RuntimeException("File upload failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Upload text content
+     * @param content Text content
+     * @param folder Folder path
+     * @param fileName File name
+     * @return OSS file URL or local path
+     */
+    public String uploadText(String content, String folder, String fileName) {
+        try {
+            String fullPath = folder + "/" + UUID.randomUUID() + "_" + fileName;
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+            // If OSS is available, upload to OSS
+            if (ossStore != null && ossStore.isAvailable()) {
+                try {
+                    String url = ossStore.put(fullPath, new ByteArrayInputStream(bytes));
+                    log.info("Text uploaded to OSS: {}", url);
+                    return url;
+                } catch (Exception ossEx) {
+                    log.warn("OSS upload failed, falling back to local storage: {}", ossEx.getMessage());
+                }
+            }
+
+            String url = localStore.put(fullPath, new ByteArrayInputStream(bytes));
+            log.info("Text saved to local storage: {}", url);
+            return url;
+
+        } catch (Exception e) {
+            log.error("Failed to upload text", e);
+            throw new RuntimeException("Text upload failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read a whole file
+     * @param fileUrl OSS file URL or local path
+     * @return Read-only content; memory-mapped for local files, so nothing is copied onto the heap
+     */
+    public ByteBuffer read(String fileUrl) {
+        try {
+            return storeFor(fileUrl).read(fileUrl);
+        } catch (Exception e) {
+            log.error("Failed to download file: {}", fileUrl, e);
+            throw new RuntimeException("File download failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open a file for streaming; the caller closes the stream
+     * @param fileUrl OSS file URL or local path
+     */
+    public InputStream openStream(String fileUrl) {
+        try {
+            return storeFor(fileUrl).open(fileUrl);
+        } catch (Exception e) {
+            log.error("Failed to download file: {}", fileUrl, e);
+            throw new RuntimeException("File download failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * File size in bytes
+     */
+    public long size(String fileUrl) {
+        try {
+            return storeFor(fileUrl).size(fileUrl);
+        } catch (Exception e) {
+            throw new RuntimeException("File not found: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the URL refers to a file on this node's file system
+     */
+    public boolean isLocal(String fileUrl) {
+        return localStore.owns(fileUrl);
+    }
+
+    /**
+     * Path of a local file, empty for files in OSS
+     */
+    public Optional<Path> localPath(String fileUrl) {
+        return isLocal(fileUrl) ? Optional.of(localStore.path(fileUrl)) : Optional.empty();
+    }
+
+    /**
+     * Make file content available as a local file without holding it in memory
+     * Local files are used in place; OSS objects are streamed into a temp file that is deleted on close
+     * @param fileUrl OSS file URL or local path
+     */
+    public ObjectStore.DownloadedFile downloadToFile(String fileUrl) {
+        try {
+            return storeFor(fileUrl).toLocalFile(fileUrl);
+        } catch (Exception e) {
+            log.error("Failed to download file: {}", fileUrl, e);
+            throw new RuntimeException("File download failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete file
+     * @param fileUrl OSS file URL or local path
+     */
+    public void deleteFile(String fileUrl) {
+        try {
+            storeFor(fileUrl).delete(fileUrl);
+            log.info("File deleted: {}", fileUrl);
+        } catch (Exception e) {
+            log.error("Failed to delete file: {}", fileUrl, e);
+        }
+    }
+
+    private ObjectStore storeFor(String fileUrl) {
+        if (localStore.owns(fileUrl)) {
+            return localStore;
+        }
+        if (ossStore == null) {
+            throw new IllegalStateException("OSS not configured and file is not local");
+        }
+        return ossStore;
+    }
+}
@@ -0,0 +1,107 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.Submission;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Per-submission access to the original upload during text extraction
+ * Within one context the file is fetched from storage at most once and an image is decoded at most once,
+ * so Vision, the image quality check and OCR share the same bytes and prepared image.
+ * Bytes transferred from storage are recorded per submission as submission.bytes.fetched
+ */
+@Component
+@Slf4j
+public class SubmissionArtifacts {
+
+    private final StorageService storageService;
+    private final ImagePreprocessor imagePreprocessor;
+    private final DistributionSummary bytesFetched;
+
+    public SubmissionArtifacts(StorageService storageService, ImagePreprocessor imagePreprocessor,
+                               MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.imagePreprocessor = imagePreprocessor;
+        this.bytesFetched = DistributionSummary.builder("submission.bytes.fetched")
+            .description("Bytes of the original upload transferred from storage per submission")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Open a context for one submission; close it when the stage is done
+     */
+    public Context open(Submission submission) {
+        return new Context(submission);
+    }
+
+    /**
+     * Lazily fetched artifacts of one submission (not thread-safe: used by one stage run)
+     */
+    public final class Context implements AutoCloseable {
+
+        private final Submission submission;
+        private ByteBuffer content;
+        private ImagePreprocessor.PreparedImage image;
+        private ObjectStore.DownloadedFile file;
+        private long fetched;
+
+        private Context(Submission submission) {
+            this.submission = submission;
+        }
+
+        /**
+         * Original file content (downloaded on first use; local files are memory-mapped, not fetched)
+         */
+        public ByteBuffer content() {
+            if (content == null) {
+                content = storageService.read(submission.getOriginalDocUrl());
+                if (!storageService.isLocal(submission.getOriginalDocUrl())) {
+                    fetched += content.remaining();
+                }
+            }
+            return content.duplicate();
+        }
+
+        /**
+         * Decoded and preprocessed image (decoded on first use)
+         * @throws IllegalArgumentException when the file is not a readable image
+         */
+        public ImagePreprocessor.PreparedImage image() {
+            if (image == null) {
+                image = imagePreprocessor.prepare(content());
+            }
+            return image;
+        }
+
+        /**
+         * Original file as a local file, for documents that are read without loading them into memory
+         * OSS objects are spooled to a temp file once and deleted on close
+         */
+        public Path file() throws IOException {
+            if (file == null) {
+                file = storageService.downloadToFile(submission.getOriginalDocUrl());
+                if (file.temporary()) {
+                    fetched += Files.size(file.path());
+                }
+            }
+            return file.path();
+        }
+
+        @Override
+        public void close() {
+            bytesFetched.record(fetched);
+            log.debug("Submission {}: {} bytes fetched from storage", submission.getId(), fetched);
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+}
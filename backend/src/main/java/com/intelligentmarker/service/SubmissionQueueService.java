@@ -0,0 +1,278 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.config.SubmissionQueueProperties;
+import com.intelligentmarker.model.Submission;
+import com.intelligentmarker.model.SubmissionJob;
+import com.intelligentmarker.repository.SubmissionJobRepository;
+import com.intelligentmarker.repository.SubmissionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durable submission queue backed by the submission_jobs table
+ * Jobs survive restarts; workers claim them with SKIP LOCKED so several nodes can share the queue.
+ * Each pipeline stage is its own queue: a job is claimed by the workers of its current stage and
+ * handed to the next stage when that stage finishes
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SubmissionQueueService {
+
+    private static final List<SubmissionJob.JobStatus> OPEN_STATUSES =
+        List.of(SubmissionJob.JobStatus.PENDING, SubmissionJob.JobStatus.RUNNING);
+
+    private final SubmissionJobRepository jobRepository;
+    private final SubmissionRepository submissionRepository;
+    private final SubmissionQueueProperties properties;
+
+    /**
+     * Enqueue submission for processing (joins the caller's transaction so the job commits with the submission)
+     */
+    @Transactional
+    public SubmissionJob enqueue(Long submissionId) {
+        return enqueue(submissionId, SubmissionJob.Stage.OCR);
+    }
+
+    /**
+     * Enqueue submission at the given stage (earlier stages' results are already on the submission)
+     */
+    @Transactional
+    public SubmissionJob enqueue(Long submissionId, SubmissionJob.Stage stage) {
+        SubmissionJob job = jobRepository.findBySubmissionId(submissionId).orElseGet(SubmissionJob::new);
+        job.setSubmissionId(submissionId);
+        job.setStage(stage);
+        job.setStatus(SubmissionJob.JobStatus.PENDING);
+        job.setAttempts(0);
+        job.setAvailableAt(LocalDateTime.now());
+        job.setLockedAt(null);
+        job.setLockedBy(null);
+        job.setLastError(null);
+
+        if (stage == SubmissionJob.Stage.OCR) {
+            job.setVisionAnalysis(null);
+        }
+
+        job = jobRepository.save(job);
+        log.info("Submission {} enqueued as job {} at stage {}", submissionId, job.getId(), stage);
+        return job;
+    }
+
+    /**
+     * Whether another upload can be accepted (backpressure)
+     */
+    public boolean hasCapacity() {
+        return jobRepository.countByStatusIn(OPEN_STATUSES) < properties.getMaxPending();
+    }
+
+    /**
+     * Claim up to limit due jobs of a stage for the given worker
+     */
+    @Transactional
+    public List<SubmissionJob> claim(SubmissionJob.Stage stage, int limit, String workerId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = jobRepository.lockNextPendingIds(stage.name(), now, limit);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<SubmissionJob> jobs = jobRepository.findAllById(ids);
+        for (SubmissionJob job : jobs) {
+            job.setStatus(SubmissionJob.JobStatus.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLockedAt(now);
+            job.setLockedBy(workerId);
+        }
+        return jobRepository.saveAll(jobs);
+    }
+
+    /**
+     * Extend the lease of jobs still running on this worker (heartbeat), so long stages are not
+     * released by recoverStalled and claimed a second time
+     */
+    @Transactional
+    public int renewLeases(Collection<Long> jobIds, String workerId) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jobRepository.renewLeases(jobIds, SubmissionJob.JobStatus.RUNNING, workerId, LocalDateTime.now());
+    }
+
+    /**
+     * Hand job to the next stage; attempts restart since they count claims within a stage
+     * @param visionAnalysis Result passed on to the scoring stage (kept as is when null)
+     */
+    @Transactional
+    public void advance(Long jobId, SubmissionJob.Stage nextStage, String visionAnalysis) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStage(nextStage);
+            job.setStatus(SubmissionJob.JobStatus.PENDING);
+            job.setAttempts(0);
+            job.setAvailableAt(LocalDateTime.now());
+            job.setLockedAt(null);
+            job.setLockedBy(null);
+            job.setLastError(null);
+            if (visionAnalysis != null) {
+                job.setVisionAnalysis(visionAnalysis);
+            }
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Pending jobs of a stage (queue depth)
+     */
+    public long countPending(SubmissionJob.Stage stage) {
+        return jobRepository.countByStageAndStatus(stage, SubmissionJob.JobStatus.PENDING);
+    }
+
+    /**
+     * Put job back in the queue without using up an attempt (a dependency is known to be down)
+     */
+    @Transactional
+    public void retryLater(Long jobId, Duration delay, String reason) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(SubmissionJob.JobStatus.PENDING);
+            job.setAttempts(Math.max(0, job.getAttempts() - 1));
+            job.setAvailableAt(LocalDateTime.now().plus(delay));
+            job.setLastError(reason);
+            job.setLockedAt(null);
+            job.setLockedBy(null);
+            jobRepository.save(job);
+            log.warn("Job {} (submission {}) re-queued at stage {} until {}: {}",
+                    job.getId(), job.getSubmissionId(), job.getStage(), job.getAvailableAt(), reason);
+        });
+    }
+
+    /**
+     * Park job until its OpenAI batch result is applied (releases the worker slot)
+     */
+    @Transactional
+    public void markDeferred(Long jobId) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(SubmissionJob.JobStatus.DEFERRED);
+            job.setLockedAt(null);
+            job.setLockedBy(null);
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Complete deferred jobs of the given submissions
+     */
+    @Transactional
+    public int completeDeferred(Collection<Long> submissionIds) {
+        if (submissionIds.isEmpty()) {
+            return 0;
+        }
+        return jobRepository.completeDeferred(submissionIds,
+            SubmissionJob.JobStatus.DEFERRED, SubmissionJob.JobStatus.COMPLETED);
+    }
+
+    /**
+     * Mark job as completed
+     */
+    @Transactional
+    public void markCompleted(Long jobId) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(SubmissionJob.JobStatus.COMPLETED);
+            job.setLockedAt(null);
+            job.setLockedBy(null);
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Record a failed attempt; the job is retried with linear backoff until attempts are exhausted,
+     * then the job and its submission are marked FAILED (so recovery no longer picks the submission up)
+     * @return true if the job will be retried
+     */
+    @Transactional
+    public boolean markFailed(Long jobId, String error) {
+        SubmissionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return false;
+        }
+
+        job.setLastError(error);
+        job.setLockedAt(null);
+        job.setLockedBy(null);
+
+        boolean retry = job.getAttempts() < properties.getMaxAttempts();
+        if (retry) {
+            job.setStatus(SubmissionJob.JobStatus.PENDING);
+            job.setAvailableAt(LocalDateTime.now().plus(properties.getRetryBackoff().multipliedBy(job.getAttempts())));
+            log.warn("Job {} (submission {}) failed at stage {}, will retry at {} (attempt {}/{})",
+                    job.getId(), job.getSubmissionId(), job.getStage(), job.getAvailableAt(),
+                    job.getAttempts(), properties.getMaxAttempts());
+        } else {
+            job.setStatus(SubmissionJob.JobStatus.FAILED);
+            submissionRepository.markFailed(job.getSubmissionId(), error);
+            log.error("Job {} (submission {}) failed permanently at stage {} after {} attempts",
+                    job.getId(), job.getSubmissionId(), job.getStage(), job.getAttempts());
+        }
+
+        jobRepository.save(job);
+        return retry;
+    }
+
+    /**
+     * Release jobs from expired leases and re-enqueue submissions stuck mid-pipeline
+     * @return Number of jobs made available again
+     */
+    @Transactional
+    public int recoverStalled() {
+        LocalDateTime now = LocalDateTime.now();
+
+        int released = jobRepository.releaseExpiredLeases(
+            SubmissionJob.JobStatus.PENDING,
+            SubmissionJob.JobStatus.RUNNING,
+            now.minus(properties.getLeaseTimeout()),
+            now
+        );
+
+        // Resume stuck submissions at the stage matching their status
+        List<SubmissionJobRepository.StuckSubmission> stuck = jobRepository.findStuckSubmissions();
+        for (SubmissionJobRepository.StuckSubmission submission : stuck) {
+            enqueue(submission.getId(),
+                    SubmissionJob.Stage.forStatus(Submission.SubmissionStatus.valueOf(submission.getStatus())));
+        }
+
+        int recovered = released + stuck.size();
+        if (recovered > 0) {
+            log.info("Recovered {} submission jobs ({} expired leases, {} stuck submissions)",
+                    recovered, released, stuck.size());
+        }
+        return recovered;
+    }
+
+    /**
+     * Release jobs still held by an earlier process of this node (called once at startup when enabled,
+     * so a crashed node resumes its work without waiting for the lease to expire)
+     * @param workerId Current worker id in the form instanceId:uuid
+     */
+    @Transactional
+    public int releaseOrphanedJobs(String workerId) {
+        String instancePrefix = workerId.substring(0, workerId.lastIndexOf(':') + 1) + "%";
+        int released = jobRepository.releaseOrphanedJobs(
+            SubmissionJob.JobStatus.PENDING,
+            SubmissionJob.JobStatus.RUNNING,
+            instancePrefix,
+            workerId,
+            LocalDateTime.now()
+        );
+
+        if (released > 0) {
+            log.info("Released {} jobs left running by a previous process of this node", released);
+        }
+        return released;
+    }
+}
@@ -2,19 +2,22 @@ package com.intelligentmarker.service;
 
 import com.intelligentmarker.model.*;
 import com.intelligentmarker.repository.SubmissionRepository;
+import com.intelligentmarker.repository.SubmissionTextRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Submission service
  * Coordinates the entire submission processing workflow: upload → OCR → anonymization → scoring
+ * (each processing step runs as a separate queue stage, see SubmissionWorker)
  */
 @Service
 @Slf4j
@@ -22,12 +25,18 @@ import java.util.Map;
 public class SubmissionService {
     
     private final SubmissionRepository submissionRepository;
-    private final AliyunOssService ossService;
+    private final SubmissionTextRepository submissionTextRepository;
+    private final StorageService storageService;
     private final OCRService ocrService;
     private final AnonymizationService anonymizationService;
     private final ScoringService scoringService;
     private final AuditLogService auditLogService;
     private final VisionAdapter visionAdapter; // Advanced image understanding
+    private final SubmissionQueueService submissionQueueService;
+    private final TransactionTemplate transactionTemplate;
+    private final OfflineScoringService offlineScoringService;
+    private final SubmissionArtifacts submissionArtifacts;
+    private final ScoringStreamBroadcaster streamBroadcaster;
 
     /**
      * Create submission and upload file
@@ -39,7 +48,7 @@ public class SubmissionService {
 
         try {
             // 1. Upload original file to OSS
-            String originalUrl = ossService.uploadFile(file, "submissions/original");
+            String originalUrl = storageService.uploadFile(file, "submissions/original");
 
             // 2. Create Submission record
             Submission submission = new Submission();
@@ -52,7 +61,10 @@ public class SubmissionService {
 
             submission = submissionRepository.save(submission);
 
-            // 3. Record audit log
+            // 3. Enqueue processing job (committed together with the submission)
+            submissionQueueService.enqueue(submission.getId());
+
+            // 4. Record audit log
             auditLogService.log(
                 student,
                 "UPLOAD",
@@ -70,107 +82,171 @@ public class SubmissionService {
     }
     
     /**
-     * Trigger async processing (call after transaction commit)
+     * Run the current pipeline stage of a job (OCR → Anonymization → Scoring)
+     * Invoked by SubmissionWorker with the stage's own workers. No transaction is held while OCR,
+     * Vision, OSS or OpenAI are called: each stage does its remote work first and then commits its
+     * results together with the handoff to the next stage in one short checkpoint transaction
      */
-    public void triggerAsyncProcessing(Long submissionId) {
-        processSubmissionAsync(submissionId);
-    }
+    public void processStage(SubmissionJob job) {
+        Long submissionId = job.getSubmissionId();
+        log.info("🚀 Starting {} stage for submission {}", job.getStage(), submissionId);
 
-    /**
-     * Async process submission (OCR → Vision analysis → Anonymization → Scoring)
-     * Uses REQUIRES_NEW propagation level, runs in new transaction to avoid affecting committed outer transaction
-     */
-    @Async
-    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.REQUIRES_NEW)
-    public void processSubmissionAsync(Long submissionId) {
-        log.info("🚀 Starting async processing for submission {}", submissionId);
-
-        Submission submission = submissionRepository.findById(submissionId)
+        Submission submission = submissionRepository.findWithParticipantsById(submissionId)
             .orElseThrow(() -> new RuntimeException("Submission not found"));
 
         try {
-            // Step 1: Text extraction (images use Vision API, documents use OCR)
-            updateStatus(submission, Submission.SubmissionStatus.OCR_PROCESSING);
-            String ocrText = "";
-            String visionAnalysis = null;
-
-            if (isImageFile(submission.getFileType())) {
-                // Image: prioritize OpenAI Vision API (no need for Tesseract)
-                log.info("📸 Detected image file, using Vision API for text extraction...");
-                visionAnalysis = performVisionAnalysis(submission);
-                if (visionAnalysis != null && !visionAnalysis.isEmpty()) {
-                    log.info("✅ Vision analysis completed: {} chars", visionAnalysis.length());
-                    // Vision analysis result as OCR text (includes more advanced understanding)
-                    ocrText = visionAnalysis;
-                } else {
-                    log.warn("⚠️ Vision API failed, trying fallback OCR...");
-                    try {
-                        ocrText = performOCR(submission);
-                    } catch (Exception e) {
-                        log.error("❌ Both Vision and OCR failed", e);
-                        throw new RuntimeException("Text extraction failed: " + e.getMessage());
+            updateStatus(submission, job.getStage().getStatus());
+
+            switch (job.getStage()) {
+                case OCR -> {
+                    ExtractedText extracted = extractText(submission);
+                    checkpoint(() -> {
+                        submissionRepository.save(submission);
+                        submissionTextRepository.updateOcrText(submissionId, extracted.text());
+                        submissionQueueService.advance(job.getId(), SubmissionJob.Stage.ANONYMIZE, extracted.visionAnalysis());
+                    });
+                }
+                case ANONYMIZE -> {
+                    String anonymizedText = anonymize(submission);
+                    checkpoint(() -> {
+                        submissionRepository.save(submission);
+                        submissionTextRepository.updateAnonymizedText(submissionId, anonymizedText);
+                        submissionQueueService.advance(job.getId(), SubmissionJob.Stage.SCORE, null);
+                    });
+                }
+                case SCORE -> {
+                    if (offlineScoringService.accepts(submission.getAssignment())) {
+                        // BATCH scoring mode: the job waits for the OpenAI batch result
+                        checkpoint(() -> {
+                            offlineScoringService.enqueue(submission, job.getVisionAnalysis());
+                            submissionQueueService.markDeferred(job.getId());
+                        });
+                        log.info("🕒 Submission {} deferred to OpenAI batch scoring", submissionId);
+                        return;
                     }
+
+                    // AI scoring (including Vision analysis as additional context)
+                    Grade grade = scoringService.scoreSubmission(submission, job.getVisionAnalysis());
+                    log.info("✅ AI scoring completed");
+
+                    checkpoint(() -> {
+                        updateStatus(submission, Submission.SubmissionStatus.SCORED);
+                        submissionQueueService.markCompleted(job.getId());
+                    });
+                    // After the status commit: a /stream subscriber that reads SCORING still gets this event
+                    Map<String, Object> done = new HashMap<>();
+                    done.put("gradeId", grade.getId());
+                    done.put("totalScore", grade.getAiScore());
+                    done.put("confidence", grade.getAiConfidence());
+                    done.put("status", grade.getStatus());
+                    streamBroadcaster.complete(submissionId, "done", done);
+                    log.info("🎉 Submission processing completed: {}", submissionId);
                 }
-            } else {
-                // Document: use traditional OCR
-                log.info("📄 Non-image file, using traditional OCR...");
-                ocrText = performOCR(submission);
             }
 
-            submission.setOcrText(ocrText);
-            submissionRepository.save(submission);
-            log.info("✅ Text extraction completed: {} characters", ocrText.length());
-
-            // Step 2: Anonymization
-            updateStatus(submission, Submission.SubmissionStatus.ANONYMIZING);
-            String anonymizedText = performAnonymization(submission, ocrText);
-            submission.setAnonymizedText(anonymizedText);
+        } catch (RuntimeException e) {
+            CircuitOpenException circuitOpen = CircuitOpenException.causeOf(e);
+            if (circuitOpen == null) {
+                // SubmissionWorker records the failed attempt: the queue retries the stage and marks
+                // the submission FAILED once attempts are exhausted
+                throw e;
+            }
+            // Dependency is down, not the submission: wait for the breaker instead of failing
+            checkpoint(() -> submissionQueueService.retryLater(
+                job.getId(), circuitOpen.getRetryAfter(), circuitOpen.getMessage()));
+        }
+    }
 
-            // Upload anonymized text to OSS
-            String anonymizedUrl = ossService.uploadText(
-                anonymizedText,
-                "submissions/anonymized",
-                "anonymized_" + submission.getId() + ".txt"
-            );
-            submission.setAnonymizedDocUrl(anonymizedUrl);
-            submissionRepository.save(submission);
-            log.info("✅ Anonymization completed");
+    /**
+     * Commit a stage's results and the job handoff atomically
+     */
+    private void checkpoint(Runnable work) {
+        transactionTemplate.executeWithoutResult(status -> work.run());
+    }
 
-            // Step 3: AI scoring (including Vision analysis as additional context)
-            updateStatus(submission, Submission.SubmissionStatus.SCORING);
-            scoringService.scoreSubmission(submission, visionAnalysis);
-            log.info("✅ AI scoring completed");
+    /**
+     * OCR stage: text extraction (images use Vision API, documents use OCR)
+     * @return OCR text, and the Vision analysis for the scoring stage (null for documents or when Vision failed)
+     */
+    private ExtractedText extractText(Submission submission) {
+        // One download (and for images one decode) shared by Vision, the quality check and OCR
+        try (SubmissionArtifacts.Context artifacts = submissionArtifacts.open(submission)) {
+            return extractText(submission, artifacts);
+        }
+    }
 
-            // Step 4: Complete
-            updateStatus(submission, Submission.SubmissionStatus.SCORED);
-            
-            log.info("🎉 Submission processing completed: {}", submissionId);
-            
-        } catch (Exception e) {
-            log.error("❌ Submission processing failed: {}", submissionId, e);
-            
-            submission.setStatus(Submission.SubmissionStatus.FAILED);
-            submission.setProcessingError(e.getMessage());
-            submissionRepository.save(submission);
+    private ExtractedText extractText(Submission submission, SubmissionArtifacts.Context artifacts) {
+        String ocrText = "";
+        String visionAnalysis = null;
+
+        if (isImageFile(submission.getFileType())) {
+            // Image: prioritize OpenAI Vision API (no need for Tesseract)
+            log.info("📸 Detected image file, using Vision API for text extraction...");
+            visionAnalysis = performVisionAnalysis(submission, artifacts);
+            if (visionAnalysis != null && !visionAnalysis.isEmpty()) {
+                log.info("✅ Vision analysis completed: {} chars", visionAnalysis.length());
+                // Vision analysis result as OCR text (includes more advanced understanding)
+                ocrText = visionAnalysis;
+            } else {
+                log.warn("⚠️ Vision API failed, trying fallback OCR...");
+                try {
+                    ocrText = performOCR(submission, artifacts);
+                } catch (Exception e) {
+                    log.error("❌ Both Vision and OCR failed", e);
+                    throw new RuntimeException("Text extraction failed: " + e.getMessage());
+                }
+            }
+        } else {
+            // Document: use traditional OCR
+            log.info("📄 Non-image file, using traditional OCR...");
+            ocrText = performOCR(submission, artifacts);
         }
+
+        log.info("✅ Text extraction completed: {} characters", ocrText.length());
+        return new ExtractedText(ocrText, visionAnalysis);
     }
-    
+
+    private record ExtractedText(String text, String visionAnalysis) {
+    }
+
+    /**
+     * Anonymization stage: redact the extracted text and upload it to OSS
+     * @return Anonymized text
+     */
+    private String anonymize(Submission submission) {
+        String ocrText = submissionTextRepository.findOcrText(submission.getId()).orElse(null);
+        String anonymizedText = performAnonymization(submission, ocrText);
+
+        // Upload anonymized text to OSS
+        String anonymizedUrl = storageService.uploadText(
+            anonymizedText,
+            "submissions/anonymized",
+            "anonymized_" + submission.getId() + ".txt"
+        );
+        submission.setAnonymizedDocUrl(anonymizedUrl);
+        log.info("✅ Anonymization completed");
+        return anonymizedText;
+    }
+
     /**
      * Perform OCR extraction
+     * Documents are spooled to a local file and read from there, so large PDFs/DOCX never sit in heap whole
      */
-    private String performOCR(Submission submission) {
+    private String performOCR(Submission submission, SubmissionArtifacts.Context artifacts) {
         try {
-            byte[] fileBytes = ossService.downloadFile(submission.getOriginalDocUrl());
-
-            // If it's an image, check quality first
+            String text;
             if (isImageFile(submission.getFileType())) {
-                if (!ocrService.checkImageQuality(fileBytes)) {
+                ImagePreprocessor.PreparedImage image = artifacts.image();
+
+                // If it's an image, check quality first
+                if (!ocrService.checkImageQuality(image)) {
                     throw new RuntimeException("Image quality too low for OCR");
                 }
+                text = ocrService.extractText(image, submission.getFileType());
+            } else {
+                text = ocrService.extractText(artifacts.file(), submission.getFileType());
             }
 
-            String text = ocrService.extractText(fileBytes, submission.getFileType());
-
             log.info("OCR extracted {} characters for submission {}",
                     text.length(), submission.getId());
 
@@ -186,15 +262,12 @@ public class SubmissionService {
      * Perform Vision analysis (image only)
      * Uses OpenAI Vision API for advanced image understanding
      */
-    private String performVisionAnalysis(Submission submission) {
+    private String performVisionAnalysis(Submission submission, SubmissionArtifacts.Context artifacts) {
         try {
             log.info("🔍 Starting Vision analysis for submission {}", submission.getId());
 
-            // Download original image
-            byte[] imageBytes = ossService.downloadFile(submission.getOriginalDocUrl());
-
-            // Call Vision API to analyze image
-            VisionAdapter.ImageAnalysisResult result = visionAdapter.analyzeImage(imageBytes);
+            // Call Vision API to analyze image (downloaded and decoded once, see SubmissionArtifacts)
+            VisionAdapter.ImageAnalysisResult result = visionAdapter.analyzeImage(artifacts.image());
 
             // Build analysis report (as additional context for AI scoring)
             StringBuilder analysis = new StringBuilder();
@@ -229,6 +302,8 @@ public class SubmissionService {
 
             return analysisText;
 
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
             log.warn("⚠️ Vision analysis failed (non-critical): {}. Continuing without Vision context.", e.getMessage());
             // Vision analysis failure doesn't affect main process, return null
@@ -282,12 +357,5 @@ public class SubmissionService {
         return submissionRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("Submission not found: " + id));
     }
-
-    /**
-     * Get all submissions for an assignment
-     */
-    public List<Submission> getSubmissionsByAssignment(Assignment assignment) {
-        return submissionRepository.findByAssignment(assignment);
-    }
 }
 
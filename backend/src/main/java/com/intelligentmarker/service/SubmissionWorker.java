@@ -0,0 +1,180 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.config.SubmissionQueueProperties;
+import com.intelligentmarker.model.SubmissionJob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submission queue worker
+ * Polls the durable queue stage by stage; each stage (OCR, ANONYMIZE, SCORE) has its own executor and
+ * runs at most app.submission-queue.stages.<stage> jobs at a time, so a slow LLM never idles OCR workers.
+ * Metrics per stage: submission.stage.duration (timer, tagged with outcome), submission.stage.in_flight
+ * and submission.stage.queued
+ */
+@Service
+@Slf4j
+public class SubmissionWorker {
+
+    private final SubmissionQueueService queueService;
+    private final SubmissionService submissionService;
+    private final SubmissionQueueProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<SubmissionJob.Stage, AsyncTaskExecutor> executors = new EnumMap<>(SubmissionJob.Stage.class);
+    private final Map<SubmissionJob.Stage, AtomicInteger> inFlight = new EnumMap<>(SubmissionJob.Stage.class);
+    private final Set<Long> runningJobIds = ConcurrentHashMap.newKeySet();
+    private final String workerId;
+
+    public SubmissionWorker(
+        SubmissionQueueService queueService,
+        SubmissionService submissionService,
+        SubmissionQueueProperties properties,
+        MeterRegistry meterRegistry,
+        @Qualifier("ocrStageExecutor") AsyncTaskExecutor ocrStageExecutor,
+        @Qualifier("anonymizeStageExecutor") AsyncTaskExecutor anonymizeStageExecutor,
+        @Qualifier("scoreStageExecutor") AsyncTaskExecutor scoreStageExecutor
+    ) {
+        this.queueService = queueService;
+        this.submissionService = submissionService;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.workerId = resolveInstanceId(properties) + ":" + UUID.randomUUID();
+
+        executors.put(SubmissionJob.Stage.OCR, ocrStageExecutor);
+        executors.put(SubmissionJob.Stage.ANONYMIZE, anonymizeStageExecutor);
+        executors.put(SubmissionJob.Stage.SCORE, scoreStageExecutor);
+
+        for (SubmissionJob.Stage stage : SubmissionJob.Stage.values()) {
+            AtomicInteger counter = new AtomicInteger();
+            inFlight.put(stage, counter);
+            String tag = stage.name().toLowerCase();
+            Gauge.builder("submission.stage.in_flight", counter, AtomicInteger::get)
+                .description("Jobs currently running in the stage on this node")
+                .tag("stage", tag)
+                .register(meterRegistry);
+            Gauge.builder("submission.stage.queued", queueService, q -> q.countPending(stage))
+                .description("Jobs waiting for the stage across all nodes")
+                .tag("stage", tag)
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Resume work left behind by a crash or restart
+     * Jobs of a previous process are only released early when app.submission-queue.release-orphans-on-startup
+     * is set, since two live nodes sharing an instance id would take each other's jobs; otherwise they wait
+     * for their lease to expire
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        try {
+            if (properties.isReleaseOrphansOnStartup()) {
+                queueService.releaseOrphanedJobs(workerId);
+            }
+            queueService.recoverStalled();
+        } catch (Exception e) {
+            log.error("Failed to recover submission jobs on startup", e);
+        }
+    }
+
+    /**
+     * Scheduled task: for every stage, claim as many jobs as it has free workers
+     */
+    @Scheduled(fixedDelayString = "${app.submission-queue.poll-interval-ms:1000}")
+    public void poll() {
+        for (SubmissionJob.Stage stage : SubmissionJob.Stage.values()) {
+            try {
+                pollStage(stage);
+            } catch (Exception e) {
+                log.error("Failed to poll {} stage", stage, e);
+            }
+        }
+    }
+
+    private void pollStage(SubmissionJob.Stage stage) {
+        AtomicInteger running = inFlight.get(stage);
+        int free = properties.getStages().workers(stage) - running.get();
+        if (free <= 0) {
+            return;
+        }
+
+        List<SubmissionJob> jobs = queueService.claim(stage, free, workerId);
+        for (SubmissionJob job : jobs) {
+            running.incrementAndGet();
+            try {
+                executors.get(stage).execute(() -> run(job));
+            } catch (Exception e) {
+                running.decrementAndGet();
+                log.error("Failed to dispatch job {} to {} stage", job.getId(), stage, e);
+                queueService.markFailed(job.getId(), "Dispatch failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Scheduled task: renew the leases of jobs running on this node
+     */
+    @Scheduled(fixedDelayString = "${app.submission-queue.heartbeat-interval-ms:60000}")
+    public void heartbeat() {
+        try {
+            queueService.renewLeases(Set.copyOf(runningJobIds), workerId);
+        } catch (Exception e) {
+            log.error("Failed to renew submission job leases", e);
+        }
+    }
+
+    /**
+     * Scheduled task: release expired leases and pick up stuck submissions
+     */
+    @Scheduled(fixedDelayString = "${app.submission-queue.recovery-interval-ms:60000}")
+    public void recoverStalled() {
+        queueService.recoverStalled();
+    }
+
+    private void run(SubmissionJob job) {
+        SubmissionJob.Stage stage = job.getStage();
+        long start = System.nanoTime();
+        String outcome = "success";
+        runningJobIds.add(job.getId());
+        try {
+            submissionService.processStage(job);
+        } catch (Exception e) {
+            outcome = "error";
+            log.error("Job {} for submission {} failed at stage {}", job.getId(), job.getSubmissionId(), stage, e);
+            queueService.markFailed(job.getId(), e.getMessage());
+        } finally {
+            runningJobIds.remove(job.getId());
+            inFlight.get(stage).decrementAndGet();
+            meterRegistry.timer("submission.stage.duration", "stage", stage.name().toLowerCase(), "outcome", outcome)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String resolveInstanceId(SubmissionQueueProperties properties) {
+        if (properties.getInstanceId() != null && !properties.getInstanceId().isBlank()) {
+            return properties.getInstanceId();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "localhost";
+        }
+    }
+}
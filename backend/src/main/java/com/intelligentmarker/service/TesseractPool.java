@@ -0,0 +1,203 @@
+package com.intelligentmarker.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Bounded pool of Tesseract engines (app.ocr.engines, default one per core)
+ * Tess4J engines are not thread-safe, so each recognition borrows an engine for exclusive use and
+ * returns it afterwards. Engines keep their native handle between calls: language data is loaded
+ * once per engine instead of on every doOCR. Engines are created on first demand (or at startup
+ * with app.ocr.prewarm) so nodes without the native library still start
+ */
+@Service
+@Slf4j
+public class TesseractPool {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition engineReturned = lock.newCondition();
+    private final Deque<Engine> idle = new ArrayDeque<>();
+    private final int size;
+    private final String language;
+    private final String datapath;
+    private final Timer waitTime;
+    private final Timer recognizeTime;
+    private int created;
+    private int waiting;
+
+    public TesseractPool(
+        @Value("${app.ocr.engines:0}") int engines,
+        @Value("${app.ocr.language:eng+chi_sim}") String language,
+        @Value("${app.ocr.datapath:}") String datapath,
+        @Value("${app.ocr.prewarm:false}") boolean prewarm,
+        MeterRegistry meterRegistry
+    ) {
+        this.size = engines > 0 ? engines : Runtime.getRuntime().availableProcessors();
+        this.language = language;
+        this.datapath = datapath;
+
+        this.waitTime = Timer.builder("ocr.tesseract.wait")
+            .description("Time spent waiting to borrow a Tesseract engine")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+        this.recognizeTime = Timer.builder("ocr.tesseract.recognize")
+            .register(meterRegistry);
+        Gauge.builder("ocr.tesseract.engines", this, pool -> pool.count(() -> pool.created))
+            .register(meterRegistry);
+        Gauge.builder("ocr.tesseract.busy", this, pool -> pool.count(() -> pool.created - pool.idle.size()))
+            .register(meterRegistry);
+        Gauge.builder("ocr.tesseract.waiting", this, pool -> pool.count(() -> pool.waiting))
+            .register(meterRegistry);
+
+        log.info("Tesseract pool: up to {} engines ({})", size, language);
+        if (prewarm) {
+            prewarm();
+        }
+    }
+
+    /**
+     * OCR an image with a borrowed engine (blocks until one is free)
+     */
+    public String recognize(BufferedImage image) throws Exception {
+        Engine engine = borrow();
+        boolean healthy = false;
+        long start = System.nanoTime();
+        try {
+            String text = engine.recognize(image);
+            healthy = true;
+            return text;
+        } finally {
+            recognizeTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            release(engine, healthy);
+        }
+    }
+
+    private Engine borrow() throws TesseractException, InterruptedException {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (idle.isEmpty() && created >= size) {
+                    engineReturned.await();
+                }
+            } finally {
+                waiting--;
+            }
+            if (!idle.isEmpty()) {
+                return idle.pop();
+            }
+            created++;
+        } finally {
+            lock.unlock();
+            waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        // New engine: loading language data takes a while, so do it outside the lock
+        try {
+            return new Engine(language, datapath);
+        } catch (RuntimeException | Error e) {
+            release(null, false);
+            throw new TesseractException("Tesseract engine initialization failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Return an engine; one that failed is disposed and replaced on demand, as its native state is unknown
+     */
+    private void release(Engine engine, boolean healthy) {
+        if (engine != null && !healthy) {
+            engine.close();
+        }
+        lock.lock();
+        try {
+            if (engine != null && healthy) {
+                idle.push(engine);
+            } else {
+                created--;
+            }
+            engineReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void prewarm() {
+        try {
+            Engine[] engines = new Engine[size];
+            for (int i = 0; i < size; i++) {
+                engines[i] = borrow();
+            }
+            for (Engine engine : engines) {
+                release(engine, true);
+            }
+        } catch (Exception e) {
+            log.warn("Tesseract prewarm failed, engines will be created on demand: {}", e.getMessage());
+        }
+    }
+
+    private double count(IntSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsInt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            idle.forEach(Engine::close);
+            created -= idle.size();
+            idle.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tesseract whose native handle stays initialized between recognitions
+     * (Tesseract.doOCR would init and dispose it around every call)
+     */
+    private static final class Engine extends Tesseract {
+
+        Engine(String language, String datapath) {
+            setLanguage(language);
+            if (datapath != null && !datapath.isEmpty()) {
+                setDatapath(datapath);
+            }
+            init();
+            setVariables();
+        }
+
+        String recognize(BufferedImage image) throws Exception {
+            try {
+                setImage(image);
+                return getOCRText(null, 1);
+            } finally {
+                getAPI().TessBaseAPIClear(getHandle());
+            }
+        }
+
+        void close() {
+            dispose();
+        }
+    }
+}
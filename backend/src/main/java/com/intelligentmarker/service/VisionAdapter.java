@@ -18,6 +18,13 @@ public interface VisionAdapter {
      */
     ImageAnalysisResult analyzeImage(byte[] imageBytes);
 
+    /**
+     * Analyze an image that is already decoded and preprocessed
+     * @param image Prepared image (see ImagePreprocessor)
+     * @return Image analysis result
+     */
+    ImageAnalysisResult analyzeImage(ImagePreprocessor.PreparedImage image);
+
     /**
      * Detect mathematical formulas in image
      * @param imageBytes Image byte array
@@ -0,0 +1,168 @@
+package com.intelligentmarker.service;
+
+import com.intelligentmarker.model.AssignmentStats;
+import com.intelligentmarker.repository.AssignmentRepository;
+import com.intelligentmarker.repository.GradeRepository;
+import com.intelligentmarker.repository.SubmissionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Score distribution of a 10,000-submission assignment served from its assignment_stats row
+ * Checks the figures against a direct computation over the same scores, that the request costs a
+ * fixed number of queries, and times it against a 100-submission assignment
+ */
+class AnalyticsServiceTest {
+
+    private static final long SMALL = 1L;
+    private static final long LARGE = 2L;
+
+    private final AssignmentRepository assignmentRepository = mock(AssignmentRepository.class);
+    private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+    private final GradeRepository gradeRepository = mock(GradeRepository.class);
+    private final AssignmentStatsService assignmentStatsService = mock(AssignmentStatsService.class);
+    private final List<BigDecimal> largeScores = scores(10_000, 42);
+    private AnalyticsService service;
+
+    @BeforeEach
+    void setUp() {
+        when(assignmentRepository.existsById(anyLong())).thenReturn(true);
+        when(assignmentStatsService.get(SMALL)).thenReturn(stats(SMALL, scores(100, 7)));
+        when(assignmentStatsService.get(LARGE)).thenReturn(stats(LARGE, largeScores));
+        when(gradeRepository.medianScore(anyLong())).thenReturn(50.0);
+        service = new AnalyticsService(assignmentRepository, submissionRepository, gradeRepository,
+            mock(OpenAiService.class), assignmentStatsService, 10);
+    }
+
+    @Test
+    void distributionOfTenThousandSubmissionsMatchesDirectComputation() {
+        AnalyticsService.ScoreDistribution distribution = service.getScoreDistribution(LARGE, null);
+
+        int n = largeScores.size();
+        double sum = 0;
+        double sumSq = 0;
+        long[] counts = new long[10];
+        for (BigDecimal score : largeScores) {
+            sum += score.doubleValue();
+            sumSq += score.doubleValue() * score.doubleValue();
+            counts[Math.min(score.intValue() / 10, 9)]++;
+        }
+        double mean = sum / n;
+        double stdDev = Math.sqrt(sumSq / n - mean * mean);
+
+        assertEquals(n, distribution.sampleSize());
+        assertEquals(mean, distribution.mean().doubleValue(), 0.005);
+        assertEquals(stdDev, distribution.stdDev().doubleValue(), 0.005);
+        assertEquals(0, new BigDecimal("50.00").compareTo(distribution.median()));
+        assertEquals(Arrays.stream(counts).boxed().toList(),
+            distribution.histogram().stream().map(AnalyticsService.ScoreBucket::count).toList());
+
+        // One stats row and one median query, whatever the submission count
+        verify(assignmentStatsService).get(LARGE);
+        verify(gradeRepository).medianScore(LARGE);
+        verifyNoMoreInteractions(gradeRepository);
+        verifyNoInteractions(submissionRepository);
+    }
+
+    @Test
+    void bucketCountNotDividingHundredIsAggregatedInOneQuery() {
+        List<GradeRepository.ScoreBucket> rows = new ArrayList<>();
+        long[] counts = new long[7];
+        for (BigDecimal score : largeScores) {
+            counts[Math.min(score.multiply(BigDecimal.valueOf(7)).intValue() / 100, 6)]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            rows.add(bucket(i + 1, counts[i]));
+        }
+        when(gradeRepository.scoreHistogram(LARGE, 7)).thenReturn(rows);
+
+        AnalyticsService.ScoreDistribution distribution = service.getScoreDistribution(LARGE, 7);
+
+        assertEquals(Arrays.stream(counts).boxed().toList(),
+            distribution.histogram().stream().map(AnalyticsService.ScoreBucket::count).toList());
+        verify(gradeRepository).scoreHistogram(LARGE, 7);
+        verify(gradeRepository).medianScore(LARGE);
+        verifyNoMoreInteractions(gradeRepository);
+    }
+
+    @Test
+    void requestTimeDoesNotGrowWithSubmissionCount() {
+        double small = microsPerCall(SMALL);
+        double large = microsPerCall(LARGE);
+        System.out.printf("getScoreDistribution: %.2f us/call at 100 submissions, %.2f us/call at 10,000%n",
+            small, large);
+
+        // Same work for both: the stats row has a fixed size (repository latency not included)
+        assertTrue(large < small * 5, "100: " + small + " us, 10,000: " + large + " us");
+    }
+
+    /**
+     * Best of five timed rounds after a warm-up
+     */
+    private double microsPerCall(long assignmentId) {
+        int calls = 5_000;
+        for (int i = 0; i < calls; i++) {
+            service.getScoreDistribution(assignmentId, null);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                service.getScoreDistribution(assignmentId, null);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1000.0 / calls;
+    }
+
+    private static List<BigDecimal> scores(int count, long seed) {
+        Random random = new Random(seed);
+        List<BigDecimal> scores = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            scores.add(BigDecimal.valueOf(random.nextInt(10_001), 2));
+        }
+        return scores;
+    }
+
+    /**
+     * The row AssignmentStatsWriter maintains for these scores
+     */
+    private static AssignmentStats stats(long assignmentId, List<BigDecimal> scores) {
+        AssignmentStats stats = new AssignmentStats();
+        stats.setAssignmentId(assignmentId);
+        stats.setScoredCount(scores.size());
+        stats.setScoreSum(scores.stream().reduce(BigDecimal.ZERO, BigDecimal::add));
+        stats.setScoreSumSq(scores.stream().map(s -> s.multiply(s)).reduce(BigDecimal.ZERO, BigDecimal::add)
+            .setScale(4, RoundingMode.UNNECESSARY));
+        long[] histogram = new long[AssignmentStats.HISTOGRAM_BUCKETS];
+        scores.forEach(score -> histogram[AssignmentStatsWriter.bucketOf(score)]++);
+        stats.setHistogram(histogram);
+        return stats;
+    }
+
+    private static GradeRepository.ScoreBucket bucket(int bucket, long count) {
+        return new GradeRepository.ScoreBucket() {
+            @Override
+            public int getBucket() {
+                return bucket;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
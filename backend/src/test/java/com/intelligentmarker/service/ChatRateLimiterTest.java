@@ -0,0 +1,193 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.config.LlmProperties;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ChatRateLimiter through a rate-limited provider against a stub chat endpoint
+ * Backoff and budget waits run on a simulated clock: every sleep is recorded and advances it
+ */
+class ChatRateLimiterTest {
+
+    private static final String RESPONSE =
+        "{\"model\":\"test-model\",\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"ok\"}}]}";
+    private static final Map<String, Object> BODY =
+        Map.of("messages", List.of(Map.of("role", "user", "content", "hi")));
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger status = new AtomicInteger(429);
+    private final AtomicReference<String> retryAfter = new AtomicReference<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Long> sleeps = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = (status.get() == 200 ? RESPONSE : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (retryAfter.get() != null) {
+                exchange.getResponseHeaders().add("Retry-After", retryAfter.get());
+            }
+            exchange.sendResponseHeaders(status.get(), body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private ChatRateLimiter limiter(long requestsPerMinute, long tokensPerMinute, int maxRetries, Duration maxRetryTime) {
+        return new ChatRateLimiter(requestsPerMinute, tokensPerMinute, 8, 8, Duration.ofSeconds(45), maxRetries,
+            maxRetryTime, Duration.ofSeconds(1), Duration.ofSeconds(60), meterRegistry, clock::get, nanos -> {
+                sleeps.add(nanos);
+                clock.addAndGet(nanos);
+            });
+    }
+
+    private OpenAiCompatibleProvider provider(ChatRateLimiter limiter) {
+        LlmProperties.Provider config = new LlmProperties.Provider();
+        config.setName("test");
+        config.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/v1");
+        config.setModel("test-model");
+        config.setLocal(true);
+        config.setRateLimited(true);
+        config.setTimeout(Duration.ofSeconds(5));
+        CircuitBreakers circuitBreakers = new CircuitBreakers(20, 10, 0.5, Duration.ofSeconds(30), meterRegistry);
+        return new OpenAiCompatibleProvider(config, HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(),
+            new ObjectMapper(), circuitBreakers, limiter);
+    }
+
+    private double concurrencyLimit() {
+        return meterRegistry.get("openai.chat.concurrency.limit").gauge().value();
+    }
+
+    private long totalSlept() {
+        return sleeps.stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Test
+    void retryAfterIsHonoredWithJitterUpToMaxRetries() {
+        retryAfter.set("2");
+        OpenAiCompatibleProvider provider = provider(limiter(0, 0, 6, Duration.ofMinutes(4)));
+
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> provider.complete(BODY, 10));
+
+        assertEquals(7, requests.get());
+        assertEquals(6, sleeps.size());
+        for (long sleep : sleeps) {
+            // Retry-After plus up to 20% jitter
+            assertTrue(sleep >= Duration.ofSeconds(2).toNanos() && sleep <= Duration.ofMillis(2400).toNanos(),
+                "sleep " + sleep);
+        }
+        assertTrue(sleeps.stream().distinct().count() > 1, "retries are not jittered: " + sleeps);
+    }
+
+    @Test
+    void backoffWithoutRetryAfterIsFullJitterUnderExponentialCap() {
+        OpenAiCompatibleProvider provider = provider(limiter(0, 0, 6, Duration.ofMinutes(4)));
+
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> provider.complete(BODY, 10));
+
+        assertEquals(7, requests.get());
+        long caps = 0;
+        for (int i = 0; i < sleeps.size(); i++) {
+            long cap = Duration.ofSeconds(Math.min(60, 1L << i)).toNanos();
+            assertTrue(sleeps.get(i) <= cap, "sleep " + i + " above " + cap + ": " + sleeps);
+            caps += cap;
+        }
+        assertTrue(totalSlept() < caps, "backoff is not jittered: " + sleeps);
+    }
+
+    @Test
+    void retriesStopBeforeMaxRetryTime() {
+        retryAfter.set("2");
+        Duration maxRetryTime = Duration.ofSeconds(10);
+        OpenAiCompatibleProvider provider = provider(limiter(0, 0, 100, maxRetryTime));
+
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> provider.complete(BODY, 10));
+
+        // 2-2.4s per retry: four or five fit in 10s, far fewer than max-retries
+        assertTrue(totalSlept() < maxRetryTime.toNanos(), "slept " + totalSlept());
+        assertTrue(requests.get() >= 5 && requests.get() <= 6, "requests " + requests.get());
+    }
+
+    @Test
+    void concurrencyLimitHalvesOn429AndRecoversAdditively() throws Exception {
+        OpenAiCompatibleProvider provider = provider(limiter(0, 0, 0, Duration.ofMinutes(4)));
+        assertEquals(8, concurrencyLimit());
+
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> provider.complete(BODY, 10));
+        assertEquals(4, concurrencyLimit());
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> provider.complete(BODY, 10));
+        assertEquals(2, concurrencyLimit());
+
+        status.set(200);
+        provider.complete(BODY, 10);
+        assertEquals(2, concurrencyLimit());
+        for (int i = 0; i < 60; i++) {
+            provider.complete(BODY, 10);
+        }
+        assertEquals(8, concurrencyLimit());
+    }
+
+    @Test
+    void requestBudgetMakesCallersWait() throws Exception {
+        status.set(200);
+        OpenAiCompatibleProvider provider = provider(limiter(2, 0, 0, Duration.ofMinutes(4)));
+
+        provider.complete(BODY, 10);
+        provider.complete(BODY, 10);
+        assertEquals(0, totalSlept());
+
+        // 2 RPM: the third request waits for one request to refill (30s)
+        provider.complete(BODY, 10);
+        assertEquals(3, requests.get());
+        assertTrue(totalSlept() >= Duration.ofSeconds(30).toNanos()
+            && totalSlept() <= Duration.ofMillis(30_100).toNanos(), "waited " + totalSlept());
+    }
+
+    @Test
+    void tokenBudgetMakesCallersWait() throws Exception {
+        status.set(200);
+        OpenAiCompatibleProvider provider = provider(limiter(0, 1000, 0, Duration.ofMinutes(4)));
+
+        provider.complete(BODY, 600);
+        assertEquals(0, totalSlept());
+
+        // 1000 TPM with 400 left: 200 more tokens take 12s to refill
+        provider.complete(BODY, 600);
+        assertEquals(2, requests.get());
+        assertTrue(totalSlept() >= Duration.ofSeconds(12).toNanos()
+            && totalSlept() <= Duration.ofMillis(12_100).toNanos(), "waited " + totalSlept());
+    }
+}
@@ -0,0 +1,132 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.config.LlmProperties;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatRouterTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+    private static final String RESPONSE =
+        "{\"model\":\"test-model\",\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"ok\"}}]}";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger status = new AtomicInteger(500);
+    private final AtomicLong clock = new AtomicLong();
+    private HttpServer server;
+    private CircuitBreakers circuitBreakers;
+    private ChatRouter router;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = (status.get() == 200 ? RESPONSE : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status.get(), body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        circuitBreakers = new CircuitBreakers(2, 2, 0.5, OPEN_DURATION, meterRegistry, clock::get);
+        router = router(meterRegistry, provider("test"));
+    }
+
+    private LlmProperties.Provider provider(String name) {
+        LlmProperties.Provider provider = new LlmProperties.Provider();
+        provider.setName(name);
+        provider.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/v1");
+        provider.setModel("test-model");
+        provider.setLocal(true);
+        provider.setTimeout(Duration.ofSeconds(5));
+        return provider;
+    }
+
+    private ChatRouter router(SimpleMeterRegistry meterRegistry, LlmProperties.Provider... providers) {
+        LlmProperties properties = new LlmProperties();
+        properties.setProviders(List.of(providers));
+        return new ChatRouter(properties, HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(),
+            new ObjectMapper(), circuitBreakers, null, new SimpleAsyncTaskExecutor(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void openBreakerIsProbedOnceOpenDurationHasPassed() throws Exception {
+        Map<String, Object> body = Map.of("messages", List.of(Map.of("role", "user", "content", "hi")));
+
+        assertThrows(Exception.class, () -> router.complete(body, 10));
+        assertThrows(Exception.class, () -> router.complete(body, 10));
+        assertEquals(CircuitBreakers.State.OPEN, circuitBreakers.state(CircuitBreakers.chat("test")));
+        assertEquals(2, requests.get());
+
+        // Still open: rejected without calling the provider
+        assertThrows(CircuitOpenException.class, () -> router.complete(body, 10));
+        assertEquals(2, requests.get());
+
+        status.set(200);
+        clock.addAndGet(OPEN_DURATION.toNanos() + 1);
+        assertEquals(CircuitBreakers.State.HALF_OPEN, circuitBreakers.state(CircuitBreakers.chat("test")));
+
+        ChatRouter.Routed routed = router.complete(body, 10);
+        assertEquals("ok", routed.response().path("choices").path(0).path("message").path("content").asText());
+        assertEquals(3, requests.get());
+        assertEquals(CircuitBreakers.State.CLOSED, circuitBreakers.state(CircuitBreakers.chat("test")));
+    }
+
+    @Test
+    void errorOfHealthyProviderIsNotReportedAsCircuitOpen() throws Exception {
+        ChatRouter twoProviders = router(new SimpleMeterRegistry(), provider("down"), provider("test"));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(HttpServerErrorException.class, () -> circuitBreakers.call(CircuitBreakers.chat("down"), () -> {
+                throw HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "down", null, null, null);
+            }));
+        }
+        assertEquals(CircuitBreakers.State.OPEN, circuitBreakers.state(CircuitBreakers.chat("down")));
+
+        status.set(400);
+        Map<String, Object> body = Map.of("messages", List.of(Map.of("role", "user", "content", "hi")));
+        assertThrows(HttpClientErrorException.class, () -> twoProviders.complete(body, 10));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void failedProbeOpensBreakerAgain() throws Exception {
+        Map<String, Object> body = Map.of("messages", List.of(Map.of("role", "user", "content", "hi")));
+        assertThrows(Exception.class, () -> router.complete(body, 10));
+        assertThrows(Exception.class, () -> router.complete(body, 10));
+
+        // The probe reaches the provider and its own error is reported
+        clock.addAndGet(OPEN_DURATION.toNanos() + 1);
+        assertThrows(HttpServerErrorException.class, () -> router.complete(body, 10));
+        assertEquals(3, requests.get());
+        assertEquals(CircuitBreakers.State.OPEN, circuitBreakers.state(CircuitBreakers.chat("test")));
+    }
+}
@@ -0,0 +1,110 @@
+package com.intelligentmarker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Parallel OCR of a 30-page scanned PDF (image-only pages, no text layer)
+ * Recognition is replaced by a fixed 40 ms per page, so the timings show how well rendering and
+ * recognition overlap across page-parallelism workers, not how Tesseract itself scales with cores.
+ * Each page is 10 points wider than the one before, so the fake engine reads the page number off
+ * the rendered width
+ */
+class OCRServiceTest {
+
+    private static final int PAGES = 30;
+    private static final long RECOGNIZE_MILLIS = 40;
+    private static final float RENDER_DPI = 50f;
+    private static final String EXPECTED = IntStream.rangeClosed(1, PAGES)
+        .mapToObj(page -> "page " + page + "\n")
+        .collect(Collectors.joining());
+
+    @TempDir
+    static Path dir;
+    private static Path scan;
+
+    @BeforeAll
+    static void createScan() throws Exception {
+        scan = dir.resolve("scan.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int page = 1; page <= PAGES; page++) {
+                float width = pageWidth(page);
+                PDPage pdPage = new PDPage(new PDRectangle(width, 200));
+                document.addPage(pdPage);
+                PDImageXObject image = LosslessFactory.createFromImage(document,
+                    new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY));
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.drawImage(image, 0, 0, width, 200);
+                }
+            }
+            document.save(scan.toFile());
+        }
+    }
+
+    private static float pageWidth(int page) {
+        return 100 + 10 * page;
+    }
+
+    private OCRService service(int pageParallelism) throws Exception {
+        TesseractPool pool = mock(TesseractPool.class);
+        when(pool.recognize(any())).thenAnswer(invocation -> {
+            BufferedImage image = invocation.getArgument(0);
+            Thread.sleep(RECOGNIZE_MILLIS);
+            return "page " + Math.round((image.getWidth() * 72f / RENDER_DPI - pageWidth(0)) / 10);
+        });
+        ImagePreprocessor preprocessor = mock(ImagePreprocessor.class);
+        when(preprocessor.forOcr(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        return new OCRService(pool, preprocessor, pageParallelism, RENDER_DPI, 20, 1_000_000, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Best of three extractions after a warm-up, checking page order every time
+     */
+    private long millisPerScan(int pageParallelism) throws Exception {
+        OCRService service = service(pageParallelism);
+        try {
+            assertEquals(EXPECTED, service.extractText(scan, "pdf"));
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                String text = service.extractText(scan, "pdf");
+                best = Math.min(best, System.nanoTime() - start);
+                assertEquals(EXPECTED, text);
+            }
+            return best / 1_000_000;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void pagesAreRecognizedInParallelAndStitchedInOrder() throws Exception {
+        long serial = millisPerScan(1);
+        long two = millisPerScan(2);
+        long four = millisPerScan(4);
+        System.out.printf("%d-page scan: %d ms with 1 worker, %d ms with 2 (%.1fx), %d ms with 4 (%.1fx)%n",
+            PAGES, serial, two, serial / (double) two, four, serial / (double) four);
+
+        assertTrue(serial >= PAGES * RECOGNIZE_MILLIS, "serial " + serial + " ms");
+        assertTrue(serial >= 2.5 * four, "1 worker: " + serial + " ms, 4 workers: " + four + " ms");
+    }
+}
@@ -0,0 +1,374 @@
+package com.intelligentmarker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentmarker.model.BatchScoringRequest;
+import com.intelligentmarker.model.Grade;
+import com.intelligentmarker.model.OpenAiBatch;
+import com.intelligentmarker.model.Submission;
+import com.intelligentmarker.repository.BatchScoringRequestRepository;
+import com.intelligentmarker.repository.OpenAiBatchRepository;
+import com.intelligentmarker.repository.SubmissionRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * OfflineScoringService and OpenAiBatchClient against a stub of the OpenAI /files and /batches endpoints
+ * Repositories are in-memory; the stub answers each uploaded request with a score from SCORES
+ */
+class OfflineScoringServiceTest {
+
+    private static final Map<Long, String> SCORES = Map.of(1L, "80", 2L, "55");
+    private static final Map<Long, String> CONFIDENCES = Map.of(1L, "0.9", 2L, "0.6");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> uploads = new CopyOnWriteArrayList<>();
+    private final List<JsonNode> createdBatches = new CopyOnWriteArrayList<>();
+    private final List<String> downloads = new CopyOnWriteArrayList<>();
+    private final AtomicInteger batchCounter = new AtomicInteger();
+    private final AtomicReference<String> remoteStatus = new AtomicReference<>("in_progress");
+    private final Map<Long, BatchScoringRequest> requests = new LinkedHashMap<>();
+    private final Map<Long, OpenAiBatch> batches = new LinkedHashMap<>();
+
+    private HttpServer server;
+    private SubmissionRepository submissionRepository;
+    private GradeBatchWriter gradeBatchWriter;
+    private SubmissionQueueService submissionQueueService;
+    private OfflineScoringService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/files", this::handleFiles);
+        server.createContext("/v1/batches", this::handleBatches);
+        server.start();
+
+        ScoringResponseParser responseParser = new ScoringResponseParser(objectMapper);
+        OpenAiBatchClient batchClient = new OpenAiBatchClient("sk-test",
+            "http://localhost:" + server.getAddress().getPort() + "/v1",
+            HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), objectMapper,
+            new CircuitBreakers(20, 10, 0.5, Duration.ofSeconds(30), new SimpleMeterRegistry()));
+
+        OpenAiService openAiService = mock(OpenAiService.class);
+        when(openAiService.buildRequest(any(), any())).thenAnswer(invocation -> Map.<String, Object>of(
+            "model", "test-model", "messages", invocation.getArgument(0)));
+
+        ScoringService scoringService = mock(ScoringService.class);
+        when(scoringService.buildPrompt(any(), any())).thenAnswer(invocation -> List.of(
+            OpenAiService.Message.user("answer of " + ((Submission) invocation.getArgument(0)).getId())));
+        when(scoringService.parseResponse(any(), any()))
+            .thenAnswer(invocation -> responseParser.parse(invocation.getArgument(1)));
+        when(scoringService.statusFor(any())).thenAnswer(invocation ->
+            ((BigDecimal) invocation.getArgument(0)).doubleValue() >= 0.85
+                ? Grade.GradeStatus.HIGH_CONFIDENCE
+                : Grade.GradeStatus.NEEDS_REVIEW);
+
+        submissionRepository = mock(SubmissionRepository.class);
+        gradeBatchWriter = mock(GradeBatchWriter.class);
+        submissionQueueService = mock(SubmissionQueueService.class);
+
+        service = new OfflineScoringService(requestRepository(), batchRepository(), submissionRepository,
+            batchClient, openAiService, scoringService, responseParser, gradeBatchWriter, submissionQueueService,
+            mock(NotificationService.class), mock(AuditLogService.class), transactionTemplate(), objectMapper,
+            2, 100, Duration.ofMinutes(30), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void queuedRequestsAreSubmittedPolledAndAppliedInBulk() throws Exception {
+        service.enqueue(submission(1L), null);
+        service.submitQueued();
+        assertTrue(uploads.isEmpty(), "batch submitted below min-requests");
+
+        service.enqueue(submission(2L), null);
+        service.submitQueued();
+
+        // One JSONL file with a chat completion per submission, then a batch over it
+        assertEquals(1, uploads.size());
+        List<JsonNode> lines = jsonlLines(uploads.get(0));
+        assertEquals(Set.of("submission-1", "submission-2"),
+            Set.of(lines.get(0).path("custom_id").asText(), lines.get(1).path("custom_id").asText()));
+        assertEquals("/v1/chat/completions", lines.get(0).path("url").asText());
+        assertEquals("file-in-1", createdBatches.get(0).path("input_file_id").asText());
+        assertEquals("/v1/chat/completions", createdBatches.get(0).path("endpoint").asText());
+
+        OpenAiBatch batch = batches.values().iterator().next();
+        assertEquals("batch_1", batch.getOpenaiBatchId());
+        assertEquals(OpenAiBatch.BatchStatus.SUBMITTED, batch.getStatus());
+        requests.values().forEach(request -> {
+            assertEquals(BatchScoringRequest.RequestStatus.SUBMITTED, request.getStatus());
+            assertEquals(1, request.getAttempts());
+        });
+
+        // Still running: nothing applied
+        service.pollBatches();
+        assertEquals("in_progress", batch.getRemoteStatus());
+        assertEquals(OpenAiBatch.BatchStatus.SUBMITTED, batch.getStatus());
+        verifyNoInteractions(gradeBatchWriter);
+
+        remoteStatus.set("completed");
+        service.pollBatches();
+
+        assertEquals(List.of("file-out-1"), downloads);
+        List<GradeBatchWriter.AiGrade> grades = appliedGrades();
+        assertEquals(2, grades.size());
+        Map<Long, GradeBatchWriter.AiGrade> bySubmission = new HashMap<>();
+        grades.forEach(grade -> bySubmission.put(grade.submissionId(), grade));
+        assertEquals(0, new BigDecimal("80").compareTo(bySubmission.get(1L).score()));
+        assertEquals(Grade.GradeStatus.HIGH_CONFIDENCE, bySubmission.get(1L).status());
+        assertEquals(0, new BigDecimal("55").compareTo(bySubmission.get(2L).score()));
+        assertEquals(Grade.GradeStatus.NEEDS_REVIEW, bySubmission.get(2L).status());
+
+        verify(submissionRepository).updateStatus(List.of(1L, 2L), Submission.SubmissionStatus.SCORED);
+        verify(submissionQueueService).completeDeferred(List.of(1L, 2L));
+        requests.values().forEach(request ->
+            assertEquals(BatchScoringRequest.RequestStatus.COMPLETED, request.getStatus()));
+        assertEquals(OpenAiBatch.BatchStatus.APPLIED, batch.getStatus());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"failed", "expired"})
+    void requestsOfUnsuccessfulBatchAreRequeued(String status) throws Exception {
+        service.enqueue(submission(1L), null);
+        service.enqueue(submission(2L), null);
+        service.submitQueued();
+
+        remoteStatus.set(status);
+        service.pollBatches();
+
+        assertTrue(downloads.isEmpty());
+        assertTrue(appliedGrades().isEmpty());
+        verify(submissionRepository, never()).updateStatus(any(), any());
+        requests.values().forEach(request -> {
+            assertEquals(BatchScoringRequest.RequestStatus.QUEUED, request.getStatus());
+            assertEquals("No result in batch batch_1", request.getLastError());
+        });
+        assertEquals(OpenAiBatch.BatchStatus.FAILED, batches.get(1L).getStatus());
+
+        // The re-queued requests go out again in the next batch
+        service.submitQueued();
+        assertEquals(2, uploads.size());
+        assertEquals(2, jsonlLines(uploads.get(1)).size());
+        assertEquals("batch_2", batches.get(2L).getOpenaiBatchId());
+        requests.values().forEach(request -> {
+            assertEquals(BatchScoringRequest.RequestStatus.SUBMITTED, request.getStatus());
+            assertEquals(2L, request.getBatchId());
+            assertEquals(2, request.getAttempts());
+        });
+    }
+
+    @Test
+    void enqueueResetsAnEarlierRequestOfTheSubmission() {
+        service.enqueue(submission(1L), null);
+        BatchScoringRequest request = requests.values().iterator().next();
+        request.setStatus(BatchScoringRequest.RequestStatus.FAILED);
+        request.setAttempts(2);
+        request.setBatchId(7L);
+
+        service.enqueue(submission(1L), null);
+
+        assertEquals(1, requests.size());
+        assertEquals(BatchScoringRequest.RequestStatus.QUEUED, request.getStatus());
+        assertEquals(0, request.getAttempts());
+        assertNull(request.getBatchId());
+    }
+
+    // ========== Stub OpenAI endpoints ==========
+
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        if ("POST".equals(exchange.getRequestMethod())) {
+            uploads.add(new String(body, StandardCharsets.UTF_8));
+            respond(exchange, "{\"id\":\"file-in-" + uploads.size() + "\",\"purpose\":\"batch\"}");
+        } else if (path.endsWith("/content")) {
+            downloads.add(path.substring("/v1/files/".length(), path.length() - "/content".length()));
+            respond(exchange, outputFor(uploads.get(uploads.size() - 1)));
+        } else {
+            respond(exchange, 404, "{}");
+        }
+    }
+
+    private void handleBatches(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        if ("POST".equals(exchange.getRequestMethod())) {
+            createdBatches.add(objectMapper.readTree(body));
+            respond(exchange, "{\"id\":\"batch_" + batchCounter.incrementAndGet() + "\",\"status\":\"validating\"}");
+            return;
+        }
+        String id = exchange.getRequestURI().getPath().substring("/v1/batches/".length());
+        String output = "completed".equals(remoteStatus.get())
+            ? ",\"output_file_id\":\"file-out-" + id.substring("batch_".length()) + "\""
+            : "";
+        respond(exchange, "{\"id\":\"" + id + "\",\"status\":\"" + remoteStatus.get() + "\"" + output + "}");
+    }
+
+    /**
+     * Output JSONL answering every request line of an uploaded file
+     */
+    private String outputFor(String upload) throws IOException {
+        StringBuilder output = new StringBuilder();
+        for (JsonNode line : jsonlLines(upload)) {
+            String customId = line.path("custom_id").asText();
+            long submissionId = Long.parseLong(customId.substring("submission-".length()));
+            String content = "{\"totalScore\":" + SCORES.get(submissionId) + ",\"confidence\":"
+                + CONFIDENCES.get(submissionId) + ",\"breakdown\":[],\"feedback\":{\"strengths\":[],"
+                + "\"weaknesses\":[],\"suggestions\":[]},\"confidenceReason\":\"stub\"}";
+            Map<String, Object> result = Map.of(
+                "custom_id", customId,
+                "response", Map.of(
+                    "status_code", 200,
+                    "body", Map.of("choices", List.of(Map.of("message", Map.of("role", "assistant", "content", content))))
+                )
+            );
+            output.append(objectMapper.writeValueAsString(result)).append('\n');
+        }
+        return output.toString();
+    }
+
+    /**
+     * Request lines of an uploaded file (the multipart body around them is skipped)
+     */
+    private List<JsonNode> jsonlLines(String upload) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : upload.split("\r?\n")) {
+            if (line.startsWith("{") && line.contains("\"custom_id\"")) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        respond(exchange, 200, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    // ========== In-memory collaborators ==========
+
+    private static Submission submission(Long id) {
+        Submission submission = new Submission();
+        submission.setId(id);
+        return submission;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<GradeBatchWriter.AiGrade> appliedGrades() {
+        ArgumentCaptor<List<GradeBatchWriter.AiGrade>> captor = ArgumentCaptor.forClass(List.class);
+        verify(gradeBatchWriter, atLeastOnce()).upsertAiGrades(captor.capture());
+        return captor.getValue();
+    }
+
+    private static TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                TransactionStatus status = new SimpleTransactionStatus();
+                return action.doInTransaction(status);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchScoringRequestRepository requestRepository() {
+        BatchScoringRequestRepository repository = mock(BatchScoringRequestRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> store(invocation.getArgument(0)));
+        when(repository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<BatchScoringRequest> saved = invocation.getArgument(0);
+            saved.forEach(this::store);
+            return saved;
+        });
+        when(repository.findBySubmissionId(any())).thenAnswer(invocation -> requests.values().stream()
+            .filter(r -> r.getSubmissionId().equals(invocation.getArgument(0)))
+            .findFirst());
+        when(repository.findByStatusOrderByCreatedAtAsc(any(), any())).thenAnswer(invocation -> requests.values().stream()
+            .filter(r -> r.getStatus() == invocation.getArgument(0))
+            .sorted(Comparator.comparing(BatchScoringRequest::getCreatedAt))
+            .limit(1)
+            .toList());
+        when(repository.countByStatus(any())).thenAnswer(invocation -> requests.values().stream()
+            .filter(r -> r.getStatus() == invocation.getArgument(0))
+            .count());
+        when(repository.claimQueued(anyInt())).thenAnswer(invocation -> requests.values().stream()
+            .filter(r -> r.getStatus() == BatchScoringRequest.RequestStatus.QUEUED)
+            .limit((int) invocation.getArgument(0))
+            .peek(r -> r.setStatus(BatchScoringRequest.RequestStatus.SUBMITTED))
+            .map(BatchScoringRequest::getId)
+            .toList());
+        when(repository.findAllById(any())).thenAnswer(invocation -> {
+            List<BatchScoringRequest> found = new ArrayList<>();
+            ((Iterable<Long>) invocation.getArgument(0)).forEach(id -> found.add(requests.get(id)));
+            return found;
+        });
+        when(repository.findByBatchIdAndStatus(any(), any())).thenAnswer(invocation -> requests.values().stream()
+            .filter(r -> invocation.getArgument(0).equals(r.getBatchId()) && r.getStatus() == invocation.getArgument(1))
+            .toList());
+        return repository;
+    }
+
+    private BatchScoringRequest store(BatchScoringRequest request) {
+        if (request.getId() == null) {
+            request.setId((long) requests.size() + 1);
+            request.setCreatedAt(LocalDateTime.now());
+        }
+        requests.put(request.getId(), request);
+        return request;
+    }
+
+    private OpenAiBatchRepository batchRepository() {
+        OpenAiBatchRepository repository = mock(OpenAiBatchRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> {
+            OpenAiBatch batch = invocation.getArgument(0);
+            if (batch.getId() == null) {
+                batch.setId((long) batches.size() + 1);
+            }
+            batches.put(batch.getId(), batch);
+            return batch;
+        });
+        when(repository.findByStatus(any())).thenAnswer(invocation -> batches.values().stream()
+            .filter(b -> b.getStatus() == invocation.getArgument(0))
+            .toList());
+        return repository;
+    }
+}
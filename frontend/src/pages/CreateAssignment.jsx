@@ -73,7 +73,8 @@ const CreateAssignment = ({ user }) => {
           layout="vertical"
           onFinish={handleSubmit}
           initialValues={{
-            totalMarks: 100
+            totalMarks: 100,
+            scoringMode: 'REALTIME'
           }}
         >
           <Form.Item
@@ -131,6 +132,20 @@ const CreateAssignment = ({ user }) => {
             />
           </Form.Item>
 
+          <Form.Item
+            label="AI Scoring Mode"
+            name="scoringMode"
+            extra="Batch scoring is cheaper but results can take up to 24 hours"
+          >
+            <Select
+              style={{ width: '300px' }}
+              options={[
+                { value: 'REALTIME', label: 'Real-time (results in minutes)' },
+                { value: 'BATCH', label: 'Batch (lower cost, up to 24 hours)' }
+              ]}
+            />
+          </Form.Item>
+
           <Form.Item
             label="Due Date (Optional)"
             name="dueDate"
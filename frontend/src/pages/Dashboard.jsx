@@ -80,7 +80,9 @@ const Dashboard = ({ user }) => {
 
   const fetchAnalytics = async () => {
     try {
-      const distResponse = await axios.get(`/api/analytics/assignments/${selectedAssignment}/distribution`);
+      const distResponse = await axios.get(`/api/analytics/assignments/${selectedAssignment}/distribution`, {
+        params: { buckets: 5 },
+      });
       setDistribution(distResponse.data);
 
       const heatmapResponse = await axios.get(`/api/analytics/assignments/${selectedAssignment}/heatmap`);
@@ -90,32 +92,17 @@ const Dashboard = ({ user }) => {
     }
   };
 
-  // Convert real score data to chart format
+  // Convert score histogram to chart format
   const scoreChartData = React.useMemo(() => {
-    if (!distribution || !distribution.scores || distribution.scores.length === 0) {
+    if (!distribution || !distribution.histogram || distribution.sampleSize === 0) {
       // Return empty array when no data
       return [];
     }
     
-    // Group scores into ranges
-    const ranges = [
-      { range: '0-20', min: 0, max: 20, count: 0 },
-      { range: '21-40', min: 21, max: 40, count: 0 },
-      { range: '41-60', min: 41, max: 60, count: 0 },
-      { range: '61-80', min: 61, max: 80, count: 0 },
-      { range: '81-100', min: 81, max: 100, count: 0 },
-    ];
-    
-    distribution.scores.forEach(score => {
-      for (const range of ranges) {
-        if (score >= range.min && score <= range.max) {
-          range.count++;
-          break;
-        }
-      }
-    });
-    
-    return ranges.map(({ range, count }) => ({ range, count }));
+    return distribution.histogram.map(({ lower, upper, count }) => ({
+      range: `${Math.round(lower)}-${Math.round(upper)}`,
+      count,
+    }));
   }, [distribution]);
 
   const heatmapColumns = [